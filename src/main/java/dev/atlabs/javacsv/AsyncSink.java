@@ -0,0 +1,223 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+
+/**
+ * Writes buffers to a Writer on a background thread.&nbsp;The buffers are
+ * allocated once, up front, and go round a ring: the producer fills one
+ * while the thread writes out the ones handed to it, in the order they were
+ * handed over.
+ * <p>
+ * Only one thread may hand buffers over.&nbsp;If writing fails, the error is
+ * thrown from the next call made by the producer, and the buffers handed
+ * over after it are discarded.
+ */
+final class AsyncSink {
+	private Writer outputStream;
+
+	// the ring of buffers, with the lengths of those handed over
+	private char[][] ring;
+
+	private int[] lengths;
+
+	// the next buffer for the thread to write, the number handed over and
+	// not yet written, and the buffer the producer is filling
+	private int head = 0;
+
+	private int pending = 0;
+
+	private int current;
+
+	private boolean writing = false;
+
+	private boolean stopped = false;
+
+	private Throwable error = null;
+
+	private Thread thread;
+
+	public AsyncSink(Writer outputStream, int bufferCount, int bufferSize) {
+		this.outputStream = outputStream;
+
+		ring = new char[bufferCount][];
+		lengths = new int[bufferCount];
+
+		for (int i = 0; i < bufferCount; i++) {
+			ring[i] = new char[bufferSize];
+		}
+
+		current = 0;
+
+		thread = new Thread("javacsv-writer") {
+			public void run() {
+				drain();
+			}
+		};
+
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Gets the buffer the producer fills.
+	 */
+	public char[] getBuffer() {
+		return ring[current];
+	}
+
+	/**
+	 * Hands over the producer's buffer to be written and gets the next one
+	 * to fill.
+	 *
+	 * @param length
+	 *            The number of characters in the buffer to write.
+	 * @param wait
+	 *            Whether to wait for a buffer to be free, rather than return
+	 *            null when the thread hasn't caught up.
+	 * @return The next buffer to fill, or null when none was free and the
+	 *         buffer was kept.
+	 */
+	public synchronized char[] exchange(int length, boolean wait)
+			throws IOException {
+		checkError();
+
+		// every buffer but the one being filled is waiting to be written
+		while (pending == ring.length - 1) {
+			if (!wait) {
+				return null;
+			}
+
+			await();
+			checkError();
+		}
+
+		lengths[current] = length;
+		pending++;
+		current = (current + 1) % ring.length;
+
+		notifyAll();
+
+		return ring[current];
+	}
+
+	/**
+	 * Waits until every buffer handed over has been written.
+	 */
+	public synchronized void awaitWritten() throws IOException {
+		while (pending > 0 || writing) {
+			checkError();
+			await();
+		}
+
+		checkError();
+	}
+
+	/**
+	 * Stops the thread once every buffer handed over has been written.
+	 */
+	public void stop() throws IOException {
+		synchronized (this) {
+			stopped = true;
+
+			notifyAll();
+		}
+
+		try {
+			awaitWritten();
+		} finally {
+			try {
+				thread.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private void await() throws IOException {
+		try {
+			wait();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException(
+					"Interrupted while waiting for data to be written.");
+		}
+	}
+
+	private void checkError() throws IOException {
+		if (error != null) {
+			throw new IOException("Writing to the destination failed.", error);
+		}
+	}
+
+	private void drain() {
+		while (true) {
+			char[] buffer;
+			int length;
+
+			synchronized (this) {
+				while (pending == 0 && !stopped) {
+					try {
+						wait();
+					} catch (InterruptedException ex) {
+						// only stop once asked to
+					}
+				}
+
+				if (pending == 0) {
+					return;
+				}
+
+				buffer = ring[head];
+				length = lengths[head];
+				writing = true;
+			}
+
+			Throwable failure = null;
+
+			try {
+				if (error == null) {
+					outputStream.write(buffer, 0, length);
+				}
+			} catch (Throwable ex) {
+				// anything the Writer throws is kept for the producer, since
+				// letting it end the thread would leave the producer waiting
+				failure = ex;
+			} finally {
+				synchronized (this) {
+					if (failure != null) {
+						error = failure;
+					}
+
+					head = (head + 1) % ring.length;
+					pending--;
+					writing = false;
+
+					notifyAll();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a block compressed file, see {@link CsvBlockFile CsvBlockFile}.
+ * Characters are held until {@link #endRecord endRecord()} reports a record
+ * boundary past the block size, so every block starts at a record.
+ */
+final class BlockCompressedWriter extends Writer {
+	private DataOutputStream out;
+
+	// one encoder for the whole file, so a byte order mark is only written
+	// at its start, and blocks can be decoded one after the other
+	private CharsetEncoder encoder;
+
+	private ByteBuffer encoded = ByteBuffer.allocate(0);
+
+	private int blockSize;
+
+	private Deflater deflater;
+
+	private char[] buffer;
+
+	private int length = 0;
+
+	// length of the buffer up to the end of the last complete record
+	private int boundary = 0;
+
+	private int boundaryRecords = 0;
+
+	private long position = 0;
+
+	private long recordCount = 0;
+
+	private byte[] compressed = new byte[0];
+
+	// index entries, written out on close
+	private ByteArrayOutputStream index = new ByteArrayOutputStream();
+
+	private DataOutputStream indexOut = new DataOutputStream(index);
+
+	private int blockCount = 0;
+
+	private boolean closed = false;
+
+	public BlockCompressedWriter(OutputStream out, Charset charset,
+			CsvDialect dialect, int blockSize, int compressionLevel)
+			throws IOException {
+		this.out = new DataOutputStream(out);
+		this.encoder = charset.newEncoder().onMalformedInput(
+				CodingErrorAction.REPLACE).onUnmappableCharacter(
+				CodingErrorAction.REPLACE);
+		this.blockSize = blockSize;
+		this.deflater = new Deflater(compressionLevel, true);
+		this.buffer = new char[Math.min(blockSize, 64 * 1024) + 1024];
+
+		this.out.write(CsvBlockFile.MAGIC);
+		this.out.writeUTF(charset.name());
+		this.out.writeChar(dialect.getDelimiter());
+		this.out.writeChar(dialect.getTextQualifier());
+		this.out.writeBoolean(dialect.getUseTextQualifier());
+		this.out.writeByte(dialect.getEscapeMode());
+		this.out.writeChar(dialect.getRecordDelimiter());
+		this.out.writeChar(dialect.getComment());
+
+		position = this.out.size();
+	}
+
+	public void write(char[] chars, int offset, int count) throws IOException {
+		checkClosed();
+
+		if (length + count > buffer.length) {
+			char[] holder = new char[Math.max(buffer.length * 2, length + count)];
+
+			System.arraycopy(buffer, 0, holder, 0, length);
+
+			buffer = holder;
+		}
+
+		System.arraycopy(chars, offset, buffer, length, count);
+
+		length += count;
+	}
+
+	public void write(String value, int offset, int count) throws IOException {
+		checkClosed();
+
+		if (length + count > buffer.length) {
+			char[] holder = new char[Math.max(buffer.length * 2, length + count)];
+
+			System.arraycopy(buffer, 0, holder, 0, length);
+
+			buffer = holder;
+		}
+
+		value.getChars(offset, offset + count, buffer, length);
+
+		length += count;
+	}
+
+	/**
+	 * Marks the end of a line in the data, counting it as a record unless it
+	 * was a comment.
+	 */
+	public void endRecord(boolean isRecord) throws IOException {
+		boundary = length;
+
+		if (isRecord) {
+			boundaryRecords++;
+		}
+
+		if (boundary >= blockSize) {
+			writeBlock(false);
+		}
+	}
+
+	/**
+	 * Writes out everything up to the last record boundary as a block.
+	 */
+	private void writeBlock(boolean last) throws IOException {
+		if (boundary == 0 && !last) {
+			return;
+		}
+
+		encode(CharBuffer.wrap(buffer, 0, boundary), last);
+
+		int uncompressedLength = encoded.position();
+
+		if (uncompressedLength == 0) {
+			return;
+		}
+
+		byte[] input = encoded.array();
+
+		if (compressed.length < uncompressedLength + 64) {
+			compressed = new byte[uncompressedLength
+					+ (uncompressedLength >> 3) + 64];
+		}
+
+		deflater.reset();
+		deflater.setInput(input, 0, uncompressedLength);
+		deflater.finish();
+
+		int compressedLength = 0;
+
+		while (!deflater.finished()) {
+			if (compressedLength == compressed.length) {
+				byte[] holder = new byte[compressed.length * 2];
+
+				System.arraycopy(compressed, 0, holder, 0, compressedLength);
+
+				compressed = holder;
+			}
+
+			compressedLength += deflater.deflate(compressed, compressedLength,
+					compressed.length - compressedLength);
+		}
+
+		indexOut.writeLong(position);
+		indexOut.writeInt(boundaryRecords);
+		indexOut.writeLong(recordCount);
+		blockCount++;
+
+		out.writeInt(compressedLength);
+		out.writeInt(uncompressedLength);
+		out.writeInt(boundaryRecords);
+		out.write(compressed, 0, compressedLength);
+
+		position += CsvBlockFile.BLOCK_HEADER_SIZE + compressedLength;
+		recordCount += boundaryRecords;
+
+		// keep any partial record for the next block
+		System.arraycopy(buffer, boundary, buffer, 0, length - boundary);
+
+		length -= boundary;
+		boundary = 0;
+		boundaryRecords = 0;
+	}
+
+	/**
+	 * Encodes the characters of a block, carrying the encoder's state over
+	 * from the block before, and flushing it after the last one.
+	 */
+	private void encode(CharBuffer chars, boolean last) {
+		encoded.clear();
+
+		// errors are replaced, so the only result besides underflow is a
+		// full buffer
+		while (encoder.encode(chars, encoded, last).isOverflow()) {
+			grow(chars.remaining());
+		}
+
+		if (last) {
+			while (encoder.flush(encoded).isOverflow()) {
+				grow(0);
+			}
+		}
+	}
+
+	private void grow(int remaining) {
+		ByteBuffer holder = ByteBuffer.allocate(Math.max(
+				encoded.capacity() * 2,
+				encoded.position()
+						+ (int) (remaining * encoder.maxBytesPerChar()) + 64));
+
+		encoded.flip();
+		holder.put(encoded);
+
+		encoded = holder;
+	}
+
+	/**
+	 * Writes out the complete records held so far as a block.&nbsp;A partial
+	 * record stays buffered, since blocks can only start at a record.
+	 */
+	public void flush() throws IOException {
+		checkClosed();
+
+		writeBlock(false);
+
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				// a final line without a line ending still ends a block
+				if (length > boundary) {
+					boundary = length;
+					boundaryRecords++;
+				}
+
+				writeBlock(true);
+
+				out.writeInt(0);
+				out.writeInt(blockCount);
+				index.writeTo(out);
+				out.writeLong(position);
+				out.write(CsvBlockFile.INDEX_MAGIC);
+				out.flush();
+			} finally {
+				closed = true;
+
+				deflater.end();
+				buffer = null;
+				compressed = null;
+
+				out.close();
+			}
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+	}
+}
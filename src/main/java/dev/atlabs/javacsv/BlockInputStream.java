@@ -0,0 +1,187 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Inflates the blocks of a block compressed file, see
+ * {@link CsvBlockFile CsvBlockFile}, one after the other until the end of
+ * blocks marker or the end of the stream.
+ */
+final class BlockInputStream extends InputStream {
+	private DataInputStream in;
+
+	private Inflater inflater = new Inflater(true);
+
+	private byte[] compressed = new byte[0];
+
+	private byte[] block = new byte[0];
+
+	private int blockLength = 0;
+
+	private int position = 0;
+
+	private boolean endOfBlocks = false;
+
+	private boolean closed = false;
+
+	public BlockInputStream(DataInputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Checks for the block compressed file magic number at the start of a
+	 * stream that supports {@link InputStream#mark mark()}.
+	 */
+	public static boolean isBlockFile(InputStream in) throws IOException {
+		byte[] magic = new byte[CsvBlockFile.MAGIC.length];
+
+		in.mark(magic.length);
+
+		int count = 0;
+		int read = 0;
+
+		while (count < magic.length
+				&& (read = in.read(magic, count, magic.length - count)) != -1) {
+			count += read;
+		}
+
+		in.reset();
+
+		return Arrays.equals(magic, CsvBlockFile.MAGIC);
+	}
+
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+
+		int count;
+
+		do {
+			count = read(single, 0, 1);
+		} while (count == 0);
+
+		return count == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+
+		if (length == 0) {
+			return 0;
+		}
+
+		while (position == blockLength) {
+			if (endOfBlocks || !nextBlock()) {
+				return -1;
+			}
+		}
+
+		int count = Math.min(length, blockLength - position);
+
+		System.arraycopy(block, position, buffer, offset, count);
+
+		position += count;
+
+		return count;
+	}
+
+	private boolean nextBlock() throws IOException {
+		int compressedLength;
+
+		try {
+			compressedLength = in.readInt();
+		} catch (EOFException ex) {
+			compressedLength = 0;
+		}
+
+		if (compressedLength == 0) {
+			endOfBlocks = true;
+
+			return false;
+		}
+
+		int uncompressedLength = in.readInt();
+
+		// record count, only needed by the index
+		in.readInt();
+
+		if (compressed.length < compressedLength) {
+			compressed = new byte[compressedLength];
+		}
+
+		if (block.length < uncompressedLength) {
+			block = new byte[uncompressedLength];
+		}
+
+		in.readFully(compressed, 0, compressedLength);
+
+		inflater.reset();
+		inflater.setInput(compressed, 0, compressedLength);
+
+		int count = 0;
+
+		try {
+			while (count < uncompressedLength && !inflater.finished()) {
+				int inflated = inflater.inflate(block, count,
+						uncompressedLength - count);
+
+				if (inflated == 0 && inflater.needsInput()) {
+					break;
+				}
+
+				count += inflated;
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupt block: " + ex.getMessage());
+		}
+
+		if (count != uncompressedLength) {
+			throw new IOException("Corrupt block: expected "
+					+ uncompressedLength + " bytes but inflated " + count + ".");
+		}
+
+		blockLength = uncompressedLength;
+		position = 0;
+
+		return true;
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			inflater.end();
+			compressed = null;
+			block = null;
+
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Counts how many bytes decoded characters took up in the source data, so
+ * positions in the parsed characters can be turned into byte offsets.
+ * <p>
+ * Runs of characters are counted independently of each other, so a byte
+ * order mark read by the decoder is never part of a count, and a charset
+ * whose encoder carries state from one character to the next, such as
+ * ISO-2022-JP, can't be counted at all.
+ */
+final class ByteCounter {
+	private static final int SINGLE_BYTE = 0;
+
+	private static final int UTF_8 = 1;
+
+	private static final int UTF_16 = 2;
+
+	private static final int UTF_32 = 3;
+
+	private static final int OTHER = 4;
+
+	// characters that are encoded one way or another by most charsets, used
+	// to find encoders that keep state between characters
+	private static final String PROBE_LETTERS = "A\u00e9\u0416\u3042\u4e00\uac00";
+
+	private Charset charset;
+
+	private int kind;
+
+	private CharsetEncoder encoder = null;
+
+	private boolean stateful = false;
+
+	public ByteCounter(Charset charset) {
+		this.charset = charset;
+
+		String name = charset.name();
+
+		if (name.equals("UTF-8")) {
+			kind = UTF_8;
+		} else if (name.equals("UTF-16") || name.equals("UTF-16BE")
+				|| name.equals("UTF-16LE")) {
+			kind = UTF_16;
+		} else if (name.equals("UTF-32") || name.equals("UTF-32BE")
+				|| name.equals("UTF-32LE")) {
+			kind = UTF_32;
+		} else if (charset.canEncode()
+				&& charset.newEncoder().maxBytesPerChar() == 1.0f) {
+			kind = SINGLE_BYTE;
+		} else {
+			kind = OTHER;
+			stateful = !charset.canEncode() || isStateful(charset.newEncoder());
+		}
+	}
+
+	/**
+	 * Finds encoders that switch between states, or start with a byte order
+	 * mark, by checking whether encoding a character twice takes twice the
+	 * bytes of encoding it once.
+	 */
+	private static boolean isStateful(CharsetEncoder encoder) {
+		try {
+			for (int i = 0; i < PROBE_LETTERS.length(); i++) {
+				char letter = PROBE_LETTERS.charAt(i);
+
+				if (encoder.canEncode(letter)) {
+					encoder.reset();
+					int single = encoder.encode(
+							CharBuffer.wrap(new char[] { letter })).remaining();
+
+					encoder.reset();
+					int pair = encoder.encode(
+							CharBuffer.wrap(new char[] { letter, letter }))
+							.remaining();
+
+					if (pair != 2 * single) {
+						return true;
+					}
+				}
+			}
+
+			return false;
+		} catch (CharacterCodingException ex) {
+			return true;
+		}
+	}
+
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Gets whether characters of this charset can be counted, which they
+	 * can't when its encoder keeps state between characters.
+	 */
+	public boolean canCount() {
+		return !stateful;
+	}
+
+	public long count(char[] buffer, int offset, int length) {
+		switch (kind) {
+		case SINGLE_BYTE:
+			return length;
+		case UTF_16:
+			return 2L * length;
+		case UTF_32:
+			long units = 0;
+
+			for (int i = offset; i < offset + length; i++) {
+				// each half of a pair counts for half of its 4 bytes
+				units += Character.isSurrogate(buffer[i]) ? 2 : 4;
+			}
+
+			return units;
+		case UTF_8:
+			long count = 0;
+
+			for (int i = offset; i < offset + length; i++) {
+				char letter = buffer[i];
+
+				if (letter < 0x80) {
+					count++;
+				} else if (letter < 0x800) {
+					count += 2;
+				} else if (Character.isSurrogate(letter)) {
+					// each half of a pair counts for half of its 4 bytes,
+					// which works even when a pair is split across buffers
+					count += 2;
+				} else {
+					count += 3;
+				}
+			}
+
+			return count;
+		default:
+			return countWithEncoder(buffer, offset, length);
+		}
+	}
+
+	private long countWithEncoder(char[] buffer, int offset, int length) {
+		if (encoder == null) {
+			encoder = charset.newEncoder().onMalformedInput(
+					CodingErrorAction.REPLACE).onUnmappableCharacter(
+					CodingErrorAction.REPLACE);
+		}
+
+		try {
+			encoder.reset();
+
+			ByteBuffer bytes = encoder.encode(CharBuffer.wrap(buffer, offset,
+					length));
+
+			return bytes.remaining();
+		} catch (CharacterCodingException ex) {
+			// can't happen when replacing errors
+			throw new IllegalStateException(ex.getMessage());
+		}
+	}
+}
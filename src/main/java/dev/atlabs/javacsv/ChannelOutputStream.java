@@ -0,0 +1,370 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+
+/**
+ * Writes to a {@link java.nio.channels.FileChannel FileChannel} through
+ * pooled direct buffers.&nbsp;Everything passed to one write is copied into
+ * as many buffers as it needs, and those are written with a single
+ * gathering write, so the caller controls how large the writes are.
+ * <p>
+ * A file opened by name can be written with O_DIRECT, through
+ * com.sun.nio.file.ExtendedOpenOption.DIRECT when the runtime has it, which
+ * keeps the data out of the page cache.&nbsp;Only whole blocks can be
+ * written that way, so the end of each write that doesn't fill a block is
+ * held until the next, and the last piece is written without O_DIRECT on
+ * close.&nbsp;When the option, aligned buffers or the file system don't
+ * allow it, the file is written normally instead.
+ */
+final class ChannelOutputStream extends OutputStream {
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private static final int MAX_GATHER = 16;
+
+	private static final int ALIGNMENT = 4096;
+
+	private static final int MAX_POOLED = 32;
+
+	private static final ArrayDeque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>();
+
+	private static final OpenOption DIRECT;
+
+	private static final Method ALIGNED_SLICE;
+
+	private static final Method GET_BLOCK_SIZE;
+
+	static {
+		OpenOption direct = null;
+		Method alignedSlice = null;
+		Method getBlockSize = null;
+
+		try {
+			// java 10 and later
+			Class<?> options = Class
+					.forName("com.sun.nio.file.ExtendedOpenOption");
+			direct = (OpenOption) options.getField("DIRECT").get(null);
+			alignedSlice = ByteBuffer.class.getMethod("alignedSlice",
+					int.class);
+			getBlockSize = FileStore.class.getMethod("getBlockSize");
+		} catch (Exception e) {
+			direct = null;
+		}
+
+		DIRECT = direct;
+		ALIGNED_SLICE = alignedSlice;
+		GET_BLOCK_SIZE = getBlockSize;
+	}
+
+	private FileChannel channel;
+
+	private Path path;
+
+	private boolean direct;
+
+	private long preallocateSize;
+
+	private ByteBuffer[] buffers = new ByteBuffer[MAX_GATHER];
+
+	// the number of buffers holding data, all full but the last
+	private int used = 0;
+
+	private long written = 0;
+
+	private ChannelOutputStream(FileChannel channel, Path path,
+			boolean direct, long preallocateSize) {
+		this.channel = channel;
+		this.path = path;
+		this.direct = direct;
+		this.preallocateSize = preallocateSize;
+	}
+
+	/**
+	 * Creates a stream writing to a channel from its current position.
+	 */
+	public static ChannelOutputStream wrap(FileChannel channel) {
+		return new ChannelOutputStream(channel, null, false, 0);
+	}
+
+	/**
+	 * Creates or truncates a file and opens a stream to write it.
+	 *
+	 * @param fileName
+	 *            The path to the file.
+	 * @param direct
+	 *            Whether to try to write the file with O_DIRECT.
+	 * @param preallocateSize
+	 *            The size to grow the file to up front, or 0; the file is
+	 *            cut back to the data written when the stream is closed.
+	 */
+	public static ChannelOutputStream open(String fileName, boolean direct,
+			long preallocateSize) throws IOException {
+		Path path = Paths.get(fileName);
+		FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		if (direct) {
+			direct = false;
+
+			if (DIRECT != null && ALIGNED_SLICE != null) {
+				try {
+					long blockSize = ((Number) GET_BLOCK_SIZE.invoke(Files
+							.getFileStore(path))).longValue();
+
+					if (blockSize > 0 && ALIGNMENT % blockSize == 0) {
+						FileChannel directChannel = FileChannel.open(path,
+								StandardOpenOption.WRITE, DIRECT);
+
+						channel.close();
+						channel = directChannel;
+						direct = true;
+					}
+				} catch (Exception e) {
+					// the file system doesn't support it, write normally
+				}
+			}
+		}
+
+		try {
+			if (preallocateSize > 0) {
+				channel.write(ByteBuffer.wrap(new byte[ALIGNMENT]),
+						(preallocateSize + ALIGNMENT - 1) / ALIGNMENT
+								* ALIGNMENT - ALIGNMENT);
+			}
+		} catch (IOException ex) {
+			channel.close();
+
+			throw ex;
+		}
+
+		return new ChannelOutputStream(channel, path, direct, preallocateSize);
+	}
+
+	/**
+	 * Gets whether the file is being written with O_DIRECT.
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	public void write(int value) throws IOException {
+		checkClosed();
+
+		current().put((byte) value);
+	}
+
+	public void write(byte[] bytes, int offset, int length)
+			throws IOException {
+		checkClosed();
+
+		while (length > 0) {
+			ByteBuffer buffer = current();
+			int count = Math.min(length, buffer.remaining());
+
+			buffer.put(bytes, offset, count);
+
+			offset += count;
+			length -= count;
+		}
+
+		writeBuffers();
+	}
+
+	/**
+	 * Gets the buffer to add data to, writing out the held buffers when they
+	 * are all full.
+	 */
+	private ByteBuffer current() throws IOException {
+		if (used > 0 && buffers[used - 1].hasRemaining()) {
+			return buffers[used - 1];
+		}
+
+		if (used == MAX_GATHER) {
+			writeBuffers();
+
+			if (used > 0 && buffers[used - 1].hasRemaining()) {
+				return buffers[used - 1];
+			}
+		}
+
+		if (buffers[used] == null) {
+			buffers[used] = acquire();
+		}
+
+		return buffers[used++];
+	}
+
+	/**
+	 * Writes the held buffers with one gathering write, leaving any part of
+	 * the last block in the first buffer when writing with O_DIRECT.
+	 */
+	private void writeBuffers() throws IOException {
+		if (used == 0) {
+			return;
+		}
+
+		ByteBuffer last = buffers[used - 1];
+		int tail = direct ? last.position() % ALIGNMENT : 0;
+
+		long length = -tail;
+
+		for (int i = 0; i < used; i++) {
+			buffers[i].flip();
+			length += buffers[i].remaining();
+		}
+
+		last.limit(last.limit() - tail);
+
+		for (long count = 0; count < length;) {
+			count += channel.write(buffers, 0, used);
+		}
+
+		written += length;
+
+		last.limit(last.limit() + tail);
+
+		for (int i = 0; i < used - 1; i++) {
+			buffers[i].clear();
+		}
+
+		// keep the part of a block that couldn't be written yet
+		ByteBuffer first = buffers[0];
+
+		if (last != first) {
+			first.clear();
+			first.put(last);
+			last.clear();
+		} else {
+			first.compact();
+		}
+
+		used = first.position() > 0 ? 1 : 0;
+	}
+
+	public void flush() throws IOException {
+		checkClosed();
+
+		writeBuffers();
+	}
+
+	public void close() throws IOException {
+		if (channel == null) {
+			return;
+		}
+
+		try {
+			writeBuffers();
+
+			FileChannel tailChannel = channel;
+
+			if (used > 0) {
+				// the last, partial block can't be written with O_DIRECT
+				channel.close();
+
+				tailChannel = FileChannel.open(path, StandardOpenOption.WRITE);
+
+				ByteBuffer tail = buffers[0];
+				tail.flip();
+
+				while (tail.hasRemaining()) {
+					written += tailChannel.write(tail, written);
+				}
+
+				used = 0;
+			}
+
+			try {
+				if (preallocateSize > 0) {
+					tailChannel.truncate(written);
+				}
+			} finally {
+				tailChannel.close();
+			}
+		} finally {
+			channel.close();
+			channel = null;
+
+			for (int i = 0; i < buffers.length; i++) {
+				if (buffers[i] != null) {
+					release(buffers[i]);
+					buffers[i] = null;
+				}
+			}
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (channel == null) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	private static ByteBuffer acquire() {
+		synchronized (pool) {
+			ByteBuffer buffer = pool.pollFirst();
+
+			if (buffer != null) {
+				buffer.clear();
+
+				return buffer;
+			}
+		}
+
+		if (ALIGNED_SLICE != null) {
+			try {
+				// every pooled buffer is aligned, so any can be used for
+				// O_DIRECT
+				ByteBuffer aligned = (ByteBuffer) ALIGNED_SLICE.invoke(
+						ByteBuffer.allocateDirect(BUFFER_SIZE + ALIGNMENT),
+						ALIGNMENT);
+
+				aligned.limit(BUFFER_SIZE);
+
+				return aligned.slice();
+			} catch (Exception e) {
+				// fall through to an unaligned buffer
+			}
+		}
+
+		return ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	private static void release(ByteBuffer buffer) {
+		synchronized (pool) {
+			if (pool.size() < MAX_POOLED) {
+				pool.addFirst(buffer);
+			}
+		}
+	}
+}
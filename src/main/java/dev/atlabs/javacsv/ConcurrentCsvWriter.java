@@ -0,0 +1,323 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Writes whole records from many threads at once to a single
+ * {@link CsvWriter CsvWriter}.&nbsp;Each thread formats its records into its
+ * own buffer, using the settings of the writer, then claims the next
+ * sequence number and publishes the record in that slot of a ring, without
+ * taking a lock.&nbsp;Published records are written out in sequence order
+ * by whichever thread finds the writer free, so records never interleave,
+ * and formatting, usually most of the work, runs in parallel.
+ * <p>
+ * A thread only waits when the ring is full, helping to write records out
+ * while it does.&nbsp;The writer's settings should not be changed once
+ * records are being written, and it should only be used through this
+ * object.&nbsp;Writing it asynchronously keeps slow storage off the
+ * threads writing records.
+ */
+public class ConcurrentCsvWriter implements Closeable {
+	private CsvWriter writer;
+
+	private CsvDialect dialect;
+
+	private int[] columnQuoting;
+
+	private int mask;
+
+	// the records in the ring, and the sequence number each slot was last
+	// published with
+	private char[][] slots;
+
+	private int[] lengths;
+
+	private AtomicLongArray published;
+
+	// the next sequence number to claim, and the number of records written
+	private AtomicLong claimed = new AtomicLong();
+
+	private AtomicLong written = new AtomicLong();
+
+	// held by the thread writing records out to the writer
+	private AtomicBoolean writing = new AtomicBoolean();
+
+	private volatile IOException error = null;
+
+	private volatile boolean closed = false;
+
+	private ThreadLocal<Formatter> formatters = new ThreadLocal<Formatter>();
+
+	/**
+	 * Creates a concurrent writer with room for 1024 records waiting to be
+	 * written.
+	 *
+	 * @param writer
+	 *            The writer to write the records to.
+	 */
+	public ConcurrentCsvWriter(CsvWriter writer) {
+		this(writer, StaticSettings.RING_SIZE);
+	}
+
+	/**
+	 * Creates a concurrent writer.
+	 *
+	 * @param writer
+	 *            The writer to write the records to.
+	 * @param ringSize
+	 *            The number of records that can wait to be written, rounded
+	 *            up to a power of 2.
+	 */
+	public ConcurrentCsvWriter(CsvWriter writer, int ringSize) {
+		if (writer == null) {
+			throw new IllegalArgumentException(
+					"Parameter writer can not be null.");
+		}
+
+		if (ringSize <= 0) {
+			throw new IllegalArgumentException(
+					"Parameter ringSize must be larger than 0.");
+		}
+
+		int size = 1;
+
+		while (size < ringSize) {
+			size <<= 1;
+		}
+
+		this.writer = writer;
+		this.dialect = writer.getDialect();
+		this.columnQuoting = writer.getColumnQuoting();
+
+		mask = size - 1;
+		slots = new char[size][];
+		lengths = new int[size];
+		published = new AtomicLongArray(size);
+
+		for (int i = 0; i < size; i++) {
+			published.set(i, -1);
+		}
+	}
+
+	/**
+	 * Writes a record from any thread.
+	 *
+	 * @param values
+	 *            Values to be written.
+	 * @param preserveSpaces
+	 *            Whether to preserve leading and trailing whitespace in
+	 *            column data.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or for an earlier record.
+	 */
+	public void writeRecord(String[] values, boolean preserveSpaces)
+			throws IOException {
+		checkClosed();
+
+		Formatter formatter = formatters.get();
+
+		if (formatter == null) {
+			formatter = new Formatter(dialect, columnQuoting);
+			formatters.set(formatter);
+		}
+
+		formatter.Buffer.Length = 0;
+		formatter.Writer.writeRecord(values, preserveSpaces);
+
+		long sequence = claimed.getAndIncrement();
+
+		// wait for the slot to be written out, helping if nobody else is
+		while (sequence - written.get() > mask) {
+			writeOut();
+
+			if (sequence - written.get() > mask) {
+				Thread.yield();
+			}
+		}
+
+		int slot = (int) (sequence & mask);
+
+		// swap buffers with the slot rather than copy the record
+		char[] free = slots[slot];
+
+		slots[slot] = formatter.Buffer.Chars;
+		lengths[slot] = formatter.Buffer.Length;
+		formatter.Buffer.Chars = free != null ? free : new char[256];
+
+		published.set(slot, sequence);
+
+		writeOut();
+
+		checkError();
+	}
+
+	/**
+	 * Writes a record from any thread.&nbsp;Does not preserve leading and
+	 * trailing whitespace in column data.
+	 *
+	 * @param values
+	 *            Values to be written.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or for an earlier record.
+	 */
+	public void writeRecord(String[] values) throws IOException {
+		writeRecord(values, false);
+	}
+
+	/**
+	 * Writes out every published record in order, unless another thread is
+	 * already doing so.
+	 */
+	private void writeOut() {
+		while (writing.compareAndSet(false, true)) {
+			try {
+				long next = written.get();
+
+				while (published.get((int) (next & mask)) == next) {
+					int slot = (int) (next & mask);
+
+					if (error == null) {
+						try {
+							writer.writeRaw(slots[slot], 0, lengths[slot]);
+						} catch (IOException ex) {
+							error = ex;
+						}
+					}
+
+					next++;
+					written.set(next);
+				}
+			} finally {
+				writing.set(false);
+			}
+
+			// a record published after the last check, while this thread
+			// still held the writer, would otherwise wait for the next one
+			long next = written.get();
+
+			if (published.get((int) (next & mask)) != next) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Waits until every record written before this call has been written to
+	 * the writer, then flushes it.
+	 *
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void flush() throws IOException {
+		checkClosed();
+
+		awaitWritten();
+
+		while (!writing.compareAndSet(false, true)) {
+			Thread.yield();
+		}
+
+		try {
+			checkError();
+
+			writer.flush();
+		} finally {
+			writing.set(false);
+		}
+
+		writeOut();
+	}
+
+	private void awaitWritten() {
+		long target = claimed.get();
+
+		while (written.get() < target) {
+			writeOut();
+
+			if (written.get() < target) {
+				Thread.yield();
+			}
+		}
+	}
+
+	/**
+	 * Waits for every record to be written, then closes the writer.&nbsp;No
+	 * records may be written while or after closing.
+	 */
+	public void close() {
+		if (!closed) {
+			closed = true;
+
+			awaitWritten();
+
+			writer.close();
+		}
+	}
+
+	private void checkError() throws IOException {
+		IOException failure = error;
+
+		if (failure != null) {
+			throw new IOException("Writing to the destination failed.",
+					failure);
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+					"This instance of the ConcurrentCsvWriter class has already been closed.");
+		}
+	}
+
+	/**
+	 * Formats records for one thread.
+	 */
+	private static class Formatter {
+		public RecordBuffer Buffer = new RecordBuffer();
+
+		public CsvWriter Writer;
+
+		public Formatter(CsvDialect dialect, int[] columnQuoting) {
+			Writer = new CsvWriter(Buffer, dialect);
+			Writer.setBufferSize(StaticSettings.FORMAT_BUFFER_SIZE);
+			Writer.setColumnQuoting(columnQuoting);
+
+			// hand over every record as soon as it ends
+			Writer.setFlushThreshold(1);
+		}
+	}
+
+	private class StaticSettings {
+		public static final int RING_SIZE = 1024;
+
+		public static final int FORMAT_BUFFER_SIZE = 4 * 1024;
+	}
+}
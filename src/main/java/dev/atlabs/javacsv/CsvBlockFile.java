@@ -0,0 +1,440 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Random access to a block compressed file written by a
+ * {@link CsvWriter CsvWriter} with
+ * {@link CsvWriter#setUseBlockCompression setUseBlockCompression(true)}.
+ * <p>
+ * The file is made of independently deflated blocks that always start at a
+ * record boundary, followed by an index of the position, record count and
+ * first record number of every block.&nbsp;This allows opening a
+ * {@link CsvReader CsvReader} positioned directly at any record, or one
+ * reader per block to scan the file in parallel.&nbsp;Readers opened from
+ * the same {@link CsvBlockFile CsvBlockFile} may be used from different
+ * threads.
+ * <p>
+ * Record numbers in the index count the calls to
+ * {@link CsvWriter#endRecord endRecord()} made while writing, so a header
+ * row is record 0 and an empty record counts as a record, while comments
+ * written with {@link CsvWriter#writeComment writeComment()} are not
+ * records.&nbsp;Readers opened from the file are set up to match, with the
+ * settings the data was written with.
+ */
+public class CsvBlockFile implements Closeable {
+	// file layout:
+	// header: MAGIC, charset name (modified UTF-8), delimiter (char), text
+	// qualifier (char), use text qualifier (boolean), escape mode (byte),
+	// record delimiter (char, '\0' for any line ending), comment (char)
+	// blocks: compressed length (int, > 0), uncompressed length (int),
+	// record count (int), raw deflate data
+	// end of blocks: 0 (int)
+	// index: block count (int), then per block its offset (long), record
+	// count (int) and first record number (long)
+	// trailer: offset of the end of blocks marker (long), INDEX_MAGIC
+
+	static final byte[] MAGIC = new byte[] { 'J', 'C', 'S', 'V', 'B', 'L',
+			'K', '1' };
+
+	static final byte[] INDEX_MAGIC = new byte[] { 'J', 'C', 'S', 'V', 'I',
+			'D', 'X', '1' };
+
+	static final int BLOCK_HEADER_SIZE = 12;
+
+	static final int TRAILER_SIZE = 16;
+
+	private String fileName;
+
+	private RandomAccessFile file;
+
+	private FileChannel channel;
+
+	private Charset charset;
+
+	private CsvDialect dialect;
+
+	private long[] blockOffsets;
+
+	private int[] blockRecordCounts;
+
+	private long[] firstRecords;
+
+	private long endOfBlocks;
+
+	private boolean closed = false;
+
+	/**
+	 * Opens a block compressed file and reads its index.
+	 *
+	 * @param fileName
+	 *            The path to the file.
+	 * @exception IOException
+	 *                Thrown if the file can't be read or isn't a block
+	 *                compressed file.
+	 */
+	public CsvBlockFile(String fileName) throws IOException {
+		if (fileName == null) {
+			throw new IllegalArgumentException(
+					"Parameter fileName can not be null.");
+		}
+
+		this.fileName = fileName;
+
+		file = new RandomAccessFile(fileName, "r");
+		channel = file.getChannel();
+
+		try {
+			readHeader();
+			readIndex();
+		} catch (IOException ex) {
+			close();
+
+			throw ex;
+		}
+	}
+
+	private void readHeader() throws IOException {
+		byte[] magic = new byte[MAGIC.length];
+
+		file.seek(0);
+		file.readFully(magic);
+
+		if (!Arrays.equals(magic, MAGIC)) {
+			throw new IOException("File " + fileName
+					+ " is not a block compressed CSV file.");
+		}
+
+		charset = Charset.forName(file.readUTF());
+		dialect = readDialect(file, fileName);
+	}
+
+	/**
+	 * Reads the settings stored in the header after the charset name.
+	 */
+	static CsvDialect readDialect(DataInput in, String fileName)
+			throws IOException {
+		char delimiter = in.readChar();
+		char textQualifier = in.readChar();
+		boolean useTextQualifier = in.readBoolean();
+		int escapeMode = in.readByte();
+		char recordDelimiter = in.readChar();
+		char comment = in.readChar();
+
+		if (escapeMode != CsvReader.ESCAPE_MODE_DOUBLED
+				&& escapeMode != CsvReader.ESCAPE_MODE_BACKSLASH) {
+			throw new IOException("File " + fileName
+					+ " has an unknown escape mode " + escapeMode + ".");
+		}
+
+		// comments and empty lines are read the way the index counted them
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, true, true, false, false);
+	}
+
+	private void readIndex() throws IOException {
+		long length = file.length();
+
+		if (length < TRAILER_SIZE) {
+			throw new IOException("File " + fileName
+					+ " has no block index.");
+		}
+
+		byte[] indexMagic = new byte[INDEX_MAGIC.length];
+
+		file.seek(length - TRAILER_SIZE);
+		endOfBlocks = file.readLong();
+		file.readFully(indexMagic);
+
+		if (!Arrays.equals(indexMagic, INDEX_MAGIC)) {
+			throw new IOException("File " + fileName
+					+ " has no block index, it may not have been closed.");
+		}
+
+		// skip the end of blocks marker
+		file.seek(endOfBlocks + 4);
+
+		int blockCount = file.readInt();
+
+		blockOffsets = new long[blockCount];
+		blockRecordCounts = new int[blockCount];
+		firstRecords = new long[blockCount];
+
+		for (int i = 0; i < blockCount; i++) {
+			blockOffsets[i] = file.readLong();
+			blockRecordCounts[i] = file.readInt();
+			firstRecords[i] = file.readLong();
+		}
+	}
+
+	/**
+	 * Gets the {@link java.nio.charset.Charset Charset} the data was written
+	 * with.
+	 *
+	 * @return The {@link java.nio.charset.Charset Charset} the data was
+	 *         written with.
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+
+	/**
+	 * Gets the column delimiter the data was written with.
+	 *
+	 * @return The column delimiter the data was written with.
+	 */
+	public char getDelimiter() {
+		return dialect.getDelimiter();
+	}
+
+	/**
+	 * Gets the settings the data was written with, as used by the readers
+	 * opened from this file.&nbsp;Comments are skipped and empty records are
+	 * kept, to match the record numbers in the index.
+	 *
+	 * @return The settings the data was written with.
+	 */
+	public CsvDialect getDialect() {
+		return dialect;
+	}
+
+	/**
+	 * Gets the number of blocks in the file.
+	 *
+	 * @return The number of blocks in the file.
+	 */
+	public int getBlockCount() {
+		return blockOffsets.length;
+	}
+
+	/**
+	 * Gets the number of records in the file.
+	 *
+	 * @return The number of records in the file.
+	 */
+	public long getRecordCount() {
+		int last = blockOffsets.length - 1;
+
+		return last < 0 ? 0 : firstRecords[last] + blockRecordCounts[last];
+	}
+
+	/**
+	 * Gets the record number of the first record in a block.
+	 *
+	 * @param block
+	 *            The index of the block.
+	 * @return The record number of the first record in the block.
+	 */
+	public long getFirstRecord(int block) {
+		return firstRecords[block];
+	}
+
+	/**
+	 * Gets the number of records in a block.
+	 *
+	 * @param block
+	 *            The index of the block.
+	 * @return The number of records in the block.
+	 */
+	public int getBlockRecordCount(int block) {
+		return blockRecordCounts[block];
+	}
+
+	/**
+	 * Finds the block holding a record.
+	 *
+	 * @param record
+	 *            The record number.
+	 * @return The index of the block holding the record.
+	 */
+	public int findBlock(long record) {
+		if (record < 0 || record >= getRecordCount()) {
+			throw new IndexOutOfBoundsException("Record " + record
+					+ " is outside of the file's " + getRecordCount()
+					+ " records.");
+		}
+
+		int low = 0;
+		int high = firstRecords.length - 1;
+
+		// find the last block starting at or before the record, skipping
+		// any blocks that hold no records
+		while (low < high) {
+			int middle = (low + high + 1) >>> 1;
+
+			if (firstRecords[middle] <= record) {
+				low = middle;
+			} else {
+				high = middle - 1;
+			}
+		}
+
+		while (blockRecordCounts[low] == 0
+				|| record >= firstRecords[low] + blockRecordCounts[low]) {
+			low++;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Opens a reader over all of the records in the file.
+	 *
+	 * @return The reader.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public CsvReader openReader() throws IOException {
+		return openBlocks(0, blockOffsets.length);
+	}
+
+	/**
+	 * Opens a reader whose next call to {@link CsvReader#readRecord
+	 * readRecord()} returns the given record, only decompressing the block
+	 * that holds it and the ones after it.
+	 *
+	 * @param record
+	 *            The record number to start at.
+	 * @return The reader.
+	 * @exception IOException
+	 *                Thrown if an error occurs while reading the file.
+	 */
+	public CsvReader openReader(long record) throws IOException {
+		int block = findBlock(record);
+
+		CsvReader reader = openBlocks(block, blockOffsets.length);
+
+		for (long i = firstRecords[block]; i < record; i++) {
+			reader.skipRecord();
+		}
+
+		return reader;
+	}
+
+	/**
+	 * Opens a reader over the records of a single block.&nbsp;Opening one
+	 * reader per block lets the file be scanned in parallel.
+	 *
+	 * @param block
+	 *            The index of the block.
+	 * @return The reader.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public CsvReader openBlock(int block) throws IOException {
+		if (block < 0 || block >= blockOffsets.length) {
+			throw new IndexOutOfBoundsException("Block " + block
+					+ " is outside of the file's " + blockOffsets.length
+					+ " blocks.");
+		}
+
+		return openBlocks(block, block + 1);
+	}
+
+	private CsvReader openBlocks(int first, int end) throws IOException {
+		checkClosed();
+
+		long start = first < blockOffsets.length ? blockOffsets[first]
+				: endOfBlocks;
+		long stop = end < blockOffsets.length ? blockOffsets[end] : endOfBlocks;
+
+		return new CsvReader(new InputStreamReader(new BlockInputStream(
+				new DataInputStream(new ChannelInputStream(channel, start,
+						stop))), charset), dialect);
+	}
+
+	/**
+	 * Closes the file.&nbsp;Readers opened from it can no longer be used.
+	 */
+	public void close() {
+		if (!closed) {
+			try {
+				file.close();
+			} catch (Exception e) {
+				// just eat the exception
+			}
+
+			closed = true;
+		}
+	}
+
+	/**
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+					"This instance of the CsvBlockFile class has already been closed.");
+		}
+	}
+
+	/**
+	 * Reads a range of a file channel with positional reads, so several of
+	 * these can share one channel across threads.
+	 */
+	private static class ChannelInputStream extends java.io.InputStream {
+		private FileChannel channel;
+
+		private long position;
+
+		private long end;
+
+		public ChannelInputStream(FileChannel channel, long position, long end) {
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+		}
+
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+
+			return read(single, 0, 1) == -1 ? -1 : single[0] & 0xFF;
+		}
+
+		public int read(byte[] buffer, int offset, int length)
+				throws IOException {
+			if (position >= end) {
+				return -1;
+			}
+
+			int count = channel.read(ByteBuffer.wrap(buffer, offset, (int) Math
+					.min(length, end - position)), position);
+
+			if (count > 0) {
+				position += count;
+			}
+
+			return count;
+		}
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Serializable;
+
+/**
+ * The position of a {@link CsvReader CsvReader} between two records, taken
+ * with {@link CsvReader#getCheckpoint getCheckpoint()}.&nbsp;It holds the
+ * byte offset of the next record, the current record number, the headers
+ * and the parsing settings, so a reader created with
+ * {@link CsvReader#resume CsvReader.resume()} carries on from the same place
+ * by seeking straight to the offset instead of parsing everything before it.
+ * <p>
+ * Checkpoints are serializable so they can be saved alongside the results of
+ * an ingestion job and used to restart it after a crash.
+ */
+public final class CsvCheckpoint implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// these are filled in by CsvReader
+	long ByteOffset;
+
+	long CurrentRecord;
+
+	String[] Headers;
+
+	String CharsetName;
+
+	char Delimiter;
+
+	char TextQualifier;
+
+	boolean UseTextQualifier;
+
+	int EscapeMode;
+
+	char RecordDelimiter;
+
+	boolean UseCustomRecordDelimiter;
+
+	char Comment;
+
+	boolean UseComments;
+
+	boolean TrimWhitespace;
+
+	boolean SkipEmptyRecords;
+
+	boolean SafetySwitch;
+
+	boolean CaptureRawRecord;
+
+	// the last character parsed, so a line feed after a carriage return
+	// isn't read as an extra line
+	char LastLetter;
+
+	CsvCheckpoint() {
+	}
+
+	/**
+	 * Gets the offset in the data, in bytes, of the next record.&nbsp;For a
+	 * compressed file, this is the offset in the decompressed data.
+	 *
+	 * @return The offset in the data of the next record.
+	 */
+	public long getByteOffset() {
+		return ByteOffset;
+	}
+
+	/**
+	 * Gets the index of the current record, as returned by
+	 * {@link CsvReader#getCurrentRecord getCurrentRecord()}.
+	 *
+	 * @return The index of the current record.
+	 */
+	public long getCurrentRecord() {
+		return CurrentRecord - 1;
+	}
+
+	/**
+	 * Gets the headers the reader had, if any.
+	 *
+	 * @return The headers, or null if there weren't any.
+	 */
+	public String[] getHeaders() {
+		return Headers == null ? null : Headers.clone();
+	}
+
+	/**
+	 * Gets the name of the {@link java.nio.charset.Charset Charset} the data
+	 * is decoded with.
+	 *
+	 * @return The name of the {@link java.nio.charset.Charset Charset}.
+	 */
+	public String getCharsetName() {
+		return CharsetName;
+	}
+
+	/**
+	 * Gets the column delimiter.
+	 *
+	 * @return The column delimiter.
+	 */
+	public char getDelimiter() {
+		return Delimiter;
+	}
+}
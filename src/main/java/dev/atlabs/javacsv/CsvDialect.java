@@ -0,0 +1,457 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Serializable;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dev.atlabs.javacsv.CsvReader.Letters;
+
+/**
+ * An immutable set of the settings that describe a delimited data format,
+ * which can be shared between any number of {@link CsvReader CsvReader} and
+ * {@link CsvWriter CsvWriter} objects and threads.&nbsp;Each
+ * <code>with</code> method returns a copy with one setting changed.
+ * <p>
+ * Settings that only apply to reading, such as trimming whitespace, are
+ * ignored by writers, and settings that only apply to writing, such as
+ * forcing qualifiers, are ignored by readers.&nbsp;A table of which
+ * characters are special in the format is built the first time it is needed
+ * and then shared by everything using the dialect.
+ */
+public final class CsvDialect implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Comma delimited data with double quotes as the text qualifier, the
+	 * default for readers and writers.
+	 */
+	public static final CsvDialect DEFAULT = new CsvDialect(Letters.COMMA,
+			Letters.QUOTE, true, CsvReader.ESCAPE_MODE_DOUBLED, Letters.NULL,
+			Letters.POUND, false, true, true, false);
+
+	/**
+	 * Tab delimited data, otherwise the same as {@link #DEFAULT DEFAULT}.
+	 */
+	public static final CsvDialect TAB = DEFAULT.withDelimiter(Letters.TAB);
+
+	// bits of the character class table
+	static final int DELIMITER = 1;
+
+	static final int QUALIFIER = 2;
+
+	static final int LINE_BREAK = 4;
+
+	static final int COMMENT = 8;
+
+	static final int ESCAPE = 16;
+
+	static final int WHITESPACE = 32;
+
+	private final char delimiter;
+
+	private final char textQualifier;
+
+	private final boolean useTextQualifier;
+
+	private final int escapeMode;
+
+	private final char recordDelimiter;
+
+	private final char comment;
+
+	private final boolean useComments;
+
+	private final boolean trimWhitespace;
+
+	private final boolean skipEmptyRecords;
+
+	private final boolean forceQualifier;
+
+	private transient volatile byte[] charClasses = null;
+
+	// dialects built from the settings of readers and writers, shared so
+	// that each format only builds its character table once
+	private static final ConcurrentHashMap<CsvDialect, CsvDialect> interned = new ConcurrentHashMap<CsvDialect, CsvDialect>();
+
+	private static final int MAX_INTERNED = 64;
+
+	CsvDialect(char delimiter, char textQualifier,
+			boolean useTextQualifier, int escapeMode, char recordDelimiter,
+			char comment, boolean useComments, boolean trimWhitespace,
+			boolean skipEmptyRecords, boolean forceQualifier) {
+		if (escapeMode != CsvReader.ESCAPE_MODE_DOUBLED
+				&& escapeMode != CsvReader.ESCAPE_MODE_BACKSLASH) {
+			throw new IllegalArgumentException(
+					"Parameter escapeMode must be a valid value.");
+		}
+
+		this.delimiter = delimiter;
+		this.textQualifier = textQualifier;
+		this.useTextQualifier = useTextQualifier;
+		this.escapeMode = escapeMode;
+		this.recordDelimiter = recordDelimiter;
+		this.comment = comment;
+		this.useComments = useComments;
+		this.trimWhitespace = trimWhitespace;
+		this.skipEmptyRecords = skipEmptyRecords;
+		this.forceQualifier = forceQualifier;
+	}
+
+	/**
+	 * Gets the character used as the column delimiter.
+	 *
+	 * @return The character used as the column delimiter.
+	 */
+	public char getDelimiter() {
+		return delimiter;
+	}
+
+	/**
+	 * Gets the character used as the text qualifier.
+	 *
+	 * @return The character used as the text qualifier.
+	 */
+	public char getTextQualifier() {
+		return textQualifier;
+	}
+
+	/**
+	 * Whether text qualifiers are used.
+	 *
+	 * @return Whether text qualifiers are used.
+	 */
+	public boolean getUseTextQualifier() {
+		return useTextQualifier;
+	}
+
+	/**
+	 * Gets how text qualifiers inside qualified columns are escaped, either
+	 * {@link CsvReader#ESCAPE_MODE_DOUBLED ESCAPE_MODE_DOUBLED} or
+	 * {@link CsvReader#ESCAPE_MODE_BACKSLASH ESCAPE_MODE_BACKSLASH}.
+	 *
+	 * @return The escape mode.
+	 */
+	public int getEscapeMode() {
+		return escapeMode;
+	}
+
+	/**
+	 * Gets the character used as the record delimiter.
+	 *
+	 * @return The character used as the record delimiter, or '\0' when
+	 *         records end with a carriage return, a line feed or both.
+	 */
+	public char getRecordDelimiter() {
+		return recordDelimiter;
+	}
+
+	/**
+	 * Gets the character used to start a comment line.
+	 *
+	 * @return The character used to start a comment line.
+	 */
+	public char getComment() {
+		return comment;
+	}
+
+	/**
+	 * Whether comment lines are skipped while reading.
+	 *
+	 * @return Whether comment lines are skipped while reading.
+	 */
+	public boolean getUseComments() {
+		return useComments;
+	}
+
+	/**
+	 * Whether leading and trailing whitespace is trimmed from columns that
+	 * aren't qualified while reading.
+	 *
+	 * @return Whether whitespace is trimmed while reading.
+	 */
+	public boolean getTrimWhitespace() {
+		return trimWhitespace;
+	}
+
+	/**
+	 * Whether empty records are skipped while reading.
+	 *
+	 * @return Whether empty records are skipped while reading.
+	 */
+	public boolean getSkipEmptyRecords() {
+		return skipEmptyRecords;
+	}
+
+	/**
+	 * Whether every column is qualified while writing, even when it doesn't
+	 * need to be.
+	 *
+	 * @return Whether every column is qualified while writing.
+	 */
+	public boolean getForceQualifier() {
+		return forceQualifier;
+	}
+
+	/**
+	 * Returns a copy of this dialect with a different column delimiter.
+	 *
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withDelimiter(char delimiter) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect with a different text qualifier.
+	 *
+	 * @param textQualifier
+	 *            The character to use as the text qualifier.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withTextQualifier(char textQualifier) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect that does or doesn't use text
+	 * qualifiers.
+	 *
+	 * @param useTextQualifier
+	 *            Whether to use text qualifiers.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withUseTextQualifier(boolean useTextQualifier) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect with a different escape mode.
+	 *
+	 * @param escapeMode
+	 *            Either {@link CsvReader#ESCAPE_MODE_DOUBLED
+	 *            ESCAPE_MODE_DOUBLED} or
+	 *            {@link CsvReader#ESCAPE_MODE_BACKSLASH ESCAPE_MODE_BACKSLASH}.
+	 * @return The new dialect.
+	 * @exception IllegalArgumentException
+	 *                When an illegal value is specified for escapeMode.
+	 */
+	public CsvDialect withEscapeMode(int escapeMode) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect with a different record delimiter.
+	 *
+	 * @param recordDelimiter
+	 *            The character to use as the record delimiter, or '\0' to end
+	 *            records with a carriage return, a line feed or both.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withRecordDelimiter(char recordDelimiter) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect with a different comment character.
+	 *
+	 * @param comment
+	 *            The character to start comment lines with.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withComment(char comment) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect that does or doesn't skip comment lines
+	 * while reading.
+	 *
+	 * @param useComments
+	 *            Whether to skip comment lines.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withUseComments(boolean useComments) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect that does or doesn't trim whitespace
+	 * while reading.
+	 *
+	 * @param trimWhitespace
+	 *            Whether to trim whitespace from columns that aren't
+	 *            qualified.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withTrimWhitespace(boolean trimWhitespace) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect that does or doesn't skip empty records
+	 * while reading.
+	 *
+	 * @param skipEmptyRecords
+	 *            Whether to skip empty records.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withSkipEmptyRecords(boolean skipEmptyRecords) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Returns a copy of this dialect that does or doesn't qualify every
+	 * column while writing.
+	 *
+	 * @param forceQualifier
+	 *            Whether to qualify every column.
+	 * @return The new dialect.
+	 */
+	public CsvDialect withForceQualifier(boolean forceQualifier) {
+		return new CsvDialect(delimiter, textQualifier, useTextQualifier,
+				escapeMode, recordDelimiter, comment, useComments,
+				trimWhitespace, skipEmptyRecords, forceQualifier);
+	}
+
+	/**
+	 * Gets the shared dialect equal to this one, so that readers and writers
+	 * built with the same settings share one character table.
+	 */
+	static CsvDialect intern(CsvDialect dialect) {
+		CsvDialect shared = interned.get(dialect);
+
+		if (shared == null) {
+			// a program that keeps making new formats shouldn't fill memory
+			// with their tables
+			if (interned.size() >= MAX_INTERNED) {
+				interned.clear();
+			}
+
+			shared = interned.putIfAbsent(dialect, dialect);
+
+			if (shared == null) {
+				shared = dialect;
+			}
+		}
+
+		return shared;
+	}
+
+	/**
+	 * Gets a table of the classes of every character, made up of the
+	 * {@link #DELIMITER DELIMITER}, {@link #QUALIFIER QUALIFIER},
+	 * {@link #LINE_BREAK LINE_BREAK}, {@link #COMMENT COMMENT},
+	 * {@link #ESCAPE ESCAPE} and {@link #WHITESPACE WHITESPACE} bits.
+	 */
+	byte[] getCharClasses() {
+		byte[] table = charClasses;
+
+		if (table == null) {
+			table = new byte[Character.MAX_VALUE + 1];
+
+			table[delimiter] |= DELIMITER;
+
+			// marked even when not used for reading, since writers still
+			// qualify with it when forced to, and then have to escape it
+			table[textQualifier] |= QUALIFIER;
+
+			table[Letters.CR] |= LINE_BREAK;
+			table[Letters.LF] |= LINE_BREAK;
+
+			if (recordDelimiter != Letters.NULL) {
+				table[recordDelimiter] |= LINE_BREAK;
+			}
+
+			table[comment] |= COMMENT;
+
+			if (escapeMode == CsvReader.ESCAPE_MODE_BACKSLASH) {
+				table[Letters.BACKSLASH] |= ESCAPE;
+			}
+
+			table[Letters.SPACE] |= WHITESPACE;
+			table[Letters.TAB] |= WHITESPACE;
+
+			charClasses = table;
+		}
+
+		return table;
+	}
+
+	public boolean equals(Object other) {
+		if (this == other) {
+			return true;
+		}
+
+		if (!(other instanceof CsvDialect)) {
+			return false;
+		}
+
+		CsvDialect dialect = (CsvDialect) other;
+
+		return delimiter == dialect.delimiter
+				&& textQualifier == dialect.textQualifier
+				&& useTextQualifier == dialect.useTextQualifier
+				&& escapeMode == dialect.escapeMode
+				&& recordDelimiter == dialect.recordDelimiter
+				&& comment == dialect.comment
+				&& useComments == dialect.useComments
+				&& trimWhitespace == dialect.trimWhitespace
+				&& skipEmptyRecords == dialect.skipEmptyRecords
+				&& forceQualifier == dialect.forceQualifier;
+	}
+
+	public int hashCode() {
+		int hash = delimiter;
+
+		hash = hash * 31 + textQualifier;
+		hash = hash * 31 + escapeMode;
+		hash = hash * 31 + recordDelimiter;
+		hash = hash * 31 + comment;
+		hash = hash * 2 + (useTextQualifier ? 1 : 0);
+		hash = hash * 2 + (useComments ? 1 : 0);
+		hash = hash * 2 + (trimWhitespace ? 1 : 0);
+		hash = hash * 2 + (skipEmptyRecords ? 1 : 0);
+		hash = hash * 2 + (forceQualifier ? 1 : 0);
+
+		return hash;
+	}
+}
@@ -0,0 +1,389 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Writes a large set of records through a {@link CsvWriter CsvWriter},
+ * formatting them on a {@link java.util.concurrent.ForkJoinPool
+ * ForkJoinPool}.&nbsp;The records are taken a chunk at a time, each chunk is
+ * formatted into its own buffer on the pool, and the chunks are written to
+ * the writer in their original order on the calling thread, so formatting
+ * and escaping use every core while the output stays the same as writing the
+ * records one by one.
+ * <p>
+ * Only a few chunks per thread of the pool are formatted ahead of the one
+ * being written, so memory use stays bounded however many records there
+ * are.
+ */
+public class CsvExporter {
+	private CsvWriter writer;
+
+	private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+	private int chunkSize = 1000;
+
+	private boolean preserveSpaces = false;
+
+	/**
+	 * Creates a {@link CsvExporter CsvExporter} object writing to a writer,
+	 * with the writer's settings.
+	 *
+	 * @param writer
+	 *            The writer to write the records to.
+	 */
+	public CsvExporter(CsvWriter writer) {
+		if (writer == null) {
+			throw new IllegalArgumentException(
+					"Parameter writer can not be null.");
+		}
+
+		this.writer = writer;
+	}
+
+	/**
+	 * Converts an item of the data set to the values of a record.&nbsp;Called
+	 * from the threads of the pool, so it must be thread safe.
+	 */
+	public interface RecordMapper<T> {
+		/**
+		 * Gets the values of the record for an item.
+		 *
+		 * @param item
+		 *            The item to write.
+		 * @return The values to write.
+		 */
+		String[] map(T item);
+	}
+
+	/**
+	 * Gets the pool records are formatted on.
+	 *
+	 * @return The pool records are formatted on.
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Sets the pool records are formatted on.&nbsp;Default is the common
+	 * pool.
+	 *
+	 * @param pool
+	 *            The pool records are formatted on.
+	 */
+	public void setPool(ForkJoinPool pool) {
+		if (pool == null) {
+			throw new IllegalArgumentException(
+					"Parameter pool can not be null.");
+		}
+
+		this.pool = pool;
+	}
+
+	/**
+	 * Gets the number of records formatted together as one task.
+	 *
+	 * @return The number of records in a chunk.
+	 */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Sets the number of records formatted together as one task.&nbsp;Default
+	 * is 1000.
+	 *
+	 * @param chunkSize
+	 *            The number of records in a chunk.
+	 */
+	public void setChunkSize(int chunkSize) {
+		if (chunkSize < 1) {
+			throw new IllegalArgumentException(
+					"Parameter chunkSize must be at least 1.");
+		}
+
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Gets whether leading and trailing whitespace in column data is
+	 * preserved.
+	 *
+	 * @return Whether whitespace is preserved.
+	 */
+	public boolean getPreserveSpaces() {
+		return preserveSpaces;
+	}
+
+	/**
+	 * Sets whether leading and trailing whitespace in column data is
+	 * preserved, as with {@link CsvWriter#writeRecord(String[], boolean)
+	 * writeRecord()}.&nbsp;Default is false.
+	 *
+	 * @param preserveSpaces
+	 *            Whether whitespace is preserved.
+	 */
+	public void setPreserveSpaces(boolean preserveSpaces) {
+		this.preserveSpaces = preserveSpaces;
+	}
+
+	/**
+	 * Writes every record of a list, in order.
+	 *
+	 * @param records
+	 *            The records to write.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void export(List<String[]> records) throws IOException {
+		if (records == null) {
+			throw new IllegalArgumentException(
+					"Parameter records can not be null.");
+		}
+
+		export(records.spliterator());
+	}
+
+	/**
+	 * Writes every record of an array, in order.
+	 *
+	 * @param records
+	 *            The records to write.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void export(String[][] records) throws IOException {
+		if (records == null) {
+			throw new IllegalArgumentException(
+					"Parameter records can not be null.");
+		}
+
+		export(Arrays.spliterator(records));
+	}
+
+	/**
+	 * Writes every record of a spliterator, in encounter order.
+	 *
+	 * @param records
+	 *            The records to write.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void export(Spliterator<String[]> records) throws IOException {
+		export(records, new RecordMapper<String[]>() {
+			public String[] map(String[] item) {
+				return item;
+			}
+		});
+	}
+
+	/**
+	 * Writes a record for every item of a spliterator, in encounter order,
+	 * converting the items to records on the pool as well.
+	 *
+	 * @param items
+	 *            The items to write.
+	 * @param mapper
+	 *            Converts each item to the values of its record.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, or an item could not be converted.
+	 */
+	public <T> void export(Spliterator<T> items, RecordMapper<? super T> mapper)
+			throws IOException {
+		if (items == null) {
+			throw new IllegalArgumentException(
+					"Parameter items can not be null.");
+		}
+
+		if (mapper == null) {
+			throw new IllegalArgumentException(
+					"Parameter mapper can not be null.");
+		}
+
+		CsvDialect dialect = writer.getDialect();
+		int[] columnQuoting = writer.getColumnQuoting();
+		int window = Math.max(2, pool.getParallelism() * 2);
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		Taker taker = new Taker();
+
+		try {
+			boolean more = true;
+
+			while (more || !pending.isEmpty()) {
+				// keep the pool busy with the chunks after the next one
+				while (more && pending.size() < window) {
+					Object[] chunk = new Object[chunkSize];
+
+					taker.Chunk = chunk;
+					taker.Count = 0;
+
+					while (taker.Count < chunkSize && items.tryAdvance(taker)) {
+						taker.Count++;
+					}
+
+					more = taker.Count == chunkSize;
+
+					if (taker.Count > 0) {
+						pending.addLast(pool.submit(new Format<T>(chunk,
+								taker.Count, mapper, dialect, columnQuoting,
+								preserveSpaces)));
+					}
+				}
+
+				if (!pending.isEmpty()) {
+					Chunk chunk = await(pending.removeFirst());
+
+					for (int i = 0, start = 0; i < chunk.Ends.length; i++) {
+						// null and empty records were skipped by writeRecord,
+						// so they end where the record before them did
+						if (chunk.Ends[i] > start) {
+							writer.writeRaw(chunk.Buffer.Chars, start,
+									chunk.Ends[i] - start);
+						}
+
+						start = chunk.Ends[i];
+					}
+				}
+			}
+		} finally {
+			for (Future<Chunk> future : pending) {
+				future.cancel(false);
+			}
+		}
+	}
+
+	private static Chunk await(Future<Chunk> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException(
+					"Interrupted while waiting for records to be formatted.");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+
+			// a task failing on another thread can be rethrown as a copy
+			// that wraps the original
+			if (cause.getCause() != null
+					&& cause.getCause().getClass() == cause.getClass()) {
+				cause = cause.getCause();
+			}
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			} else {
+				throw new IOException(cause);
+			}
+		}
+	}
+
+	/**
+	 * Puts the next item of the spliterator into a chunk.
+	 */
+	private static class Taker implements Consumer<Object> {
+		public Object[] Chunk;
+
+		public int Count;
+
+		public void accept(Object item) {
+			Chunk[Count] = item;
+		}
+	}
+
+	/**
+	 * The formatted records of a chunk, and where each record ends.
+	 */
+	private static class Chunk {
+		public RecordBuffer Buffer = new RecordBuffer();
+
+		public int[] Ends;
+	}
+
+	/**
+	 * Formats a chunk of items on the pool.
+	 */
+	private static class Format<T> implements Callable<Chunk> {
+		private Object[] items;
+
+		private int count;
+
+		private RecordMapper<? super T> mapper;
+
+		private CsvDialect dialect;
+
+		private int[] columnQuoting;
+
+		private boolean preserveSpaces;
+
+		public Format(Object[] items, int count,
+				RecordMapper<? super T> mapper, CsvDialect dialect,
+				int[] columnQuoting, boolean preserveSpaces) {
+			this.items = items;
+			this.count = count;
+			this.mapper = mapper;
+			this.dialect = dialect;
+			this.columnQuoting = columnQuoting;
+			this.preserveSpaces = preserveSpaces;
+		}
+
+		@SuppressWarnings("unchecked")
+		public Chunk call() throws IOException {
+			Chunk chunk = new Chunk();
+			CsvWriter formatter = new CsvWriter(chunk.Buffer, dialect);
+			formatter.setBufferSize(4 * 1024);
+			formatter.setColumnQuoting(columnQuoting);
+
+			// hand over every record as soon as it ends, so its end is known
+			formatter.setFlushThreshold(1);
+
+			chunk.Ends = new int[count];
+
+			for (int i = 0; i < count; i++) {
+				formatter.writeRecord(mapper.map((T) items[i]), preserveSpaces);
+
+				chunk.Ends[i] = chunk.Buffer.Length;
+			}
+
+			return chunk;
+		}
+	}
+}
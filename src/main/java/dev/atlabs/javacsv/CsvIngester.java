@@ -0,0 +1,511 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Reads many delimited files concurrently and hands their records to a
+ * single consumer.&nbsp;Each file is parsed by its own
+ * {@link CsvReader CsvReader} on its own thread, using virtual threads when
+ * the runtime supports them and a fixed pool of platform threads
+ * otherwise.&nbsp;Records are delivered in batches through a bounded queue,
+ * so parsing threads wait whenever the consumer falls behind.
+ */
+public class CsvIngester {
+	private List<Path> files;
+
+	private char delimiter;
+
+	private Charset charset;
+
+	private int concurrency = Runtime.getRuntime().availableProcessors() * 4;
+
+	private boolean hasHeaders = false;
+
+	private int batchSize = 1000;
+
+	private int queueCapacity = 64;
+
+	/**
+	 * Creates a {@link CsvIngester CsvIngester} object for a set of files.
+	 *
+	 * @param files
+	 *            The files to read.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 */
+	public CsvIngester(Collection<Path> files, char delimiter, Charset charset) {
+		if (files == null) {
+			throw new IllegalArgumentException(
+					"Parameter files can not be null.");
+		}
+
+		if (charset == null) {
+			throw new IllegalArgumentException(
+					"Parameter charset can not be null.");
+		}
+
+		this.files = new ArrayList<Path>(files);
+		this.delimiter = delimiter;
+		this.charset = charset;
+	}
+
+	/**
+	 * Creates a {@link CsvIngester CsvIngester} object for every regular file
+	 * under a directory whose path, relative to that directory, matches a
+	 * glob pattern such as <code>**.csv</code>.
+	 *
+	 * @param directory
+	 *            The directory to search.
+	 * @param glob
+	 *            The glob pattern, in the syntax of
+	 *            {@link java.nio.file.FileSystem#getPathMatcher
+	 *            getPathMatcher()}.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 * @return The new ingester.
+	 * @exception IOException
+	 *                Thrown if an error occurs while searching the directory.
+	 */
+	public static CsvIngester fromGlob(final Path directory, String glob,
+			char delimiter, Charset charset) throws IOException {
+		if (directory == null) {
+			throw new IllegalArgumentException(
+					"Parameter directory can not be null.");
+		}
+
+		if (glob == null) {
+			throw new IllegalArgumentException(
+					"Parameter glob can not be null.");
+		}
+
+		final PathMatcher matcher = FileSystems.getDefault().getPathMatcher(
+				"glob:" + glob);
+		final List<Path> matches = new ArrayList<Path>();
+
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			public FileVisitResult visitFile(Path file,
+					BasicFileAttributes attributes) {
+				if (attributes.isRegularFile()
+						&& matcher.matches(directory.relativize(file))) {
+					matches.add(file);
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+
+		Collections.sort(matches);
+
+		return new CsvIngester(matches, delimiter, charset);
+	}
+
+	/**
+	 * Gets the files that will be read.
+	 *
+	 * @return The files that will be read.
+	 */
+	public List<Path> getFiles() {
+		return Collections.unmodifiableList(files);
+	}
+
+	/**
+	 * Gets the maximum number of files parsed at the same time.
+	 *
+	 * @return The maximum number of files parsed at the same time.
+	 */
+	public int getConcurrency() {
+		return concurrency;
+	}
+
+	/**
+	 * Sets the maximum number of files parsed at the same time.&nbsp;Default
+	 * is four times the number of available processors.
+	 *
+	 * @param concurrency
+	 *            The maximum number of files parsed at the same time.
+	 */
+	public void setConcurrency(int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException(
+					"Parameter concurrency must be at least 1.");
+		}
+
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Gets whether the first record of each file is read as its headers.
+	 *
+	 * @return Whether the first record of each file is read as its headers.
+	 */
+	public boolean getHasHeaders() {
+		return hasHeaders;
+	}
+
+	/**
+	 * Sets whether the first record of each file is read as its headers,
+	 * which are then passed along with every batch from that file.&nbsp;Default
+	 * is false.
+	 *
+	 * @param hasHeaders
+	 *            Whether the first record of each file is a header record.
+	 */
+	public void setHasHeaders(boolean hasHeaders) {
+		this.hasHeaders = hasHeaders;
+	}
+
+	/**
+	 * Gets the maximum number of records delivered in one batch.
+	 *
+	 * @return The maximum number of records delivered in one batch.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets the maximum number of records delivered in one batch.&nbsp;Default
+	 * is 1000.
+	 *
+	 * @param batchSize
+	 *            The maximum number of records delivered in one batch.
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException(
+					"Parameter batchSize must be at least 1.");
+		}
+
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Gets the number of batches that can wait for the consumer before
+	 * parsing threads are made to wait.
+	 *
+	 * @return The number of batches that can wait for the consumer.
+	 */
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Sets the number of batches that can wait for the consumer before
+	 * parsing threads are made to wait.&nbsp;Default is 64.
+	 *
+	 * @param queueCapacity
+	 *            The number of batches that can wait for the consumer.
+	 */
+	public void setQueueCapacity(int queueCapacity) {
+		if (queueCapacity < 1) {
+			throw new IllegalArgumentException(
+					"Parameter queueCapacity must be at least 1.");
+		}
+
+		this.queueCapacity = queueCapacity;
+	}
+
+	/**
+	 * Reads all of the files, calling the handler on the current thread for
+	 * every batch of records.&nbsp;Batches from the same file arrive in
+	 * order, and every file ends with exactly one batch marked as its last,
+	 * even when the file holds no records.&nbsp;Batches from different files
+	 * are interleaved.&nbsp;The first error reading a file or thrown by the
+	 * handler stops all remaining work and is thrown from this method.
+	 *
+	 * @param handler
+	 *            The consumer of the record batches.
+	 * @exception IOException
+	 *                Thrown if an error occurs while reading one of the files
+	 *                or while handling a batch.
+	 */
+	public void ingest(Handler handler) throws IOException {
+		if (handler == null) {
+			throw new IllegalArgumentException(
+					"Parameter handler can not be null.");
+		}
+
+		final ArrayBlockingQueue<Object> queue = new ArrayBlockingQueue<Object>(
+				queueCapacity);
+		ExecutorService executor = createVirtualExecutor();
+
+		// a thread per file only reads as many files at once as allowed
+		// when it holds a permit, while a pool is limited by its size
+		final Semaphore permits = executor != null ? new Semaphore(
+				concurrency) : null;
+
+		if (executor == null) {
+			executor = createPool(concurrency);
+		}
+
+		try {
+			for (int i = 0; i < files.size(); i++) {
+				final Path file = files.get(i);
+
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							if (permits == null) {
+								readFile(file, queue);
+							} else {
+								permits.acquire();
+
+								try {
+									readFile(file, queue);
+								} finally {
+									permits.release();
+								}
+							}
+						} catch (InterruptedException ex) {
+							// ingestion was aborted
+						}
+					}
+				});
+			}
+
+			int remaining = files.size();
+
+			while (remaining > 0) {
+				Object item;
+
+				try {
+					item = queue.take();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+
+					throw new InterruptedIOException(
+							"Interrupted while waiting for records.");
+				}
+
+				if (item instanceof IOException) {
+					throw (IOException) item;
+				} else if (item instanceof Error) {
+					throw (Error) item;
+				}
+
+				Batch batch = (Batch) item;
+
+				handler.handle(batch);
+
+				if (batch.isLastBatch()) {
+					remaining--;
+				}
+			}
+		} finally {
+			// stops any files still being parsed if we're leaving early
+			executor.shutdownNow();
+		}
+	}
+
+	private void readFile(Path file, ArrayBlockingQueue<Object> queue)
+			throws InterruptedException {
+		CsvReader reader = null;
+
+		try {
+			reader = new CsvReader(file.toString(), delimiter, charset);
+
+			String[] headers = null;
+
+			if (hasHeaders && reader.readHeaders()) {
+				headers = reader.getHeaders();
+			}
+
+			List<String[]> records = new ArrayList<String[]>(batchSize);
+			long recordCount = 0;
+
+			while (reader.readRecord()) {
+				records.add(reader.getValues());
+				recordCount++;
+
+				if (records.size() == batchSize) {
+					queue.put(new Batch(file, headers, records, false,
+							recordCount));
+					records = new ArrayList<String[]>(batchSize);
+				}
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+			}
+
+			queue.put(new Batch(file, headers, records, true, recordCount));
+		} catch (IOException ex) {
+			IOException error = new IOException("Error reading file " + file
+					+ ": " + ex.getMessage());
+			error.initCause(ex);
+
+			queue.put(error);
+		} catch (RuntimeException ex) {
+			IOException error = new IOException("Error reading file " + file
+					+ ": " + ex);
+			error.initCause(ex);
+
+			queue.put(error);
+		} catch (Error ex) {
+			// handed over as is, so ingest() fails rather than wait for
+			// this file's last batch forever
+			queue.put(ex);
+		} finally {
+			if (reader != null) {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Creates an executor with a virtual thread per file, or returns null
+	 * when the runtime doesn't have them.
+	 */
+	private static ExecutorService createVirtualExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Creates a fixed pool of daemon platform threads.
+	 */
+	private static ExecutorService createPool(int concurrency) {
+		return Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "javacsv-ingester");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Receives the batches of records read by a {@link CsvIngester
+	 * CsvIngester}.&nbsp;Always called from the thread that called
+	 * {@link CsvIngester#ingest ingest()}.
+	 */
+	public interface Handler {
+		/**
+		 * Handles one batch of records.
+		 *
+		 * @param batch
+		 *            The records.
+		 * @exception IOException
+		 *                Thrown to stop ingestion.
+		 */
+		void handle(Batch batch) throws IOException;
+	}
+
+	/**
+	 * A group of consecutive records read from one file.
+	 */
+	public static class Batch {
+		private Path file;
+
+		private String[] headers;
+
+		private List<String[]> records;
+
+		private boolean lastBatch;
+
+		private long recordCount;
+
+		Batch(Path file, String[] headers, List<String[]> records,
+				boolean lastBatch, long recordCount) {
+			this.file = file;
+			this.headers = headers;
+			this.records = records;
+			this.lastBatch = lastBatch;
+			this.recordCount = recordCount;
+		}
+
+		/**
+		 * Gets the file the records were read from.
+		 *
+		 * @return The file the records were read from.
+		 */
+		public Path getFile() {
+			return file;
+		}
+
+		/**
+		 * Gets the headers of the file, if headers are being read.
+		 *
+		 * @return The headers of the file, or null.
+		 */
+		public String[] getHeaders() {
+			return headers;
+		}
+
+		/**
+		 * Gets the records in this batch.
+		 *
+		 * @return The records in this batch.
+		 */
+		public List<String[]> getRecords() {
+			return records;
+		}
+
+		/**
+		 * Whether this is the final batch of its file.
+		 *
+		 * @return Whether this is the final batch of its file.
+		 */
+		public boolean isLastBatch() {
+			return lastBatch;
+		}
+
+		/**
+		 * Gets the number of records read from the file so far, including
+		 * the ones in this batch.
+		 *
+		 * @return The number of records read from the file so far.
+		 */
+		public long getRecordCount() {
+			return recordCount;
+		}
+	}
+}
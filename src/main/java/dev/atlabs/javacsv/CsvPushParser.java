@@ -0,0 +1,928 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.text.NumberFormat;
+
+import dev.atlabs.javacsv.CsvReader.ComplexEscape;
+import dev.atlabs.javacsv.CsvReader.Letters;
+import dev.atlabs.javacsv.CsvReader.UserSettings;
+
+/**
+ * A non-blocking parser for delimited text data that is pushed to it in
+ * chunks, for example from an event loop, instead of pulled from a
+ * stream.&nbsp;Chunks may be split anywhere, including in the middle of a
+ * column, a multi-byte character, a qualified line break or an escape
+ * sequence; all partial state is kept between calls.&nbsp;Each record is
+ * handed to a {@link RecordHandler RecordHandler} as soon as its record
+ * delimiter has been fed.
+ * <p>
+ * Parsing follows the same rules and settings as
+ * {@link CsvReader CsvReader}.
+ */
+public class CsvPushParser {
+	private RecordHandler handler;
+
+	private CharsetDecoder decoder;
+
+	// holds the bytes of a character that was split between two chunks
+	private ByteBuffer pendingBytes = ByteBuffer.allocate(16);
+
+	private CharBuffer decodedChars = CharBuffer.allocate(8 * 1024);
+
+	// this holds all the values for switches that the user is allowed to set
+	private UserSettings userSettings = new UserSettings();
+
+	private boolean useCustomRecordDelimiter = false;
+
+	private char[] columnBuffer = new char[StaticSettings.INITIAL_COLUMN_BUFFER_SIZE];
+
+	private int columnLength = 0;
+
+	private String[] values = new String[StaticSettings.INITIAL_COLUMN_COUNT];
+
+	private int columnsCount = 0;
+
+	private long currentRecord = 0;
+
+	// the parsing state that a blocking parser would keep in local variables
+
+	private int state = ParseState.RECORD;
+
+	private boolean startedColumn = false;
+
+	private boolean startedWithQualifier = false;
+
+	private char lastLetter = '\0';
+
+	private boolean lastLetterWasQualifier = false;
+
+	private boolean lastLetterWasEscape = false;
+
+	private boolean eatingTrailingJunk = false;
+
+	private boolean readingComplexEscape = false;
+
+	private int escape = ComplexEscape.UNICODE;
+
+	private int escapeLength = 0;
+
+	private char escapeValue = (char) 0;
+
+	private boolean closed = false;
+
+	/**
+	 * Creates a {@link CsvPushParser CsvPushParser} object.
+	 *
+	 * @param handler
+	 *            The handler to pass completed records to.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} used to decode
+	 *            chunks passed to {@link #feed(ByteBuffer) feed(ByteBuffer)}.
+	 */
+	public CsvPushParser(RecordHandler handler, char delimiter, Charset charset) {
+		if (handler == null) {
+			throw new IllegalArgumentException(
+					"Parameter handler can not be null.");
+		}
+
+		if (charset == null) {
+			throw new IllegalArgumentException(
+					"Parameter charset can not be null.");
+		}
+
+		this.handler = handler;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		userSettings.Delimiter = delimiter;
+	}
+
+	/**
+	 * Creates a {@link CsvPushParser CsvPushParser} object.&nbsp;Uses a comma
+	 * as the column delimiter and ISO-8859-1 as the
+	 * {@link java.nio.charset.Charset Charset}.
+	 *
+	 * @param handler
+	 *            The handler to pass completed records to.
+	 */
+	public CsvPushParser(RecordHandler handler) {
+		this(handler, Letters.COMMA, Charset.forName("ISO-8859-1"));
+	}
+
+	/**
+	 * Gets the character being used as the column delimiter.&nbsp;Default is
+	 * comma, ','.
+	 *
+	 * @return The character being used as the column delimiter.
+	 */
+	public char getDelimiter() {
+		return userSettings.Delimiter;
+	}
+
+	/**
+	 * Sets the character to use as the column delimiter.&nbsp;Default is
+	 * comma, ','.
+	 *
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 */
+	public void setDelimiter(char delimiter) {
+		userSettings.Delimiter = delimiter;
+	}
+
+	/**
+	 * Gets the character being used as the record delimiter.
+	 *
+	 * @return The character being used as the record delimiter, or '\0' when
+	 *         records end at any CR or LF.
+	 */
+	public char getRecordDelimiter() {
+		return userSettings.RecordDelimiter;
+	}
+
+	/**
+	 * Sets the character to use as the record delimiter.
+	 *
+	 * @param recordDelimiter
+	 *            The character to use as the record delimiter. Default is
+	 *            combination of standard end of line characters for Windows,
+	 *            Unix, or Mac.
+	 */
+	public void setRecordDelimiter(char recordDelimiter) {
+		useCustomRecordDelimiter = true;
+		userSettings.RecordDelimiter = recordDelimiter;
+	}
+
+	/**
+	 * Gets the character to use as a text qualifier in the data.
+	 *
+	 * @return The character to use as a text qualifier in the data.
+	 */
+	public char getTextQualifier() {
+		return userSettings.TextQualifier;
+	}
+
+	/**
+	 * Sets the character to use as a text qualifier in the data.
+	 *
+	 * @param textQualifier
+	 *            The character to use as a text qualifier in the data.
+	 */
+	public void setTextQualifier(char textQualifier) {
+		userSettings.TextQualifier = textQualifier;
+	}
+
+	/**
+	 * Whether text qualifiers will be used while parsing or not.
+	 *
+	 * @return Whether text qualifiers will be used while parsing or not.
+	 */
+	public boolean getUseTextQualifier() {
+		return userSettings.UseTextQualifier;
+	}
+
+	/**
+	 * Sets whether text qualifiers will be used while parsing or not.
+	 *
+	 * @param useTextQualifier
+	 *            Whether to use a text qualifier while parsing or not.
+	 */
+	public void setUseTextQualifier(boolean useTextQualifier) {
+		userSettings.UseTextQualifier = useTextQualifier;
+	}
+
+	/**
+	 * Gets the character being used as a comment signal.
+	 *
+	 * @return The character being used as a comment signal.
+	 */
+	public char getComment() {
+		return userSettings.Comment;
+	}
+
+	/**
+	 * Sets the character to use as a comment signal.
+	 *
+	 * @param comment
+	 *            The character to use as a comment signal.
+	 */
+	public void setComment(char comment) {
+		userSettings.Comment = comment;
+	}
+
+	/**
+	 * Gets whether comments are being looked for while parsing or not.
+	 *
+	 * @return Whether comments are being looked for while parsing or not.
+	 */
+	public boolean getUseComments() {
+		return userSettings.UseComments;
+	}
+
+	/**
+	 * Sets whether comments are being looked for while parsing or not.
+	 *
+	 * @param useComments
+	 *            Whether comments are being looked for while parsing or not.
+	 */
+	public void setUseComments(boolean useComments) {
+		userSettings.UseComments = useComments;
+	}
+
+	/**
+	 * Gets the current way to escape an occurance of the text qualifier inside
+	 * qualified data.
+	 *
+	 * @return The current way to escape an occurance of the text qualifier
+	 *         inside qualified data.
+	 */
+	public int getEscapeMode() {
+		return userSettings.EscapeMode;
+	}
+
+	/**
+	 * Sets the current way to escape an occurance of the text qualifier inside
+	 * qualified data.
+	 *
+	 * @param escapeMode
+	 *            The way to escape an occurance of the text qualifier inside
+	 *            qualified data, either
+	 *            {@link CsvReader#ESCAPE_MODE_DOUBLED ESCAPE_MODE_DOUBLED} or
+	 *            {@link CsvReader#ESCAPE_MODE_BACKSLASH ESCAPE_MODE_BACKSLASH}.
+	 * @exception IllegalArgumentException
+	 *                When an illegal value is specified for escapeMode.
+	 */
+	public void setEscapeMode(int escapeMode) throws IllegalArgumentException {
+		if (escapeMode != CsvReader.ESCAPE_MODE_DOUBLED
+				&& escapeMode != CsvReader.ESCAPE_MODE_BACKSLASH) {
+			throw new IllegalArgumentException(
+					"Parameter escapeMode must be a valid value.");
+		}
+
+		userSettings.EscapeMode = escapeMode;
+	}
+
+	/**
+	 * Gets whether leading and trailing whitespace characters are being trimmed
+	 * from non-textqualified column data.&nbsp;Default is true.
+	 *
+	 * @return Whether leading and trailing whitespace characters are being
+	 *         trimmed from non-textqualified column data.
+	 */
+	public boolean getTrimWhitespace() {
+		return userSettings.TrimWhitespace;
+	}
+
+	/**
+	 * Sets whether leading and trailing whitespace characters should be trimmed
+	 * from non-textqualified column data or not.&nbsp;Default is true.
+	 *
+	 * @param trimWhitespace
+	 *            Whether leading and trailing whitespace characters should be
+	 *            trimmed from non-textqualified column data or not.
+	 */
+	public void setTrimWhitespace(boolean trimWhitespace) {
+		userSettings.TrimWhitespace = trimWhitespace;
+	}
+
+	/**
+	 * Gets whether empty records are skipped rather than passed to the
+	 * handler.&nbsp;Default is true.
+	 *
+	 * @return Whether empty records are skipped.
+	 */
+	public boolean getSkipEmptyRecords() {
+		return userSettings.SkipEmptyRecords;
+	}
+
+	/**
+	 * Sets whether empty records are skipped rather than passed to the
+	 * handler.&nbsp;Default is true.
+	 *
+	 * @param skipEmptyRecords
+	 *            Whether empty records should be skipped.
+	 */
+	public void setSkipEmptyRecords(boolean skipEmptyRecords) {
+		userSettings.SkipEmptyRecords = skipEmptyRecords;
+	}
+
+	/**
+	 * Gets whether the parser limits column lengths and the number of columns
+	 * per record, to catch data that doesn't match the parsing
+	 * settings.&nbsp;Default is true.
+	 *
+	 * @return The current setting of the safety switch.
+	 */
+	public boolean getSafetySwitch() {
+		return userSettings.SafetySwitch;
+	}
+
+	/**
+	 * Sets whether the parser limits column lengths and the number of columns
+	 * per record, to catch data that doesn't match the parsing
+	 * settings.&nbsp;The switch can be turned off if the format is known and
+	 * tested.&nbsp;Default is true.
+	 *
+	 * @param safetySwitch
+	 *            Whether to limit column lengths and column counts.
+	 */
+	public void setSafetySwitch(boolean safetySwitch) {
+		userSettings.SafetySwitch = safetySwitch;
+	}
+
+	/**
+	 * Gets the number of records passed to the handler so far.
+	 *
+	 * @return The number of records passed to the handler so far.
+	 */
+	public long getRecordCount() {
+		return currentRecord;
+	}
+
+	/**
+	 * Parses a chunk of encoded data.&nbsp;All of the remaining bytes in the
+	 * buffer are consumed; any bytes of a character that continues into the
+	 * next chunk are kept until then.
+	 *
+	 * @param data
+	 *            The chunk of data.
+	 * @exception IOException
+	 *                Thrown if the handler throws, or if the data breaks one
+	 *                of the safety switch limits.
+	 */
+	public void feed(ByteBuffer data) throws IOException {
+		checkClosed();
+
+		// finish off a character split by the previous chunk one byte at a
+		// time, so only the bytes it needs are taken from this chunk
+		while (pendingBytes.position() > 0 && data.hasRemaining()) {
+			pendingBytes.put(data.get());
+			pendingBytes.flip();
+
+			decode(pendingBytes, false);
+
+			pendingBytes.compact();
+		}
+
+		decode(data, false);
+
+		if (data.hasRemaining()) {
+			pendingBytes.put(data);
+		}
+	}
+
+	/**
+	 * Parses a chunk of already decoded data.
+	 *
+	 * @param data
+	 *            The characters to parse.
+	 * @param offset
+	 *            The index of the first character to parse.
+	 * @param length
+	 *            The number of characters to parse.
+	 * @exception IOException
+	 *                Thrown if the handler throws, or if the data breaks one
+	 *                of the safety switch limits.
+	 */
+	public void feed(char[] data, int offset, int length) throws IOException {
+		checkClosed();
+
+		int end = offset + length;
+
+		for (int i = offset; i < end; i++) {
+			parse(data[i]);
+		}
+	}
+
+	/**
+	 * Parses a chunk of already decoded data.
+	 *
+	 * @param data
+	 *            The characters to parse.
+	 * @exception IOException
+	 *                Thrown if the handler throws, or if the data breaks one
+	 *                of the safety switch limits.
+	 */
+	public void feed(CharSequence data) throws IOException {
+		checkClosed();
+
+		int length = data.length();
+
+		for (int i = 0; i < length; i++) {
+			parse(data.charAt(i));
+		}
+	}
+
+	/**
+	 * Signals the end of the data.&nbsp;A final record that was not followed
+	 * by a record delimiter is passed to the handler now.&nbsp;No more data
+	 * can be fed afterwards.
+	 *
+	 * @exception IOException
+	 *                Thrown if the handler throws.
+	 */
+	public void finish() throws IOException {
+		checkClosed();
+
+		pendingBytes.flip();
+		decode(pendingBytes, true);
+		pendingBytes.clear();
+
+		decoder.flush(decodedChars);
+		decodedChars.flip();
+		feed(decodedChars);
+		decodedChars.clear();
+
+		closed = true;
+
+		// same check the blocking parser makes when it runs out of data
+		// in the middle of a record
+		if (startedColumn || lastLetter == userSettings.Delimiter) {
+			endColumn();
+
+			endRecord();
+		}
+	}
+
+	private void decode(ByteBuffer data, boolean endOfInput) throws IOException {
+		CoderResult result;
+
+		do {
+			result = decoder.decode(data, decodedChars, endOfInput);
+
+			decodedChars.flip();
+
+			while (decodedChars.hasRemaining()) {
+				parse(decodedChars.get());
+			}
+
+			decodedChars.clear();
+		} while (result.isOverflow());
+	}
+
+	private void parse(char currentLetter) throws IOException {
+		switch (state) {
+		case ParseState.QUALIFIED:
+			parseQualified(currentLetter);
+			break;
+		case ParseState.UNQUALIFIED:
+			parseUnqualified(currentLetter);
+			break;
+		case ParseState.COMMENT:
+			// ignore the rest of the line, including the end of line
+			// character
+			if (currentLetter == Letters.CR || currentLetter == Letters.LF) {
+				state = ParseState.RECORD;
+			}
+
+			lastLetter = currentLetter;
+			break;
+		default:
+			parseColumnStart(currentLetter);
+			break;
+		}
+	}
+
+	private void parseColumnStart(char currentLetter) throws IOException {
+		startedWithQualifier = false;
+
+		if (userSettings.UseTextQualifier
+				&& currentLetter == userSettings.TextQualifier) {
+			// this will be a text qualified column
+			lastLetter = currentLetter;
+
+			startedColumn = true;
+			startedWithQualifier = true;
+			lastLetterWasQualifier = false;
+			lastLetterWasEscape = false;
+			eatingTrailingJunk = false;
+			readingComplexEscape = false;
+
+			state = ParseState.QUALIFIED;
+		} else if (currentLetter == userSettings.Delimiter) {
+			// we encountered a column with no data, so
+			// just send the end column
+
+			lastLetter = currentLetter;
+
+			endColumn();
+		} else if (useCustomRecordDelimiter
+				&& currentLetter == userSettings.RecordDelimiter) {
+			// this will skip blank lines
+			if (startedColumn || columnsCount > 0
+					|| !userSettings.SkipEmptyRecords) {
+				endColumn();
+
+				endRecord();
+			}
+
+			lastLetter = currentLetter;
+		} else if (!useCustomRecordDelimiter
+				&& (currentLetter == Letters.CR || currentLetter == Letters.LF)) {
+			// this will skip blank lines
+			if (startedColumn
+					|| columnsCount > 0
+					|| (!userSettings.SkipEmptyRecords && (currentLetter == Letters.CR || lastLetter != Letters.CR))) {
+				endColumn();
+
+				endRecord();
+			}
+
+			lastLetter = currentLetter;
+		} else if (userSettings.UseComments && columnsCount == 0
+				&& currentLetter == userSettings.Comment) {
+			// encountered a comment character at the beginning of
+			// the line so just ignore the rest of the line
+
+			lastLetter = currentLetter;
+
+			state = ParseState.COMMENT;
+		} else if (userSettings.TrimWhitespace
+				&& (currentLetter == Letters.SPACE || currentLetter == Letters.TAB)) {
+			// do nothing, this will trim leading whitespace
+			// for both text qualified columns and non
+
+			startedColumn = true;
+		} else {
+			// since the letter wasn't a special letter, this
+			// will be the first letter of our current column
+
+			startedColumn = true;
+			lastLetterWasEscape = false;
+			readingComplexEscape = false;
+
+			state = ParseState.UNQUALIFIED;
+
+			parseUnqualified(currentLetter);
+		}
+	}
+
+	private void parseQualified(char currentLetter) throws IOException {
+		if (eatingTrailingJunk) {
+			if (currentLetter == userSettings.Delimiter) {
+				endColumn();
+			} else if (isRecordDelimiter(currentLetter)) {
+				endColumn();
+
+				endRecord();
+			}
+		} else if (readingComplexEscape) {
+			readComplexEscape(currentLetter);
+		} else if (currentLetter == userSettings.TextQualifier) {
+			if (lastLetterWasEscape) {
+				lastLetterWasEscape = false;
+				lastLetterWasQualifier = false;
+
+				appendLetter(currentLetter);
+			} else {
+				if (userSettings.EscapeMode == CsvReader.ESCAPE_MODE_DOUBLED) {
+					lastLetterWasEscape = true;
+				}
+
+				lastLetterWasQualifier = true;
+			}
+		} else if (userSettings.EscapeMode == CsvReader.ESCAPE_MODE_BACKSLASH
+				&& lastLetterWasEscape) {
+			readEscape(currentLetter);
+
+			lastLetterWasEscape = false;
+		} else if (userSettings.EscapeMode == CsvReader.ESCAPE_MODE_BACKSLASH
+				&& currentLetter == Letters.BACKSLASH) {
+			lastLetterWasEscape = true;
+		} else if (lastLetterWasQualifier) {
+			if (currentLetter == userSettings.Delimiter) {
+				endColumn();
+			} else if (isRecordDelimiter(currentLetter)) {
+				endColumn();
+
+				endRecord();
+			} else {
+				eatingTrailingJunk = true;
+			}
+
+			// make sure to clear the flag for next
+			// run of the loop
+
+			lastLetterWasQualifier = false;
+		} else {
+			appendLetter(currentLetter);
+		}
+
+		// keep track of the last letter because we need
+		// it for several key decisions
+
+		lastLetter = currentLetter;
+	}
+
+	private void parseUnqualified(char currentLetter) throws IOException {
+		if (!userSettings.UseTextQualifier
+				&& userSettings.EscapeMode == CsvReader.ESCAPE_MODE_BACKSLASH
+				&& currentLetter == Letters.BACKSLASH) {
+			if (lastLetterWasEscape) {
+				lastLetterWasEscape = false;
+
+				appendLetter(currentLetter);
+			} else {
+				lastLetterWasEscape = true;
+			}
+		} else if (readingComplexEscape) {
+			readComplexEscape(currentLetter);
+		} else if (userSettings.EscapeMode == CsvReader.ESCAPE_MODE_BACKSLASH
+				&& lastLetterWasEscape) {
+			readEscape(currentLetter);
+
+			lastLetterWasEscape = false;
+		} else if (currentLetter == userSettings.Delimiter) {
+			endColumn();
+		} else if (isRecordDelimiter(currentLetter)) {
+			endColumn();
+
+			endRecord();
+		} else {
+			appendLetter(currentLetter);
+		}
+
+		// keep track of the last letter because we need
+		// it for several key decisions
+
+		lastLetter = currentLetter;
+	}
+
+	private boolean isRecordDelimiter(char letter) {
+		if (useCustomRecordDelimiter) {
+			return letter == userSettings.RecordDelimiter;
+		} else {
+			return letter == Letters.CR || letter == Letters.LF;
+		}
+	}
+
+	/**
+	 * Handles the letter following a backslash.
+	 */
+	private void readEscape(char currentLetter) throws IOException {
+		switch (currentLetter) {
+		case 'n':
+			appendLetter(Letters.LF);
+			break;
+		case 'r':
+			appendLetter(Letters.CR);
+			break;
+		case 't':
+			appendLetter(Letters.TAB);
+			break;
+		case 'b':
+			appendLetter(Letters.BACKSPACE);
+			break;
+		case 'f':
+			appendLetter(Letters.FORM_FEED);
+			break;
+		case 'e':
+			appendLetter(Letters.ESCAPE);
+			break;
+		case 'v':
+			appendLetter(Letters.VERTICAL_TAB);
+			break;
+		case 'a':
+			appendLetter(Letters.ALERT);
+			break;
+		case '0':
+		case '1':
+		case '2':
+		case '3':
+		case '4':
+		case '5':
+		case '6':
+		case '7':
+			escape = ComplexEscape.OCTAL;
+			readingComplexEscape = true;
+			escapeLength = 1;
+			escapeValue = (char) (currentLetter - '0');
+			break;
+		case 'u':
+		case 'U':
+			startComplexEscape(ComplexEscape.UNICODE);
+			break;
+		case 'x':
+		case 'X':
+			startComplexEscape(ComplexEscape.HEX);
+			break;
+		case 'o':
+		case 'O':
+			startComplexEscape(ComplexEscape.OCTAL);
+			break;
+		case 'd':
+		case 'D':
+			startComplexEscape(ComplexEscape.DECIMAL);
+			break;
+		default:
+			// any other escaped letter is kept as is
+			appendLetter(currentLetter);
+			break;
+		}
+	}
+
+	private void startComplexEscape(int escape) {
+		this.escape = escape;
+		readingComplexEscape = true;
+		escapeLength = 0;
+		escapeValue = (char) 0;
+	}
+
+	private void readComplexEscape(char currentLetter) throws IOException {
+		escapeLength++;
+
+		switch (escape) {
+		case ComplexEscape.UNICODE:
+			escapeValue *= (char) 16;
+			escapeValue += CsvReader.hexToDec(currentLetter);
+
+			if (escapeLength == 4) {
+				readingComplexEscape = false;
+			}
+
+			break;
+		case ComplexEscape.OCTAL:
+			escapeValue *= (char) 8;
+			escapeValue += (char) (currentLetter - '0');
+
+			if (escapeLength == 3) {
+				readingComplexEscape = false;
+			}
+
+			break;
+		case ComplexEscape.DECIMAL:
+			escapeValue *= (char) 10;
+			escapeValue += (char) (currentLetter - '0');
+
+			if (escapeLength == 3) {
+				readingComplexEscape = false;
+			}
+
+			break;
+		case ComplexEscape.HEX:
+			escapeValue *= (char) 16;
+			escapeValue += CsvReader.hexToDec(currentLetter);
+
+			if (escapeLength == 2) {
+				readingComplexEscape = false;
+			}
+
+			break;
+		}
+
+		if (!readingComplexEscape) {
+			appendLetter(escapeValue);
+		}
+	}
+
+	private void appendLetter(char letter) throws IOException {
+		if (columnLength == columnBuffer.length) {
+			if (userSettings.SafetySwitch && columnLength >= 100000) {
+				throw new IOException(
+						"Maximum column length of 100,000 exceeded in column "
+								+ NumberFormat.getIntegerInstance().format(
+										columnsCount)
+								+ " in record "
+								+ NumberFormat.getIntegerInstance().format(
+										currentRecord)
+								+ ". Set the SafetySwitch property to false"
+								+ " if you're expecting column lengths greater than 100,000 characters to"
+								+ " avoid this error.");
+			}
+
+			char[] holder = new char[columnBuffer.length * 2];
+
+			System.arraycopy(columnBuffer, 0, holder, 0, columnLength);
+
+			columnBuffer = holder;
+		}
+
+		columnBuffer[columnLength++] = letter;
+	}
+
+	private void endColumn() throws IOException {
+		String currentValue = "";
+
+		if (startedColumn) {
+			int length = columnLength;
+
+			if (userSettings.TrimWhitespace && !startedWithQualifier) {
+				while (length > 0
+						&& (columnBuffer[length - 1] == Letters.SPACE || columnBuffer[length - 1] == Letters.TAB)) {
+					length--;
+				}
+			}
+
+			currentValue = new String(columnBuffer, 0, length);
+		}
+
+		columnLength = 0;
+
+		startedColumn = false;
+
+		state = ParseState.RECORD;
+
+		if (columnsCount >= 100000 && userSettings.SafetySwitch) {
+			throw new IOException(
+					"Maximum column count of 100,000 exceeded in record "
+							+ NumberFormat.getIntegerInstance().format(
+									currentRecord)
+							+ ". Set the SafetySwitch property to false"
+							+ " if you're expecting more than 100,000 columns per record to"
+							+ " avoid this error.");
+		}
+
+		if (columnsCount == values.length) {
+			String[] holder = new String[values.length * 2];
+
+			System.arraycopy(values, 0, holder, 0, values.length);
+
+			values = holder;
+		}
+
+		values[columnsCount++] = currentValue;
+	}
+
+	private void endRecord() throws IOException {
+		String[] record = new String[columnsCount];
+		System.arraycopy(values, 0, record, 0, columnsCount);
+
+		columnsCount = 0;
+
+		currentRecord++;
+
+		handler.handleRecord(record);
+	}
+
+	/**
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+					"This instance of the CsvPushParser class has already been finished.");
+		}
+	}
+
+	/**
+	 * Receives the records completed by a {@link CsvPushParser CsvPushParser}.
+	 */
+	public interface RecordHandler {
+		/**
+		 * Handles one record.&nbsp;Called on the thread that fed the data
+		 * completing the record.
+		 *
+		 * @param values
+		 *            The column values of the record.
+		 * @exception IOException
+		 *                Thrown to stop parsing; the exception is thrown from
+		 *                the feed call.
+		 */
+		void handleRecord(String[] values) throws IOException;
+	}
+
+	private class ParseState {
+		private static final int RECORD = 0;
+
+		private static final int QUALIFIED = 1;
+
+		private static final int UNQUALIFIED = 2;
+
+		private static final int COMMENT = 3;
+	}
+
+	private class StaticSettings {
+		public static final int INITIAL_COLUMN_COUNT = 10;
+
+		public static final int INITIAL_COLUMN_BUFFER_SIZE = 50;
+	}
+}
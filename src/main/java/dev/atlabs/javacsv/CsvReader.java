@@ -20,7 +20,11 @@
  */
 package dev.atlabs.javacsv;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -28,23 +32,46 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
 import java.text.NumberFormat;
+import java.util.Arrays;
 import java.util.HashMap;
 
 /**
  * A stream based parser for parsing delimited text data from a file or a
  * stream.
  */
-public class CsvReader {
+public class CsvReader implements Closeable {
 	private Reader inputStream = null;
 
+	// closes a stream the reader opened itself if the reader is garbage
+	// collected without being closed
+	private ResourceCleaner.StreamCloser closer = null;
+
+	// stops reading ahead of a stream the reader doesn't own, created once
+	// and pointed at each new read ahead reader
+	private ReadAheadReader.Stopper readAheadStopper = null;
+
 	private String fileName = null;
 
+	// set when following a growing file
+	private FollowInputStream followStream = null;
+
+	// counts the bytes of the parsed characters for checkpoints
+	private ByteCounter byteCounter = null;
+
+	// the byte offset in the data of the start of the data buffer
+	private long bufferByteOffset = 0;
+
 	// this holds all the values for switches that the user is allowed to set
 	private UserSettings userSettings = new UserSettings();
 
+	// the settings as a dialect, built when needed and dropped when a
+	// setting changes
+	private CsvDialect dialect = null;
+
 	private Charset charset = null;
 
 	private boolean useCustomRecordDelimiter = false;
@@ -88,6 +115,16 @@ public class CsvReader {
 
 	private boolean closed = false;
 
+	// set while the reader is idle in a CsvReaderPool, guarded by the pool
+	private boolean pooled = false;
+
+	// set when the whole source is in the data buffer
+	private boolean inMemory = false;
+
+	// the reader's own data buffer, put aside while parsing an in memory
+	// source
+	private char[] streamBuffer = null;
+
 	/**
 	 * Double up the text qualifier to represent an occurance of the text
 	 * qualifier.
@@ -102,7 +139,11 @@ public class CsvReader {
 
 	/**
 	 * Creates a {@link CsvReader CsvReader} object using a file
-	 * as the data source.
+	 * as the data source.&nbsp;A file starting with the gzip magic number is
+	 * decompressed on the fly, inflating its members in parallel when their
+	 * sizes are recorded as in the BGZF layout.&nbsp;A block compressed file
+	 * written by {@link CsvWriter CsvWriter} is read with the charset it was
+	 * written with.
 	 * 
 	 * @param fileName
 	 *            The path to the file to use as the data source.
@@ -228,6 +269,320 @@ public class CsvReader {
 		this(new InputStreamReader(inputStream, charset));
 	}
 
+	/**
+	 * Creates a {@link CsvReader CsvReader} object using a file as the data
+	 * source, parsed with the settings of a dialect.
+	 * 
+	 * @param fileName
+	 *            The path to the file to use as the data source.
+	 * @param dialect
+	 *            The settings to parse the data with.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 */
+	public CsvReader(String fileName, CsvDialect dialect, Charset charset)
+			throws FileNotFoundException {
+		this(fileName, checkDialect(dialect).getDelimiter(), charset);
+
+		setDialect(dialect);
+	}
+
+	/**
+	 * Constructs a {@link CsvReader CsvReader} object using a
+	 * {@link java.io.Reader Reader} object as the data source, parsed with
+	 * the settings of a dialect.
+	 * 
+	 * @param inputStream
+	 *            The stream to use as the data source.
+	 * @param dialect
+	 *            The settings to parse the data with.
+	 */
+	public CsvReader(Reader inputStream, CsvDialect dialect) {
+		this(inputStream, checkDialect(dialect).getDelimiter());
+
+		setDialect(dialect);
+	}
+
+	/**
+	 * Constructs a {@link CsvReader CsvReader} object using an
+	 * {@link java.io.InputStream InputStream} object as the data source,
+	 * parsed with the settings of a dialect.
+	 * 
+	 * @param inputStream
+	 *            The stream to use as the data source.
+	 * @param dialect
+	 *            The settings to parse the data with.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 */
+	public CsvReader(InputStream inputStream, CsvDialect dialect,
+			Charset charset) {
+		this(new InputStreamReader(inputStream, charset), dialect);
+	}
+
+	private static CsvDialect checkDialect(CsvDialect dialect) {
+		if (dialect == null) {
+			throw new IllegalArgumentException(
+					"Parameter dialect can not be null.");
+		}
+
+		return dialect;
+	}
+
+	/**
+	 * Creates a reader for an in memory source, set afterwards.
+	 */
+	private CsvReader(char delimiter) {
+		this.userSettings.Delimiter = delimiter;
+		initialized = true;
+
+		isQualified = new boolean[values.length];
+	}
+
+	/**
+	 * Starts reading from a new source, keeping the settings of this reader
+	 * and reusing its buffers, so that one reader can parse many small
+	 * sources without allocating new buffers for each.&nbsp;The headers,
+	 * record count and any unread data of the previous source are
+	 * discarded.&nbsp;A file the reader opened itself is closed, but a stream
+	 * that was passed in is left for the caller to close.
+	 * 
+	 * @param inputStream
+	 *            The stream to use as the data source.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public void reset(Reader inputStream) throws IOException {
+		checkClosed();
+
+		if (inputStream == null) {
+			throw new IllegalArgumentException(
+					"Parameter inputStream can not be null.");
+		}
+
+		releaseSource();
+
+		if (inMemory) {
+			dataBuffer.Buffer = streamBuffer != null ? streamBuffer
+					: new char[StaticSettings.MAX_BUFFER_SIZE];
+			streamBuffer = null;
+			inMemory = false;
+		}
+
+		this.inputStream = inputStream;
+
+		resetState();
+	}
+
+	/**
+	 * Starts parsing a sequence of characters in place, keeping the settings
+	 * of this reader.
+	 * 
+	 * @param data
+	 *            The characters to use as the source.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 * @see CsvReader#reset(Reader)
+	 */
+	public void reset(CharSequence data) throws IOException {
+		checkClosed();
+
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
+
+		releaseSource();
+
+		inputStream = null;
+
+		resetState();
+		setData(data);
+	}
+
+	/**
+	 * Starts parsing a range of a character array in place, keeping the
+	 * settings of this reader.&nbsp;The array is used as the reader's buffer,
+	 * so it must not be changed while it is being read.
+	 * 
+	 * @param data
+	 *            The array holding the source.
+	 * @param offset
+	 *            The index of the first character of the source.
+	 * @param length
+	 *            The number of characters in the source.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 * @see CsvReader#reset(Reader)
+	 */
+	public void reset(char[] data, int offset, int length) throws IOException {
+		checkClosed();
+		checkRange(data, offset, length);
+
+		releaseSource();
+
+		inputStream = null;
+
+		resetState();
+		setData(data, offset, length);
+	}
+
+	/**
+	 * Closes a source the reader opened itself and stops reading ahead.
+	 */
+	private void releaseSource() {
+		if (closer != null) {
+			closer.run();
+		} else if (inputStream instanceof ReadAheadReader) {
+			// stops the read ahead thread, leaving the caller's stream open
+			((ReadAheadReader) inputStream).stop();
+		}
+	}
+
+	private void resetState() {
+		fileName = null;
+		followStream = null;
+		byteCounter = null;
+		bufferByteOffset = 0;
+		charset = null;
+		closer = null;
+		initialized = true;
+
+		startedColumn = false;
+		startedWithQualifier = false;
+		hasMoreData = true;
+		lastLetter = Letters.NULL;
+		hasReadNextLine = false;
+		columnsCount = 0;
+		currentRecord = 0;
+		rawRecord = "";
+
+		dataBuffer.Position = 0;
+		dataBuffer.Count = 0;
+		dataBuffer.ColumnStart = 0;
+		dataBuffer.LineStart = 0;
+		columnBuffer.Position = 0;
+		rawBuffer.clear();
+
+		setHeaders(null);
+	}
+
+	/**
+	 * Starts reading from a new source, keeping the settings of this reader
+	 * and reusing its buffers.
+	 * 
+	 * @param inputStream
+	 *            The stream to use as the data source.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 * @see CsvReader#reset(Reader)
+	 */
+	public void reset(InputStream inputStream, Charset charset)
+			throws IOException {
+		if (inputStream == null) {
+			throw new IllegalArgumentException(
+					"Parameter inputStream can not be null.");
+		}
+
+		if (charset == null) {
+			throw new IllegalArgumentException(
+					"Parameter charset can not be null.");
+		}
+
+		reset(new InputStreamReader(inputStream, charset));
+	}
+
+	/**
+	 * Puts the settings back to their defaults with the given delimiter and
+	 * lets go of the source, for a reader returned to a
+	 * {@link CsvReaderPool CsvReaderPool}.
+	 */
+	void recycle(CsvDialect dialect) {
+		releaseSource();
+
+		inputStream = null;
+		closer = null;
+		fileName = null;
+		followStream = null;
+		byteCounter = null;
+
+		userSettings = new UserSettings();
+		setDialect(dialect);
+
+		setHeaders(null);
+	}
+
+	/**
+	 * Gets whether this reader is waiting in a {@link CsvReaderPool
+	 * CsvReaderPool}.
+	 * 
+	 * @return Whether this reader is waiting in a pool.
+	 */
+	boolean isPooled() {
+		return pooled;
+	}
+
+	void setPooled(boolean pooled) {
+		this.pooled = pooled;
+	}
+
+	/**
+	 * Gets whether this reader has been closed.
+	 * 
+	 * @return Whether this reader has been closed.
+	 */
+	boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Gets the current settings of this reader as a dialect.
+	 * 
+	 * @return The current settings of this reader.
+	 */
+	public CsvDialect getDialect() {
+		if (dialect == null) {
+			dialect = CsvDialect.intern(new CsvDialect(userSettings.Delimiter,
+					userSettings.TextQualifier, userSettings.UseTextQualifier,
+					userSettings.EscapeMode,
+					useCustomRecordDelimiter ? userSettings.RecordDelimiter
+							: Letters.NULL, userSettings.Comment,
+					userSettings.UseComments, userSettings.TrimWhitespace,
+					userSettings.SkipEmptyRecords, false));
+		}
+
+		return dialect;
+	}
+
+	/**
+	 * Sets all of the settings of this reader that a dialect describes.
+	 * 
+	 * @param dialect
+	 *            The settings to parse the data with.
+	 */
+	public void setDialect(CsvDialect dialect) {
+		checkDialect(dialect);
+
+		userSettings.Delimiter = dialect.getDelimiter();
+		userSettings.TextQualifier = dialect.getTextQualifier();
+		userSettings.UseTextQualifier = dialect.getUseTextQualifier();
+		userSettings.EscapeMode = dialect.getEscapeMode();
+		userSettings.RecordDelimiter = dialect.getRecordDelimiter();
+		useCustomRecordDelimiter = dialect.getRecordDelimiter() != Letters.NULL;
+		userSettings.Comment = dialect.getComment();
+		userSettings.UseComments = dialect.getUseComments();
+		userSettings.TrimWhitespace = dialect.getTrimWhitespace();
+		userSettings.SkipEmptyRecords = dialect.getSkipEmptyRecords();
+
+		// keep the dialect passed in, so its character table is shared
+		this.dialect = dialect;
+	}
+
 	public boolean getCaptureRawRecord() {
 		return userSettings.CaptureRawRecord;
 	}
@@ -237,9 +592,56 @@ public class CsvReader {
 	}
 
 	public String getRawRecord() {
+		if (rawRecord == null) {
+			rawRecord = buildRawRecord();
+		}
+
 		return rawRecord;
 	}
 
+	/**
+	 * Gets the raw record as a {@link java.lang.CharSequence CharSequence}
+	 * over the reader's own buffer where possible, without building a
+	 * String.&nbsp;The sequence is only valid until the next record is read,
+	 * so call {@link java.lang.Object#toString toString()} on it to keep it.
+	 * 
+	 * @return The raw record.
+	 */
+	public CharSequence getRawRecordSequence() {
+		if (rawRecord == null && hasMoreData && rawBuffer.Position == 0) {
+			return CharBuffer.wrap(dataBuffer.Buffer, dataBuffer.LineStart,
+					dataBuffer.Position - dataBuffer.LineStart - 1);
+		}
+
+		return getRawRecord();
+	}
+
+	/**
+	 * Gets the offset in the file, in bytes, of the start of the current
+	 * record, which together with the length of the raw record in bytes
+	 * locates the record in the file for error reports.&nbsp;For a
+	 * compressed file, this is the offset in the decompressed data.
+	 * 
+	 * @return The offset of the current record, or -1 when the reader wasn't
+	 *         created with a file name, isn't capturing raw records, or reads
+	 *         a charset that keeps state between characters.
+	 */
+	public long getRawRecordOffset() {
+		if (byteCounter == null || !byteCounter.canCount()
+				|| !userSettings.CaptureRawRecord) {
+			return -1;
+		}
+
+		if (rawBuffer.Position > 0) {
+			// the record started in an earlier buffer, and everything from
+			// its start up to this buffer was kept in the raw buffer
+			return bufferByteOffset - rawBuffer.countBytes(byteCounter);
+		}
+
+		return bufferByteOffset
+				+ byteCounter.count(dataBuffer.Buffer, 0, dataBuffer.LineStart);
+	}
+
 	/**
 	 * Gets whether leading and trailing whitespace characters are being trimmed
 	 * from non-textqualified column data. Default is true.
@@ -261,6 +663,7 @@ public class CsvReader {
 	 */
 	public void setTrimWhitespace(boolean trimWhitespace) {
 		userSettings.TrimWhitespace = trimWhitespace;
+		dialect = null;
 	}
 
 	/**
@@ -281,12 +684,21 @@ public class CsvReader {
 	 */
 	public void setDelimiter(char delimiter) {
 		userSettings.Delimiter = delimiter;
+		dialect = null;
 	}
 
 	public char getRecordDelimiter() {
 		return userSettings.RecordDelimiter;
 	}
 
+	/**
+	 * Gets whether records end at the record delimiter only, rather than at
+	 * any CR or LF.
+	 */
+	boolean getUseCustomRecordDelimiter() {
+		return useCustomRecordDelimiter;
+	}
+
 	/**
 	 * Sets the character to use as the record delimiter.
 	 * 
@@ -298,6 +710,7 @@ public class CsvReader {
 	public void setRecordDelimiter(char recordDelimiter) {
 		useCustomRecordDelimiter = true;
 		userSettings.RecordDelimiter = recordDelimiter;
+		dialect = null;
 	}
 
 	/**
@@ -317,6 +730,7 @@ public class CsvReader {
 	 */
 	public void setTextQualifier(char textQualifier) {
 		userSettings.TextQualifier = textQualifier;
+		dialect = null;
 	}
 
 	/**
@@ -336,6 +750,7 @@ public class CsvReader {
 	 */
 	public void setUseTextQualifier(boolean useTextQualifier) {
 		userSettings.UseTextQualifier = useTextQualifier;
+		dialect = null;
 	}
 
 	/**
@@ -355,6 +770,7 @@ public class CsvReader {
 	 */
 	public void setComment(char comment) {
 		userSettings.Comment = comment;
+		dialect = null;
 	}
 
 	/**
@@ -374,6 +790,7 @@ public class CsvReader {
 	 */
 	public void setUseComments(boolean useComments) {
 		userSettings.UseComments = useComments;
+		dialect = null;
 	}
 
 	/**
@@ -405,6 +822,7 @@ public class CsvReader {
 		}
 
 		userSettings.EscapeMode = escapeMode;
+		dialect = null;
 	}
 
 	public boolean getSkipEmptyRecords() {
@@ -413,6 +831,7 @@ public class CsvReader {
 
 	public void setSkipEmptyRecords(boolean skipEmptyRecords) {
 		userSettings.SkipEmptyRecords = skipEmptyRecords;
+		dialect = null;
 	}
 
 	/**
@@ -443,6 +862,104 @@ public class CsvReader {
 		userSettings.SafetySwitch = safetySwitch;
 	}
 
+	/**
+	 * Gets the number of buffers that are read ahead of the parser on a
+	 * background thread.&nbsp;Default is 0, which reads from the source on
+	 * the parsing thread.
+	 * 
+	 * @return The number of buffers that are read ahead of the parser.
+	 */
+	public int getReadAheadBuffers() {
+		return userSettings.ReadAheadBuffers;
+	}
+
+	/**
+	 * Sets the number of buffers to read ahead of the parser on a background
+	 * thread, so reading from the source overlaps with parsing.&nbsp;At most
+	 * this many buffers are filled before the parser catches up.&nbsp;Errors
+	 * reading from the source are thrown from
+	 * {@link CsvReader#readRecord readRecord()} as usual.&nbsp;Default is 0,
+	 * which turns read ahead off.
+	 * 
+	 * @param readAheadBuffers
+	 *            The number of buffers to read ahead of the parser.
+	 * @exception IllegalArgumentException
+	 *                When a negative value is specified for readAheadBuffers.
+	 */
+	public void setReadAheadBuffers(int readAheadBuffers)
+			throws IllegalArgumentException {
+		if (readAheadBuffers < 0) {
+			throw new IllegalArgumentException(
+					"Parameter readAheadBuffers can not be negative.");
+		}
+
+		userSettings.ReadAheadBuffers = readAheadBuffers;
+	}
+
+	/**
+	 * Gets whether the file is followed as it grows.&nbsp;Default is false.
+	 * 
+	 * @return Whether the file is followed as it grows.
+	 */
+	public boolean getFollow() {
+		return userSettings.Follow;
+	}
+
+	/**
+	 * Sets whether to follow a file that another process keeps appending
+	 * to.&nbsp;When following, {@link CsvReader#readRecord readRecord()}
+	 * waits at the end of the data for more to be written instead of
+	 * returning false, and a record is only returned once it is complete,
+	 * never half written.&nbsp;Parsing carries on from the exact byte where it
+	 * stopped.
+	 * <p>
+	 * When the file is truncated, or rotated so that its path refers to a new
+	 * file, reading starts over from the beginning of the new data and any
+	 * partial record left over from the old data is dropped.&nbsp;Only
+	 * applies to readers created with a file name, and must be set before the
+	 * first record is read.&nbsp;Compressed files can't be followed.
+	 * 
+	 * @param follow
+	 *            Whether to follow the file as it grows.
+	 */
+	public void setFollow(boolean follow) {
+		userSettings.Follow = follow;
+	}
+
+	/**
+	 * Gets how many milliseconds a followed file is waited on for new records
+	 * before {@link CsvReader#readRecord readRecord()} returns false.
+	 * 
+	 * @return How many milliseconds to wait for new records, or 0 to wait
+	 *         forever.
+	 */
+	public long getFollowTimeout() {
+		return userSettings.FollowTimeout;
+	}
+
+	/**
+	 * Sets how many milliseconds a followed file is waited on for new records
+	 * before {@link CsvReader#readRecord readRecord()} returns false.&nbsp;The
+	 * wait only ends between records, and calling
+	 * {@link CsvReader#readRecord readRecord()} again keeps following the
+	 * file.&nbsp;Default is 0, which waits forever.
+	 * 
+	 * @param followTimeout
+	 *            How many milliseconds to wait for new records, or 0 to wait
+	 *            forever.
+	 * @exception IllegalArgumentException
+	 *                When a negative value is specified for followTimeout.
+	 */
+	public void setFollowTimeout(long followTimeout)
+			throws IllegalArgumentException {
+		if (followTimeout < 0) {
+			throw new IllegalArgumentException(
+					"Parameter followTimeout can not be negative.");
+		}
+
+		userSettings.FollowTimeout = followTimeout;
+	}
+
 	/**
 	 * Gets the count of columns found in this record.
 	 * 
@@ -493,86 +1010,349 @@ public class CsvReader {
 					headersHolder.Length);
 			return clone;
 		}
-	}
+	}
+
+	public void setHeaders(String[] headers) {
+		headersHolder.Headers = headers;
+
+		headersHolder.IndexByName.clear();
+
+		if (headers != null) {
+			headersHolder.Length = headers.length;
+		} else {
+			headersHolder.Length = 0;
+		}
+
+		// use headersHolder.Length here in case headers is null
+		for (int i = 0; i < headersHolder.Length; i++) {
+			headersHolder.IndexByName.put(headers[i], new Integer(i));
+		}
+	}
+
+	public String[] getValues() throws IOException {
+		checkClosed();
+
+		// need to return a clone, and can't use clone because values.Length
+		// might be greater than columnsCount
+		String[] clone = new String[columnsCount];
+		System.arraycopy(values, 0, clone, 0, columnsCount);
+		return clone;
+	}
+
+	/**
+	 * Returns the current column value for a given column index.
+	 * 
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @return The current column value.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public String get(int columnIndex) throws IOException {
+		checkClosed();
+
+		if (columnIndex > -1 && columnIndex < columnsCount) {
+			return values[columnIndex];
+		} else {
+			return "";
+		}
+	}
+
+	/**
+	 * Returns the current column value for a given column header name.
+	 * 
+	 * @param headerName
+	 *            The header name of the column.
+	 * @return The current column value.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public String get(String headerName) throws IOException {
+		checkClosed();
+
+		return get(getIndex(headerName));
+	}
+
+	/**
+	 * Creates a {@link CsvReader CsvReader} object using a string
+	 * of data as the source.&nbsp;Uses ISO-8859-1 as the
+	 * {@link java.nio.charset.Charset Charset}.
+	 * 
+	 * @param data
+	 *            The String of data to use as the source.
+	 * @return A {@link CsvReader CsvReader} object using the
+	 *         String of data as the source.
+	 */
+	public static CsvReader parse(String data) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
+
+		return parse(data, Letters.COMMA);
+	}
+
+	/**
+	 * Creates a {@link CsvReader CsvReader} object that parses a sequence of
+	 * characters in place, without reading it through a stream.
+	 * 
+	 * @param data
+	 *            The characters to use as the source.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @return A {@link CsvReader CsvReader} object using the characters as
+	 *         the source.
+	 */
+	public static CsvReader parse(CharSequence data, char delimiter) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
+
+		CsvReader reader = new CsvReader(delimiter);
+		reader.setData(data);
+
+		return reader;
+	}
+
+	/**
+	 * Creates a {@link CsvReader CsvReader} object that parses a range of a
+	 * character array in place.&nbsp;The array is used as the reader's
+	 * buffer, so it must not be changed while it is being read.
+	 * 
+	 * @param data
+	 *            The array holding the source.
+	 * @param offset
+	 *            The index of the first character of the source.
+	 * @param length
+	 *            The number of characters in the source.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @return A {@link CsvReader CsvReader} object using the characters as
+	 *         the source.
+	 */
+	public static CsvReader parse(char[] data, int offset, int length,
+			char delimiter) {
+		checkRange(data, offset, length);
+
+		CsvReader reader = new CsvReader(delimiter);
+		reader.setData(data, offset, length);
+
+		return reader;
+	}
+
+	/**
+	 * Creates a {@link CsvReader CsvReader} object that decodes a range of a
+	 * byte array in one pass and parses the characters in place.
+	 * 
+	 * @param data
+	 *            The array holding the source.
+	 * @param offset
+	 *            The index of the first byte of the source.
+	 * @param length
+	 *            The number of bytes in the source.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 * @return A {@link CsvReader CsvReader} object using the bytes as the
+	 *         source.
+	 */
+	public static CsvReader parse(byte[] data, int offset, int length,
+			char delimiter, Charset charset) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
 
-	public void setHeaders(String[] headers) {
-		headersHolder.Headers = headers;
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException("Range " + offset + " to "
+					+ (offset + length) + " is outside of the data's "
+					+ data.length + " bytes.");
+		}
 
-		headersHolder.IndexByName.clear();
+		return parse(ByteBuffer.wrap(data, offset, length), delimiter,
+				charset);
+	}
 
-		if (headers != null) {
-			headersHolder.Length = headers.length;
-		} else {
-			headersHolder.Length = 0;
+	/**
+	 * Creates a {@link CsvReader CsvReader} object that decodes the remaining
+	 * bytes of a heap or direct buffer in one pass and parses the characters
+	 * in place.&nbsp;The buffer's position is not changed.
+	 * 
+	 * @param data
+	 *            The buffer holding the source.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            parsing the data.
+	 * @return A {@link CsvReader CsvReader} object using the bytes as the
+	 *         source.
+	 */
+	public static CsvReader parse(ByteBuffer data, char delimiter,
+			Charset charset) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
 		}
 
-		// use headersHolder.Length here in case headers is null
-		for (int i = 0; i < headersHolder.Length; i++) {
-			headersHolder.IndexByName.put(headers[i], new Integer(i));
+		if (charset == null) {
+			throw new IllegalArgumentException(
+					"Parameter charset can not be null.");
 		}
+
+		return parse(charset.decode(data.duplicate()), delimiter);
 	}
 
-	public String[] getValues() throws IOException {
-		checkClosed();
+	private static void checkRange(char[] data, int offset, int length) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
 
-		// need to return a clone, and can't use clone because values.Length
-		// might be greater than columnsCount
-		String[] clone = new String[columnsCount];
-		System.arraycopy(values, 0, clone, 0, columnsCount);
-		return clone;
+		if (offset < 0 || length < 0 || offset + length > data.length) {
+			throw new IndexOutOfBoundsException("Range " + offset + " to "
+					+ (offset + length) + " is outside of the data's "
+					+ data.length + " characters.");
+		}
 	}
 
 	/**
-	 * Returns the current column value for a given column index.
-	 * 
-	 * @param columnIndex
-	 *            The index of the column.
-	 * @return The current column value.
-	 * @exception IOException
-	 *                Thrown if this object has already been closed.
+	 * Points the data buffer at characters that are already in memory.
 	 */
-	public String get(int columnIndex) throws IOException {
-		checkClosed();
+	private void setData(CharSequence data) {
+		if (data instanceof CharBuffer && ((CharBuffer) data).hasArray()) {
+			CharBuffer buffer = (CharBuffer) data;
 
-		if (columnIndex > -1 && columnIndex < columnsCount) {
-			return values[columnIndex];
+			setData(buffer.array(), buffer.arrayOffset() + buffer.position(),
+					buffer.remaining());
 		} else {
-			return "";
+			char[] chars = data.toString().toCharArray();
+
+			setData(chars, 0, chars.length);
+		}
+	}
+
+	private void setData(char[] data, int offset, int length) {
+		if (!inMemory) {
+			streamBuffer = dataBuffer.Buffer;
 		}
+
+		inMemory = true;
+
+		dataBuffer.Buffer = data;
+		dataBuffer.Position = offset;
+		dataBuffer.Count = offset + length;
+		dataBuffer.ColumnStart = offset;
+		dataBuffer.LineStart = offset;
 	}
 
 	/**
-	 * Returns the current column value for a given column header name.
+	 * Gets a checkpoint of the position of this reader, to be passed to
+	 * {@link CsvReader#resume resume()} later to carry on reading from the
+	 * next record.&nbsp;Should be called between records, after
+	 * {@link CsvReader#readRecord readRecord()} or
+	 * {@link CsvReader#readHeaders readHeaders()} returns.
 	 * 
-	 * @param headerName
-	 *            The header name of the column.
-	 * @return The current column value.
+	 * @return The checkpoint.
 	 * @exception IOException
 	 *                Thrown if this object has already been closed.
+	 * @exception IllegalStateException
+	 *                When the reader wasn't created with a file name, since
+	 *                only a file can be seeked in, or when the data is in a
+	 *                charset that keeps state between characters, such as
+	 *                ISO-2022-JP.
 	 */
-	public String get(String headerName) throws IOException {
+	public CsvCheckpoint getCheckpoint() throws IOException {
 		checkClosed();
 
-		return get(getIndex(headerName));
+		if (fileName == null) {
+			throw new IllegalStateException(
+					"Checkpoints can only be taken of readers created with a file name.");
+		}
+
+		if (byteCounter != null && !byteCounter.canCount()) {
+			throw new IllegalStateException(
+					"Checkpoints can not be taken of data in the "
+							+ byteCounter.getCharset().name()
+							+ " charset, since it keeps state between characters.");
+		}
+
+		CsvCheckpoint checkpoint = new CsvCheckpoint();
+
+		checkpoint.ByteOffset = bufferByteOffset;
+
+		if (byteCounter != null && dataBuffer.Position > 0) {
+			checkpoint.ByteOffset += byteCounter.count(dataBuffer.Buffer, 0,
+					dataBuffer.Position);
+		}
+
+		checkpoint.CurrentRecord = currentRecord;
+		checkpoint.Headers = getHeaders();
+		checkpoint.CharsetName = byteCounter != null ? byteCounter
+				.getCharset().name() : charset.name();
+		checkpoint.Delimiter = userSettings.Delimiter;
+		checkpoint.TextQualifier = userSettings.TextQualifier;
+		checkpoint.UseTextQualifier = userSettings.UseTextQualifier;
+		checkpoint.EscapeMode = userSettings.EscapeMode;
+		checkpoint.RecordDelimiter = userSettings.RecordDelimiter;
+		checkpoint.UseCustomRecordDelimiter = useCustomRecordDelimiter;
+		checkpoint.Comment = userSettings.Comment;
+		checkpoint.UseComments = userSettings.UseComments;
+		checkpoint.TrimWhitespace = userSettings.TrimWhitespace;
+		checkpoint.SkipEmptyRecords = userSettings.SkipEmptyRecords;
+		checkpoint.SafetySwitch = userSettings.SafetySwitch;
+		checkpoint.CaptureRawRecord = userSettings.CaptureRawRecord;
+		checkpoint.LastLetter = lastLetter;
+
+		return checkpoint;
 	}
 
 	/**
-	 * Creates a {@link CsvReader CsvReader} object using a string
-	 * of data as the source.&nbsp;Uses ISO-8859-1 as the
-	 * {@link java.nio.charset.Charset Charset}.
+	 * Creates a {@link CsvReader CsvReader} object that carries on reading a
+	 * file from a checkpoint taken with
+	 * {@link CsvReader#getCheckpoint getCheckpoint()}.&nbsp;The reader seeks
+	 * straight to the next record, and has the headers, record number and
+	 * parsing settings the checkpoint was taken with.
 	 * 
-	 * @param data
-	 *            The String of data to use as the source.
-	 * @return A {@link CsvReader CsvReader} object using the
-	 *         String of data as the source.
+	 * @param fileName
+	 *            The path to the file the checkpoint was taken of.
+	 * @param checkpoint
+	 *            The checkpoint.
+	 * @return A {@link CsvReader CsvReader} object positioned at the record
+	 *         after the checkpoint.
+	 * @exception FileNotFoundException
+	 *                Thrown if the file doesn't exist.
 	 */
-	public static CsvReader parse(String data) {
-		if (data == null) {
+	public static CsvReader resume(String fileName, CsvCheckpoint checkpoint)
+			throws FileNotFoundException {
+		if (checkpoint == null) {
 			throw new IllegalArgumentException(
-					"Parameter data can not be null.");
+					"Parameter checkpoint can not be null.");
 		}
 
-		return new CsvReader(new StringReader(data));
+		CsvReader reader = new CsvReader(fileName, checkpoint.Delimiter,
+				Charset.forName(checkpoint.CharsetName));
+
+		reader.userSettings.TextQualifier = checkpoint.TextQualifier;
+		reader.userSettings.UseTextQualifier = checkpoint.UseTextQualifier;
+		reader.userSettings.EscapeMode = checkpoint.EscapeMode;
+		reader.userSettings.RecordDelimiter = checkpoint.RecordDelimiter;
+		reader.useCustomRecordDelimiter = checkpoint.UseCustomRecordDelimiter;
+		reader.userSettings.Comment = checkpoint.Comment;
+		reader.userSettings.UseComments = checkpoint.UseComments;
+		reader.userSettings.TrimWhitespace = checkpoint.TrimWhitespace;
+		reader.userSettings.SkipEmptyRecords = checkpoint.SkipEmptyRecords;
+		reader.userSettings.SafetySwitch = checkpoint.SafetySwitch;
+		reader.userSettings.CaptureRawRecord = checkpoint.CaptureRawRecord;
+		reader.setHeaders(checkpoint.getHeaders());
+		reader.currentRecord = checkpoint.CurrentRecord;
+		reader.lastLetter = checkpoint.LastLetter;
+		reader.bufferByteOffset = checkpoint.ByteOffset;
+
+		return reader;
 	}
 
 	/**
@@ -586,13 +1366,27 @@ public class CsvReader {
 	public boolean readRecord() throws IOException {
 		checkClosed();
 
+		if (followStream != null && !hasMoreData) {
+			// a followed file is read again after a timeout, or after being
+			// truncated or rotated
+			hasMoreData = true;
+
+			dataBuffer.Count = 0;
+			dataBuffer.Position = 0;
+			dataBuffer.ColumnStart = 0;
+		}
+
 		columnsCount = 0;
-		rawBuffer.Position = 0;
+		rawBuffer.clear();
+		rawRecord = "";
 
 		dataBuffer.LineStart = dataBuffer.Position;
 
 		hasReadNextLine = false;
 
+		// marks every letter that may mean something other than data
+		byte[] classes = getDialect().getCharClasses();
+
 		// check to see if we've already found the end of data
 
 		if (hasMoreData) {
@@ -821,6 +1615,8 @@ public class CsvReader {
 										// run of the loop
 
 										lastLetterWasQualifier = false;
+									} else {
+										currentLetter = skipPlainLetters(classes);
 									}
 								}
 
@@ -1073,6 +1869,8 @@ public class CsvReader {
 										endColumn();
 
 										endRecord();
+									} else {
+										currentLetter = skipPlainLetters(classes);
 									}
 								}
 
@@ -1121,31 +1919,31 @@ public class CsvReader {
 			// without processing the current record
 
 			if (startedColumn || lastLetter == userSettings.Delimiter) {
-				endColumn();
+				if (followStream == null) {
+					endColumn();
 
-				endRecord();
+					endRecord();
+				} else {
+					// the rest of this record was cut off by the followed
+					// file being truncated or rotated
+					startedColumn = false;
+					lastLetter = Letters.NULL;
+					columnBuffer.Position = 0;
+					columnsCount = 0;
+				}
 			}
 		}
 
+		if (!hasReadNextLine && followStream != null
+				&& followStream.takeRestarted()) {
+			bufferByteOffset = 0;
+
+			return readRecord();
+		}
+
 		if (userSettings.CaptureRawRecord) {
-			if (hasMoreData) {
-				if (rawBuffer.Position == 0) {
-					rawRecord = new String(dataBuffer.Buffer,
-							dataBuffer.LineStart, dataBuffer.Position
-									- dataBuffer.LineStart - 1);
-				} else {
-					rawRecord = new String(rawBuffer.Buffer, 0,
-							rawBuffer.Position)
-							+ new String(dataBuffer.Buffer,
-									dataBuffer.LineStart, dataBuffer.Position
-											- dataBuffer.LineStart - 1);
-				}
-			} else {
-				// for hasMoreData to ever be false, all data would have had to
-				// have been
-				// copied to the raw buffer
-				rawRecord = new String(rawBuffer.Buffer, 0, rawBuffer.Position);
-			}
+			// the raw record is left in the buffers until it's asked for
+			rawRecord = null;
 		} else {
 			rawRecord = "";
 		}
@@ -1153,45 +1951,112 @@ public class CsvReader {
 		return hasReadNextLine;
 	}
 
+	/**
+	 * Builds the raw record from the buffers, which hold it until the next
+	 * record is read.
+	 */
+	private String buildRawRecord() {
+		if (hasMoreData) {
+			if (rawBuffer.Position == 0) {
+				return new String(dataBuffer.Buffer, dataBuffer.LineStart,
+						dataBuffer.Position - dataBuffer.LineStart - 1);
+			} else {
+				int length = dataBuffer.Position - dataBuffer.LineStart - 1;
+				StringBuilder builder = new StringBuilder(rawBuffer.Position
+						+ length);
+
+				rawBuffer.appendTo(builder);
+				builder.append(dataBuffer.Buffer, dataBuffer.LineStart, length);
+
+				return builder.toString();
+			}
+		} else if (inMemory) {
+			// the rest of an in memory source is still in the buffer
+			return new String(dataBuffer.Buffer, dataBuffer.LineStart,
+					dataBuffer.Count - dataBuffer.LineStart);
+		} else {
+			// for hasMoreData to ever be false, all data would have had to
+			// have been kept in the raw buffer
+			StringBuilder builder = new StringBuilder(rawBuffer.Position);
+
+			rawBuffer.appendTo(builder);
+
+			return builder.toString();
+		}
+	}
+
 	/**
 	 * @exception IOException
 	 *                Thrown if an error occurs while reading data from the
 	 *                source stream.
 	 */
 	private void checkDataLength() throws IOException {
+		if (inMemory) {
+			// the whole source is already in the buffer, so nothing needs to
+			// be kept from it or read into it
+			hasMoreData = false;
+
+			return;
+		}
+
 		if (!initialized) {
 			if (fileName != null) {
-				inputStream = new BufferedReader(new InputStreamReader(
-						new FileInputStream(fileName), charset),
-						StaticSettings.MAX_FILE_BUFFER_SIZE);
+				// opening the file can replace the charset with the one
+				// recorded in a block compressed file
+				InputStream stream = readByteOrderMark(openFile());
+
+				byteCounter = new ByteCounter(charset);
+
+				inputStream = new BufferedReader(new InputStreamReader(stream,
+						charset), StaticSettings.MAX_FILE_BUFFER_SIZE);
+
+				closer = new ResourceCleaner.StreamCloser(inputStream);
+				ResourceCleaner.register(this, closer);
 			}
 
 			charset = null;
 			initialized = true;
 		}
 
-		updateCurrentValue();
+		if (userSettings.ReadAheadBuffers > 0 && followStream == null
+				&& !(inputStream instanceof ReadAheadReader)) {
+			inputStream = new ReadAheadReader(inputStream,
+					userSettings.ReadAheadBuffers,
+					StaticSettings.READ_AHEAD_BUFFER_SIZE);
 
-		if (userSettings.CaptureRawRecord && dataBuffer.Count > 0) {
-			if (rawBuffer.Buffer.length - rawBuffer.Position < dataBuffer.Count
-					- dataBuffer.LineStart) {
-				int newLength = rawBuffer.Buffer.length
-						+ Math.max(dataBuffer.Count - dataBuffer.LineStart,
-								rawBuffer.Buffer.length);
+			if (closer != null) {
+				closer.Stream = inputStream;
+			} else {
+				// the caller's stream stays open, but a reader that is
+				// never closed still stops the thread reading ahead
+				if (readAheadStopper == null) {
+					readAheadStopper = new ReadAheadReader.Stopper();
+					ResourceCleaner.register(this, readAheadStopper);
+				}
 
-				char[] holder = new char[newLength];
+				readAheadStopper.Reader = (ReadAheadReader) inputStream;
+			}
+		}
 
-				System.arraycopy(rawBuffer.Buffer, 0, holder, 0,
-						rawBuffer.Position);
+		updateCurrentValue();
 
-				rawBuffer.Buffer = holder;
-			}
+		if (byteCounter != null && dataBuffer.Count > 0) {
+			bufferByteOffset += byteCounter.count(dataBuffer.Buffer, 0,
+					dataBuffer.Count);
+		}
 
-			System.arraycopy(dataBuffer.Buffer, dataBuffer.LineStart,
-					rawBuffer.Buffer, rawBuffer.Position, dataBuffer.Count
-							- dataBuffer.LineStart);
+		if (userSettings.CaptureRawRecord
+				&& dataBuffer.Count > dataBuffer.LineStart) {
+			// rather than copying out the start of the record, keep the
+			// buffer holding it and read on into another one
+			dataBuffer.Buffer = rawBuffer.keep(dataBuffer.Buffer,
+					dataBuffer.LineStart, dataBuffer.Count);
+		}
 
-			rawBuffer.Position += dataBuffer.Count - dataBuffer.LineStart;
+		if (followStream != null) {
+			followStream.setAtRecordBoundary(!startedColumn
+					&& columnsCount == 0
+					&& dataBuffer.LineStart == dataBuffer.Count);
 		}
 
 		try {
@@ -1215,6 +2080,165 @@ public class CsvReader {
 		dataBuffer.ColumnStart = 0;
 	}
 
+	/**
+	 * Moves past the run of letters after the current one that are plain data
+	 * in the dialect's character table, which need nothing done but being
+	 * kept as part of the column, up to the last letter of the run.
+	 * 
+	 * @return The letter now at the current position.
+	 */
+	private char skipPlainLetters(byte[] classes) {
+		char[] buffer = dataBuffer.Buffer;
+		int count = dataBuffer.Count;
+		int position = dataBuffer.Position + 1;
+
+		while (position < count && classes[buffer[position]] == 0) {
+			position++;
+		}
+
+		dataBuffer.Position = position - 1;
+
+		return buffer[position - 1];
+	}
+
+	/**
+	 * Reads the byte order mark at the start of UTF-16 or UTF-32 data here
+	 * rather than in the decoder, so that it is counted in the byte offsets
+	 * and the byte order is known when resuming from a checkpoint.
+	 * 
+	 * @exception IOException
+	 *                Thrown if an error occurs while reading the data.
+	 */
+	private InputStream readByteOrderMark(InputStream stream)
+			throws IOException {
+		String name = charset.name();
+		int size = name.equals("UTF-16") ? 2 : name.equals("UTF-32") ? 4 : 0;
+
+		if (size == 0 || bufferByteOffset > 0) {
+			return stream;
+		}
+
+		if (!stream.markSupported()) {
+			stream = new BufferedInputStream(stream, size);
+		}
+
+		byte[] mark = new byte[size];
+		int count = 0;
+		int read = 0;
+
+		stream.mark(size);
+
+		while (count < size
+				&& (read = stream.read(mark, count, size - count)) > 0) {
+			count += read;
+		}
+
+		stream.reset();
+
+		// without a byte order mark, both charsets are big endian
+		boolean littleEndian = count == size && mark[0] == (byte) 0xFF
+				&& mark[1] == (byte) 0xFE && (size == 2 || mark[2] == 0
+				&& mark[3] == 0);
+		boolean bigEndian = count == size
+				&& (size == 2 ? mark[0] == (byte) 0xFE
+						&& mark[1] == (byte) 0xFF : mark[0] == 0
+						&& mark[1] == 0 && mark[2] == (byte) 0xFE
+						&& mark[3] == (byte) 0xFF);
+
+		charset = Charset.forName(name + (littleEndian ? "LE" : "BE"));
+
+		if (littleEndian || bigEndian) {
+			skipFully(stream, size);
+			bufferByteOffset = size;
+		}
+
+		return stream;
+	}
+
+	/**
+	 * Skips bytes of decompressed data.
+	 * 
+	 * @exception IOException
+	 *                Thrown if the data ends before the bytes were skipped.
+	 */
+	private static void skipFully(InputStream stream, long count)
+			throws IOException {
+		while (count > 0) {
+			long skipped = stream.skip(count);
+
+			if (skipped <= 0) {
+				if (stream.read() == -1) {
+					throw new EOFException(
+							"The data ended before the checkpoint's offset.");
+				}
+
+				skipped = 1;
+			}
+
+			count -= skipped;
+		}
+	}
+
+	/**
+	 * Opens the data file, decompressing it on the fly if it starts with the
+	 * gzip or block compressed file magic number, and positions it at the
+	 * offset of the checkpoint the reader was resumed from, if any.
+	 * 
+	 * @exception IOException
+	 *                Thrown if the file can't be opened.
+	 */
+	private InputStream openFile() throws IOException {
+		if (userSettings.Follow) {
+			followStream = new FollowInputStream(fileName,
+					userSettings.FollowTimeout);
+			followStream.skip(bufferByteOffset);
+
+			return followStream;
+		}
+
+		InputStream stream = new BufferedInputStream(new FileInputStream(
+				fileName), StaticSettings.MAX_COMPRESSED_BUFFER_SIZE);
+
+		try {
+			if (ParallelGzipInputStream.isGzip(stream)) {
+				InputStream gzip = new ParallelGzipInputStream(stream);
+				skipFully(gzip, bufferByteOffset);
+
+				return gzip;
+			}
+
+			if (BlockInputStream.isBlockFile(stream)) {
+				DataInputStream data = new DataInputStream(stream);
+
+				data.skipBytes(CsvBlockFile.MAGIC.length);
+				charset = Charset.forName(data.readUTF());
+				CsvBlockFile.readDialect(data, fileName);
+
+				InputStream blocks = new BlockInputStream(data);
+				skipFully(blocks, bufferByteOffset);
+
+				return blocks;
+			}
+		} catch (IOException ex) {
+			stream.close();
+
+			throw ex;
+		}
+
+		if (bufferByteOffset > 0) {
+			// seek straight to the checkpoint's offset
+			stream.close();
+
+			FileInputStream file = new FileInputStream(fileName);
+			file.getChannel().position(bufferByteOffset);
+
+			stream = new BufferedInputStream(file,
+					StaticSettings.MAX_COMPRESSED_BUFFER_SIZE);
+		}
+
+		return stream;
+	}
+
 	/**
 	 * Read the first record of data as column headers.
 	 * 
@@ -1534,7 +2558,7 @@ public class CsvReader {
 			dataBuffer.LineStart = dataBuffer.Position + 1;
 		}
 
-		rawBuffer.Position = 0;
+		rawBuffer.clear();
 		rawRecord = "";
 
 		return skippedLine;
@@ -1557,23 +2581,32 @@ public class CsvReader {
 	private void close(boolean closing) {
 		if (!closed) {
 			if (closing) {
+				if (rawRecord == null) {
+					rawRecord = buildRawRecord();
+				}
+
 				charset = null;
 				headersHolder.Headers = null;
 				headersHolder.IndexByName = null;
 				dataBuffer.Buffer = null;
 				columnBuffer.Buffer = null;
-				rawBuffer.Buffer = null;
+				rawBuffer.release();
 			}
 
 			try {
-				if (initialized) {
+				if (initialized && inputStream != null) {
 					inputStream.close();
 				}
 			} catch (Exception e) {
 				// just eat the exception
 			}
 
+			if (closer != null) {
+				closer.Stream = null;
+			}
+
 			inputStream = null;
+			followStream = null;
 
 			closed = true;
 		}
@@ -1590,24 +2623,17 @@ public class CsvReader {
 		}
 	}
 
-	/**
-	 * 
-	 */
-	protected void finalize() {
-		close(false);
-	}
+	static class ComplexEscape {
+		static final int UNICODE = 1;
 
-	private class ComplexEscape {
-		private static final int UNICODE = 1;
+		static final int OCTAL = 2;
 
-		private static final int OCTAL = 2;
+		static final int DECIMAL = 3;
 
-		private static final int DECIMAL = 3;
-
-		private static final int HEX = 4;
+		static final int HEX = 4;
 	}
 
-	private static char hexToDec(char hex) {
+	static char hexToDec(char hex) {
 		char result;
 
 		if (hex >= 'a') {
@@ -1661,19 +2687,117 @@ public class CsvReader {
 		}
 	}
 
+	/**
+	 * The start of the current record, when it was read into earlier
+	 * buffers.&nbsp;Those buffers are kept as they are until the next record
+	 * rather than copied out, so the raw record is only put together when
+	 * it's asked for.
+	 */
 	private class RawRecordBuffer {
-		public char[] Buffer;
+		// the buffers holding the start of the record, and the part of each
+		// that belongs to it
+		public char[][] Buffers;
 
+		public int[] Starts;
+
+		public int[] Ends;
+
+		public int Count;
+
+		// the number of characters in all of the kept parts
 		public int Position;
 
+		// buffers no longer kept, to read into again
+		public char[][] Spares;
+
+		public int SpareCount;
+
 		public RawRecordBuffer() {
-			Buffer = new char[StaticSettings.INITIAL_COLUMN_BUFFER_SIZE
-					* StaticSettings.INITIAL_COLUMN_COUNT];
+			Buffers = new char[2][];
+			Starts = new int[2];
+			Ends = new int[2];
+			Count = 0;
+			Position = 0;
+			Spares = new char[2][];
+			SpareCount = 0;
+		}
+
+		/**
+		 * Keeps part of a buffer as the next part of the record, and gets a
+		 * buffer to read on into.
+		 */
+		public char[] keep(char[] buffer, int start, int end) {
+			if (Count == Buffers.length) {
+				Buffers = Arrays.copyOf(Buffers, Count * 2);
+				Starts = Arrays.copyOf(Starts, Count * 2);
+				Ends = Arrays.copyOf(Ends, Count * 2);
+			}
+
+			Buffers[Count] = buffer;
+			Starts[Count] = start;
+			Ends[Count] = end;
+			Count++;
+			Position += end - start;
+
+			if (SpareCount > 0
+					&& Spares[SpareCount - 1].length == buffer.length) {
+				SpareCount--;
+
+				char[] spare = Spares[SpareCount];
+				Spares[SpareCount] = null;
+
+				return spare;
+			}
+
+			return new char[buffer.length];
+		}
+
+		/**
+		 * Lets go of the kept parts once a new record starts.
+		 */
+		public void clear() {
+			for (int i = 0; i < Count; i++) {
+				if (SpareCount == Spares.length) {
+					Spares = Arrays.copyOf(Spares, SpareCount * 2);
+				}
+
+				Spares[SpareCount++] = Buffers[i];
+				Buffers[i] = null;
+			}
+
+			Count = 0;
 			Position = 0;
 		}
+
+		/**
+		 * Lets go of every buffer when the reader is closed.
+		 */
+		public void release() {
+			Buffers = new char[2][];
+			Count = 0;
+			Spares = new char[2][];
+			SpareCount = 0;
+		}
+
+		public void appendTo(StringBuilder builder) {
+			for (int i = 0; i < Count; i++) {
+				builder.append(Buffers[i], Starts[i], Ends[i] - Starts[i]);
+			}
+		}
+
+		public long countBytes(ByteCounter counter) {
+			long bytes = 0;
+
+			for (int i = 0; i < Count; i++) {
+				bytes += counter.count(Buffers[i], Starts[i], Ends[i]
+						- Starts[i]);
+			}
+
+			return bytes;
+		}
 	}
 
-	private class Letters {
+	static class Letters {
 		public static final char LF = '\n';
 
 		public static final char CR = '\r';
@@ -1703,7 +2827,7 @@ public class CsvReader {
 		public static final char ALERT = '\u0007';
 	}
 
-	private class UserSettings {
+	static class UserSettings {
 		// having these as publicly accessible members will prevent
 		// the overhead of the method call that exists on properties
 		public boolean CaseSensitive;
@@ -1730,6 +2854,12 @@ public class CsvReader {
 
 		public boolean CaptureRawRecord;
 
+		public int ReadAheadBuffers;
+
+		public boolean Follow;
+
+		public long FollowTimeout;
+
 		public UserSettings() {
 			CaseSensitive = true;
 			TextQualifier = Letters.QUOTE;
@@ -1743,6 +2873,9 @@ public class CsvReader {
 			SafetySwitch = true;
 			SkipEmptyRecords = true;
 			CaptureRawRecord = true;
+			ReadAheadBuffers = 0;
+			Follow = false;
+			FollowTimeout = 0;
 		}
 	}
 
@@ -1771,5 +2904,9 @@ public class CsvReader {
 		public static final int INITIAL_COLUMN_COUNT = 10;
 
 		public static final int INITIAL_COLUMN_BUFFER_SIZE = 50;
+
+		public static final int READ_AHEAD_BUFFER_SIZE = 64 * 1024;
+
+		public static final int MAX_COMPRESSED_BUFFER_SIZE = 64 * 1024;
 	}
 }
\ No newline at end of file
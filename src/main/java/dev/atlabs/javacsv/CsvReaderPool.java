@@ -0,0 +1,200 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+
+/**
+ * A pool of {@link CsvReader CsvReader} objects for parsing many small
+ * sources, such as one message at a time, without allocating a new reader
+ * and its buffers for each one.&nbsp;The pool may be shared between threads,
+ * but each reader must only be used by the thread that acquired it until it
+ * is released.
+ * <p>
+ * Readers are handed out with the pool's dialect; settings changed on a
+ * reader are put back when it is released.
+ */
+public class CsvReaderPool {
+	private CsvDialect dialect;
+
+	private int maxIdle;
+
+	private ArrayDeque<CsvReader> idle = new ArrayDeque<CsvReader>();
+
+	/**
+	 * Creates a pool of readers.
+	 *
+	 * @param delimiter
+	 *            The character the readers use as the column delimiter.
+	 * @param maxIdle
+	 *            The most readers kept in the pool while not in use; readers
+	 *            released past this are closed.
+	 */
+	public CsvReaderPool(char delimiter, int maxIdle) {
+		this(CsvDialect.DEFAULT.withDelimiter(delimiter), maxIdle);
+	}
+
+	/**
+	 * Creates a pool of readers that all parse with the same dialect.
+	 *
+	 * @param dialect
+	 *            The settings the readers parse with.
+	 * @param maxIdle
+	 *            The most readers kept in the pool while not in use; readers
+	 *            released past this are closed.
+	 */
+	public CsvReaderPool(CsvDialect dialect, int maxIdle) {
+		if (dialect == null) {
+			throw new IllegalArgumentException(
+					"Parameter dialect can not be null.");
+		}
+
+		if (maxIdle < 0) {
+			throw new IllegalArgumentException(
+					"Parameter maxIdle can not be negative.");
+		}
+
+		this.dialect = dialect;
+		this.maxIdle = maxIdle;
+	}
+
+	/**
+	 * Gets a reader over a source, reusing an idle reader when there is one.
+	 *
+	 * @param inputStream
+	 *            The stream to use as the data source.
+	 * @return The reader.
+	 */
+	public CsvReader acquire(Reader inputStream) {
+		if (inputStream == null) {
+			throw new IllegalArgumentException(
+					"Parameter inputStream can not be null.");
+		}
+
+		CsvReader reader = pollIdle();
+
+		if (reader == null) {
+			return new CsvReader(inputStream, dialect);
+		}
+
+		try {
+			reader.reset(inputStream);
+		} catch (IOException ex) {
+			// idle readers are never closed
+			throw new IllegalStateException(ex.getMessage());
+		}
+
+		return reader;
+	}
+
+	/**
+	 * Gets a reader that parses a string of data in place, reusing an idle
+	 * reader when there is one.
+	 *
+	 * @param data
+	 *            The String of data to use as the source.
+	 * @return The reader.
+	 */
+	public CsvReader acquire(String data) {
+		if (data == null) {
+			throw new IllegalArgumentException(
+					"Parameter data can not be null.");
+		}
+
+		CsvReader reader = pollIdle();
+
+		if (reader == null) {
+			reader = CsvReader.parse(data, dialect.getDelimiter());
+			reader.setDialect(dialect);
+
+			return reader;
+		}
+
+		try {
+			reader.reset(data);
+		} catch (IOException ex) {
+			// idle readers are never closed
+			throw new IllegalStateException(ex.getMessage());
+		}
+
+		return reader;
+	}
+
+	private CsvReader pollIdle() {
+		synchronized (idle) {
+			CsvReader reader = idle.pollFirst();
+
+			if (reader != null) {
+				reader.setPooled(false);
+			}
+
+			return reader;
+		}
+	}
+
+	/**
+	 * Returns a reader to the pool once it is no longer used.&nbsp;The
+	 * reader's source is not closed, unless the reader opened it
+	 * itself.&nbsp;Releasing a reader that is already back in the pool does
+	 * nothing.
+	 *
+	 * @param reader
+	 *            The reader to return.
+	 */
+	public void release(CsvReader reader) {
+		if (reader == null || reader.isClosed()) {
+			return;
+		}
+
+		synchronized (idle) {
+			if (reader.isPooled()) {
+				return;
+			}
+
+			reader.setPooled(true);
+		}
+
+		reader.recycle(dialect);
+
+		synchronized (idle) {
+			if (idle.size() < maxIdle) {
+				idle.addFirst(reader);
+
+				return;
+			}
+		}
+
+		reader.close();
+	}
+
+	/**
+	 * Gets the number of readers waiting in the pool.
+	 *
+	 * @return The number of idle readers.
+	 */
+	public int getIdleCount() {
+		synchronized (idle) {
+			return idle.size();
+		}
+	}
+}
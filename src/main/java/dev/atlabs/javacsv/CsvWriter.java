@@ -20,24 +20,65 @@
  */
 package dev.atlabs.javacsv;
 
-import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
-import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.util.zip.Deflater;
 
 /**
  * A stream based writer for writing delimited text data to a file or a stream.
  */
-public class CsvWriter {
+public class CsvWriter implements Closeable {
 	private Writer outputStream = null;
+
+	// closes the stream if the writer is garbage collected without being
+	// closed
+	private ResourceCleaner.StreamCloser closer = null;
+
+	// set when writing a block compressed file
+	private BlockCompressedWriter blockOutput = null;
+
+	private ParallelGzipOutputStream gzipOutput = null;
+
+	// records are gathered here and handed to outputStream in bulk
+	private char[] buffer = null;
+
+	private int bufferCount = 0;
+
+	// where the record being written starts in the buffer
+	private int recordStart = 0;
+
+	// writes buffers out on a background thread when writing asynchronously
+	private AsyncSink asyncSink = null;
+
+	// whether the rest of the current record is being thrown away
+	private boolean droppingRecord = false;
+
+	private long droppedRecordCount = 0;
+
+	// reused to write columns from character arrays and doubles without
+	// allocating
+	private CharArraySequence arrayContent = new CharArraySequence();
+
+	private StringBuilder numberContent = new StringBuilder(32);
+
+	// the dialect numberPlain was worked out for
+	private CsvDialect numberDialect = null;
+
+	private boolean numberPlain = false;
 	
 	private String fileName = null;
 
 	private boolean firstColumn = true;
 
+	// the index of the next column written in the current record
+	private int column = 0;
+
 	private boolean useCustomRecordDelimiter = false;
 
 	private Charset charset = null;
@@ -45,6 +86,10 @@ public class CsvWriter {
 	// this holds all the values for switches that the user is allowed to set
 	private UserSettings userSettings = new UserSettings();
 
+	// the settings as a dialect, built when needed and dropped when a
+	// setting changes
+	private CsvDialect dialect = null;
+
 	private boolean initialized = false;
 
 	private boolean closed = false;
@@ -63,6 +108,34 @@ public class CsvWriter {
 	 */
 	public static final int ESCAPE_MODE_BACKSLASH = 2;
 
+	/**
+	 * When writing asynchronously, wait for the background thread to free a
+	 * buffer when they are all full.
+	 */
+	public static final int OVERFLOW_BLOCK = 1;
+
+	/**
+	 * When writing asynchronously, drop records when the buffers are all
+	 * full, rather than wait for the background thread.
+	 */
+	public static final int OVERFLOW_DROP = 2;
+
+	/**
+	 * Scan the column data and qualify it only when it needs to be.
+	 */
+	public static final int QUOTE_AUTO = 1;
+
+	/**
+	 * Write the column data as is, without scanning it, for columns that can
+	 * never hold a delimiter, qualifier, escape or record delimiter.
+	 */
+	public static final int QUOTE_NEVER = 2;
+
+	/**
+	 * Always qualify the column data.
+	 */
+	public static final int QUOTE_ALWAYS = 3;
+
 	/**
 	 * Creates a {@link CsvWriter CsvWriter} object using a file
 	 * as the data destination.
@@ -118,6 +191,9 @@ public class CsvWriter {
 		this.outputStream = outputStream;
 		userSettings.Delimiter = delimiter;
 		initialized = true;
+
+		closer = new ResourceCleaner.StreamCloser(outputStream);
+		ResourceCleaner.register(this, closer);
 	}
 
 	/**
@@ -133,7 +209,140 @@ public class CsvWriter {
 	 *            writing the data.
 	 */
 	public CsvWriter(OutputStream outputStream, char delimiter, Charset charset) {
-		this(new OutputStreamWriter(outputStream, charset), delimiter);
+		this(EncodingWriter.create(outputStream, charset,
+				StaticSettings.MAX_FILE_BUFFER_SIZE), delimiter);
+	}
+
+	/**
+	 * Creates a {@link CsvWriter CsvWriter} object writing to a
+	 * {@link java.nio.channels.FileChannel FileChannel} from its current
+	 * position.&nbsp;The data is written through pooled direct buffers, with
+	 * a single gathering write each time the output buffer is handed over,
+	 * so raising {@link #setBufferSize setBufferSize()} and
+	 * {@link #setFlushThreshold setFlushThreshold()} makes the writes larger.
+	 * The channel is closed when the writer is.
+	 * 
+	 * @param channel
+	 *            The channel to write the column delimited data to.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            writing the data.
+	 */
+	public CsvWriter(FileChannel channel, char delimiter, Charset charset) {
+		this(EncodingWriter.create(ChannelOutputStream
+				.wrap(checkChannel(channel)), charset,
+				StaticSettings.MAX_FILE_BUFFER_SIZE), delimiter);
+	}
+
+	private static FileChannel checkChannel(FileChannel channel) {
+		if (channel == null) {
+			throw new IllegalArgumentException(
+					"Parameter channel can not be null.");
+		}
+
+		return channel;
+	}
+
+	/**
+	 * Creates a {@link CsvWriter CsvWriter} object using a file as the data
+	 * destination, written with the settings of a dialect.
+	 * 
+	 * @param fileName
+	 *            The path to the file to output the data.
+	 * @param dialect
+	 *            The settings to write the data with.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            writing the data.
+	 */
+	public CsvWriter(String fileName, CsvDialect dialect, Charset charset) {
+		this(fileName, checkDialect(dialect).getDelimiter(), charset);
+
+		setDialect(dialect);
+	}
+
+	/**
+	 * Creates a {@link CsvWriter CsvWriter} object using a Writer to write
+	 * data to, written with the settings of a dialect.
+	 * 
+	 * @param outputStream
+	 *            The stream to write the column delimited data to.
+	 * @param dialect
+	 *            The settings to write the data with.
+	 */
+	public CsvWriter(Writer outputStream, CsvDialect dialect) {
+		this(outputStream, checkDialect(dialect).getDelimiter());
+
+		setDialect(dialect);
+	}
+
+	/**
+	 * Creates a {@link CsvWriter CsvWriter} object using an OutputStream to
+	 * write data to, written with the settings of a dialect.
+	 * 
+	 * @param outputStream
+	 *            The stream to write the column delimited data to.
+	 * @param dialect
+	 *            The settings to write the data with.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            writing the data.
+	 */
+	public CsvWriter(OutputStream outputStream, CsvDialect dialect,
+			Charset charset) {
+		this(EncodingWriter.create(outputStream, charset,
+				StaticSettings.MAX_FILE_BUFFER_SIZE), dialect);
+	}
+
+	private static CsvDialect checkDialect(CsvDialect dialect) {
+		if (dialect == null) {
+			throw new IllegalArgumentException(
+					"Parameter dialect can not be null.");
+		}
+
+		return dialect;
+	}
+
+	/**
+	 * Gets the current settings of this writer as a dialect.
+	 * 
+	 * @return The current settings of this writer.
+	 */
+	public CsvDialect getDialect() {
+		if (dialect == null) {
+			dialect = CsvDialect.intern(new CsvDialect(userSettings.Delimiter,
+					userSettings.TextQualifier, userSettings.UseTextQualifier,
+					userSettings.EscapeMode,
+					useCustomRecordDelimiter ? userSettings.RecordDelimiter
+							: Letters.NULL, userSettings.Comment, false, true,
+					true, userSettings.ForceQualifier));
+		}
+
+		return dialect;
+	}
+
+	/**
+	 * Sets all of the settings of this writer that a dialect describes.
+	 * 
+	 * @param dialect
+	 *            The settings to write the data with.
+	 */
+	public void setDialect(CsvDialect dialect) {
+		checkDialect(dialect);
+
+		userSettings.Delimiter = dialect.getDelimiter();
+		userSettings.TextQualifier = dialect.getTextQualifier();
+		userSettings.UseTextQualifier = dialect.getUseTextQualifier();
+		userSettings.EscapeMode = dialect.getEscapeMode();
+		userSettings.RecordDelimiter = dialect.getRecordDelimiter();
+		useCustomRecordDelimiter = dialect.getRecordDelimiter() != Letters.NULL;
+		userSettings.Comment = dialect.getComment();
+		userSettings.ForceQualifier = dialect.getForceQualifier();
+
+		// keep the dialect passed in, so its character table is shared
+		this.dialect = dialect;
 	}
 
 	/**
@@ -153,6 +362,7 @@ public class CsvWriter {
 	 */
 	public void setDelimiter(char delimiter) {
 		userSettings.Delimiter = delimiter;
+		dialect = null;
 	}
 
 	public char getRecordDelimiter() {
@@ -170,6 +380,7 @@ public class CsvWriter {
 	public void setRecordDelimiter(char recordDelimiter) {
 		useCustomRecordDelimiter = true;
 		userSettings.RecordDelimiter = recordDelimiter;
+		dialect = null;
 	}
 
 	/**
@@ -189,6 +400,7 @@ public class CsvWriter {
 	 */
 	public void setTextQualifier(char textQualifier) {
 		userSettings.TextQualifier = textQualifier;
+		dialect = null;
 	}
 
 	/**
@@ -208,6 +420,7 @@ public class CsvWriter {
 	 */
 	public void setUseTextQualifier(boolean useTextQualifier) {
 		userSettings.UseTextQualifier = useTextQualifier;
+		dialect = null;
 	}
 
 	public int getEscapeMode() {
@@ -216,10 +429,12 @@ public class CsvWriter {
 
 	public void setEscapeMode(int escapeMode) {
 		userSettings.EscapeMode = escapeMode;
+		dialect = null;
 	}
 
 	public void setComment(char comment) {
 		userSettings.Comment = comment;
+		dialect = null;
 	}
 
 	public char getComment() {
@@ -246,293 +461,1479 @@ public class CsvWriter {
 	 */
 	public void setForceQualifier(boolean forceQualifier) {
 		userSettings.ForceQualifier = forceQualifier;
+		dialect = null;
 	}
 
 	/**
-	 * Writes another column of data to this record.
+	 * Gets how each column is qualified.
 	 * 
-	 * @param content
-	 *            The data for the new column.
-	 * @param preserveSpaces
-	 *            Whether to preserve leading and trailing whitespace in this
-	 *            column of data.
-	 * @exception IOException
-	 *                Thrown if an error occurs while writing data to the
-	 *                destination stream.
+	 * @return The quoting of each column, by index, or null if every column
+	 *         uses QUOTE_AUTO.
 	 */
-	public void write(String content, boolean preserveSpaces)
-			throws IOException {
-		checkClosed();
-
-		checkInit();
-
-		if (content == null) {
-			content = "";
-		}
-
-		if (!firstColumn) {
-			outputStream.write(userSettings.Delimiter);
-		}
-
-		boolean textQualify = userSettings.ForceQualifier;
-
-		if (!preserveSpaces && content.length() > 0) {
-			content = content.trim();
-		}
-
-		if (!textQualify
-				&& userSettings.UseTextQualifier
-				&& (content.indexOf(userSettings.TextQualifier) > -1
-						|| content.indexOf(userSettings.Delimiter) > -1
-						|| (!useCustomRecordDelimiter && (content
-								.indexOf(Letters.LF) > -1 || content
-								.indexOf(Letters.CR) > -1))
-						|| (useCustomRecordDelimiter && content
-								.indexOf(userSettings.RecordDelimiter) > -1)
-						|| (firstColumn && content.length() > 0 && content
-								.charAt(0) == userSettings.Comment) ||
-				// check for empty first column, which if on its own line must
-				// be qualified or the line will be skipped
-				(firstColumn && content.length() == 0))) {
-			textQualify = true;
-		}
-
-		if (userSettings.UseTextQualifier && !textQualify
-				&& content.length() > 0 && preserveSpaces) {
-			char firstLetter = content.charAt(0);
-
-			if (firstLetter == Letters.SPACE || firstLetter == Letters.TAB) {
-				textQualify = true;
-			}
-
-			if (!textQualify && content.length() > 1) {
-				char lastLetter = content.charAt(content.length() - 1);
-
-				if (lastLetter == Letters.SPACE || lastLetter == Letters.TAB) {
-					textQualify = true;
-				}
-			}
-		}
-
-		if (textQualify) {
-			outputStream.write(userSettings.TextQualifier);
-
-			if (userSettings.EscapeMode == ESCAPE_MODE_BACKSLASH) {
-				content = replace(content, "" + Letters.BACKSLASH, ""
-						+ Letters.BACKSLASH + Letters.BACKSLASH);
-				content = replace(content, "" + userSettings.TextQualifier, ""
-						+ Letters.BACKSLASH + userSettings.TextQualifier);
-			} else {
-				content = replace(content, "" + userSettings.TextQualifier, ""
-						+ userSettings.TextQualifier
-						+ userSettings.TextQualifier);
-			}
-		} else if (userSettings.EscapeMode == ESCAPE_MODE_BACKSLASH) {
-			content = replace(content, "" + Letters.BACKSLASH, ""
-					+ Letters.BACKSLASH + Letters.BACKSLASH);
-			content = replace(content, "" + userSettings.Delimiter, ""
-					+ Letters.BACKSLASH + userSettings.Delimiter);
-
-			if (useCustomRecordDelimiter) {
-				content = replace(content, "" + userSettings.RecordDelimiter,
-						"" + Letters.BACKSLASH + userSettings.RecordDelimiter);
-			} else {
-				content = replace(content, "" + Letters.CR, ""
-						+ Letters.BACKSLASH + Letters.CR);
-				content = replace(content, "" + Letters.LF, ""
-						+ Letters.BACKSLASH + Letters.LF);
-			}
+	public int[] getColumnQuoting() {
+		return userSettings.ColumnQuoting == null ? null
+				: userSettings.ColumnQuoting.clone();
+	}
 
-			if (firstColumn && content.length() > 0
-					&& content.charAt(0) == userSettings.Comment) {
-				if (content.length() > 1) {
-					content = "" + Letters.BACKSLASH + userSettings.Comment
-							+ content.substring(1);
-				} else {
-					content = "" + Letters.BACKSLASH + userSettings.Comment;
+	/**
+	 * Sets how each column is qualified, by its index in the
+	 * record.&nbsp;QUOTE_AUTO scans the data as usual, QUOTE_ALWAYS always
+	 * qualifies it, and QUOTE_NEVER writes it as is without looking at it,
+	 * for numbers, codes and other data known to never need qualifying or
+	 * escaping.&nbsp;{@link #setForceQualifier ForceQualifier} still
+	 * qualifies every column.&nbsp;Columns past the end of the array use
+	 * QUOTE_AUTO.&nbsp;Default is null, for QUOTE_AUTO everywhere.
+	 * 
+	 * @param columnQuoting
+	 *            The quoting of each column, by index, or null.
+	 */
+	public void setColumnQuoting(int[] columnQuoting) {
+		if (columnQuoting != null) {
+			for (int i = 0; i < columnQuoting.length; i++) {
+				if (columnQuoting[i] != QUOTE_AUTO
+						&& columnQuoting[i] != QUOTE_NEVER
+						&& columnQuoting[i] != QUOTE_ALWAYS) {
+					throw new IllegalArgumentException(
+							"Parameter columnQuoting must only hold QUOTE_AUTO, QUOTE_NEVER or QUOTE_ALWAYS.");
 				}
 			}
-		}
-
-		outputStream.write(content);
 
-		if (textQualify) {
-			outputStream.write(userSettings.TextQualifier);
+			columnQuoting = columnQuoting.clone();
 		}
 
-		firstColumn = false;
+		userSettings.ColumnQuoting = columnQuoting;
 	}
 
 	/**
-	 * Writes another column of data to this record.&nbsp;Does not preserve
-	 * leading and trailing whitespace in this column of data.
+	 * Gets whether data written to QUOTE_NEVER columns is checked.
 	 * 
-	 * @param content
-	 *            The data for the new column.
-	 * @exception IOException
-	 *                Thrown if an error occurs while writing data to the
-	 *                destination stream.
+	 * @return Whether QUOTE_NEVER columns are checked.
 	 */
-	public void write(String content) throws IOException {
-		write(content, false);
+	public boolean getVerifyColumnQuoting() {
+		return userSettings.VerifyColumnQuoting;
 	}
 
-	public void writeComment(String commentText) throws IOException {
-		checkClosed();
-
-		checkInit();
-
-		outputStream.write(userSettings.Comment);
+	/**
+	 * Sets whether to check data written to QUOTE_NEVER columns, throwing an
+	 * IllegalArgumentException when it would need to be qualified or
+	 * escaped.&nbsp;Meant for testing, since it scans the data the setting
+	 * is there to skip.&nbsp;Default is false.
+	 * 
+	 * @param verifyColumnQuoting
+	 *            Whether to check QUOTE_NEVER columns.
+	 */
+	public void setVerifyColumnQuoting(boolean verifyColumnQuoting) {
+		userSettings.VerifyColumnQuoting = verifyColumnQuoting;
+	}
 
-		outputStream.write(commentText);
+	private int getQuoting(int index) {
+		int[] columnQuoting = userSettings.ColumnQuoting;
 
-		if (useCustomRecordDelimiter) {
-			outputStream.write(userSettings.RecordDelimiter);
-		} else {
-			outputStream.write(systemRecordDelimiter);
-		}
-		
-		firstColumn = true;
+		return columnQuoting != null && index < columnQuoting.length ? columnQuoting[index]
+				: QUOTE_AUTO;
 	}
 
 	/**
-	 * Writes a new record using the passed in array of values.
-	 * 
-	 * @param values
-	 *            Values to be written.
-	 * 
-	 * @param preserveSpaces
-	 *            Whether to preserver leading and trailing spaces in columns
-	 *            while writing out to the record or not.
+	 * Whether the file will be written as a block compressed file or not.
 	 * 
-	 * @throws IOException
-	 *             Thrown if an error occurs while writing data to the
-	 *             destination stream.
+	 * @return Whether the file will be written as a block compressed file or
+	 *         not.
 	 */
-	public void writeRecord(String[] values, boolean preserveSpaces)
-			throws IOException {
-		if (values != null && values.length > 0) {
-			for (int i = 0; i < values.length; i++) {
-				write(values[i], preserveSpaces);
-			}
-
-			endRecord();
-		}
+	public boolean getUseBlockCompression() {
+		return userSettings.UseBlockCompression;
 	}
 
 	/**
-	 * Writes a new record using the passed in array of values.
-	 * 
-	 * @param values
-	 *            Values to be written.
+	 * Sets whether to write the file as independently deflated blocks that
+	 * each start at a record, followed by an index of the blocks.&nbsp;Such a
+	 * file can be read from any record, or scanned a block per thread, with
+	 * {@link CsvBlockFile CsvBlockFile}, and is also read sequentially by a
+	 * {@link CsvReader CsvReader} opened on the file name.&nbsp;Only applies
+	 * to writers created with a file name, and must be set before any data is
+	 * written.&nbsp;Default is false.
 	 * 
-	 * @throws IOException
-	 *             Thrown if an error occurs while writing data to the
-	 *             destination stream.
+	 * @param useBlockCompression
+	 *            Whether to write a block compressed file or not.
 	 */
-	public void writeRecord(String[] values) throws IOException {
-		writeRecord(values, false);
+	public void setUseBlockCompression(boolean useBlockCompression) {
+		userSettings.UseBlockCompression = useBlockCompression;
 	}
 
 	/**
-	 * Ends the current record by sending the record delimiter.
+	 * Gets the number of characters of data held before a block is compressed
+	 * and written.
 	 * 
-	 * @exception IOException
-	 *                Thrown if an error occurs while writing data to the
-	 *                destination stream.
+	 * @return The number of characters of data in each block.
 	 */
-	public void endRecord() throws IOException {
-		checkClosed();
-
-		checkInit();
-
-		if (useCustomRecordDelimiter) {
-			outputStream.write(userSettings.RecordDelimiter);
-		} else {
-			outputStream.write(systemRecordDelimiter);
-		}
-
-		firstColumn = true;
+	public int getCompressionBlockSize() {
+		return userSettings.CompressionBlockSize;
 	}
 
 	/**
+	 * Sets the number of characters of data held before a block is compressed
+	 * and written.&nbsp;A block always ends at the end of a record, so it can
+	 * be larger when a record crosses this size.&nbsp;Default is 1 MB.
 	 * 
+	 * @param compressionBlockSize
+	 *            The number of characters of data in each block.
 	 */
-	private void checkInit() throws IOException {
-		if (!initialized) {
-			if (fileName != null) {
-				outputStream = new BufferedWriter(new OutputStreamWriter(
-						new FileOutputStream(fileName), charset));
-			}
-
-			initialized = true;
+	public void setCompressionBlockSize(int compressionBlockSize) {
+		if (compressionBlockSize <= 0) {
+			throw new IllegalArgumentException(
+					"Parameter compressionBlockSize must be larger than 0.");
 		}
+
+		userSettings.CompressionBlockSize = compressionBlockSize;
 	}
 
 	/**
-	 * Clears all buffers for the current writer and causes any buffered data to
-	 * be written to the underlying device.
-	 * @exception IOException
-	 *                Thrown if an error occurs while writing data to the
-	 *                destination stream. 
+	 * Gets the level blocks and gzip members are deflated with.
+	 * 
+	 * @return The compression level.
 	 */
-	public void flush() throws IOException {
-		outputStream.flush();
+	public int getCompressionLevel() {
+		return userSettings.CompressionLevel;
 	}
 
 	/**
-	 * Closes and releases all related resources.
+	 * Sets the level blocks and gzip members are deflated with, from 0, no
+	 * compression, to 9, the smallest output, or -1 for the deflater's
+	 * default.&nbsp;Must be set before any data is written.&nbsp;Default is
+	 * -1.
+	 * 
+	 * @param compressionLevel
+	 *            The compression level.
 	 */
-	public void close() {
-		if (!closed) {
-			close(true);
-
-			closed = true;
+	public void setCompressionLevel(int compressionLevel) {
+		if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+				|| compressionLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException(
+					"Parameter compressionLevel must be between -1 and 9.");
 		}
+
+		userSettings.CompressionLevel = compressionLevel;
 	}
 
 	/**
+	 * Whether the file will be written gzip compressed or not.
 	 * 
+	 * @return Whether the file will be written gzip compressed or not.
 	 */
-	private void close(boolean closing) {
-		if (!closed) {
-			if (closing) {
-				charset = null;
-			}
-
-			try {
-				if (initialized) {
-					outputStream.close();
-				}
-			} catch (Exception e) {
-				// just eat the exception
-			}
-
-			outputStream = null;
-
-			closed = true;
-		}
+	public boolean getUseGzip() {
+		return userSettings.UseGzip;
 	}
 
 	/**
+	 * Sets whether to write the file gzip compressed, deflating blocks of
+	 * records on several threads at once.&nbsp;Each block is written as its
+	 * own gzip member, in order, so the file is read by any gzip reader, and
+	 * each member records its size, as bgzip does, so a {@link CsvReader
+	 * CsvReader} opened on the file name inflates them in parallel
+	 * too.&nbsp;Only applies to writers created with a file name, is ignored
+	 * with block compression, and must be set before any data is
+	 * written.&nbsp;Default is false.
 	 * 
+	 * @param useGzip
+	 *            Whether to write a gzip file or not.
 	 */
-	private void checkClosed() throws IOException {
-		if (closed) {
-			throw new IOException(
-			"This instance of the CsvWriter class has already been closed.");
-		}
+	public void setUseGzip(boolean useGzip) {
+		userSettings.UseGzip = useGzip;
 	}
 
 	/**
+	 * Gets the number of bytes of data that end a gzip member at the end of
+	 * a record.
 	 * 
+	 * @return The number of bytes of data in each member.
 	 */
-	protected void finalize() {
-		close(false);
+	public int getGzipBlockSize() {
+		return userSettings.GzipBlockSize;
 	}
 
-	private class Letters {
-		public static final char LF = '\n';
+	/**
+	 * Sets the number of bytes of data that end a gzip member at the end of
+	 * a record.&nbsp;Members only end where the buffer is handed to the
+	 * file, so they also hold at least the {@link #setFlushThreshold flush
+	 * threshold}.&nbsp;Only a member that deflates to 64 K or less can
+	 * record its size, so much larger blocks are read back
+	 * sequentially.&nbsp;Default is 60 K.
+	 * 
+	 * @param gzipBlockSize
+	 *            The number of bytes of data in each member.
+	 */
+	public void setGzipBlockSize(int gzipBlockSize) {
+		if (gzipBlockSize <= 0) {
+			throw new IllegalArgumentException(
+					"Parameter gzipBlockSize must be larger than 0.");
+		}
+
+		userSettings.GzipBlockSize = gzipBlockSize;
+	}
+
+	/**
+	 * Gets whether data is written to the destination on a background
+	 * thread.
+	 * 
+	 * @return Whether data is written asynchronously.
+	 */
+	public boolean getAsync() {
+		return userSettings.Async;
+	}
+
+	/**
+	 * Sets whether to write data to the destination on a background thread,
+	 * so the thread writing records never waits on slow storage.&nbsp;Records
+	 * are gathered in a ring of buffers, allocated once, and each buffer is
+	 * handed to the background thread when it reaches the flush threshold or
+	 * fills up.&nbsp;Data is written in the order it was handed over, and
+	 * {@link #flush flush()} and {@link #close close()} wait for everything
+	 * written before them.&nbsp;An error writing to the destination is thrown
+	 * from the next call that hands over a buffer or flushes, but
+	 * {@link #close close()} can't report it, so call {@link #flush flush()}
+	 * before closing to know that everything was written.&nbsp;The writer
+	 * itself still must only be used by one thread at a time.&nbsp;Has
+	 * no effect with block compression or gzip, and must be set before any
+	 * data is written.&nbsp;Default is false.
+	 * 
+	 * @param async
+	 *            Whether to write data asynchronously.
+	 */
+	public void setAsync(boolean async) {
+		userSettings.Async = async;
+	}
+
+	/**
+	 * Gets the number of buffers in the ring used to write asynchronously.
+	 * 
+	 * @return The number of buffers.
+	 */
+	public int getAsyncBufferCount() {
+		return userSettings.AsyncBufferCount;
+	}
+
+	/**
+	 * Sets the number of buffers in the ring used to write asynchronously,
+	 * each of {@link #setBufferSize buffer size} characters.&nbsp;Must be set
+	 * before any data is written.&nbsp;Default is 4.
+	 * 
+	 * @param asyncBufferCount
+	 *            The number of buffers, at least 2.
+	 */
+	public void setAsyncBufferCount(int asyncBufferCount) {
+		if (asyncBufferCount < 2) {
+			throw new IllegalArgumentException(
+					"Parameter asyncBufferCount must be at least 2.");
+		}
+
+		userSettings.AsyncBufferCount = asyncBufferCount;
+	}
+
+	/**
+	 * Gets what happens when writing asynchronously and every buffer is
+	 * waiting to be written.
+	 * 
+	 * @return The overflow policy, either OVERFLOW_BLOCK or OVERFLOW_DROP.
+	 */
+	public int getOverflowPolicy() {
+		return userSettings.OverflowPolicy;
+	}
+
+	/**
+	 * Sets what happens when writing asynchronously and every buffer is
+	 * waiting to be written.&nbsp;With OVERFLOW_BLOCK, the writing thread
+	 * waits for a buffer to be free.&nbsp;With OVERFLOW_DROP, records are
+	 * kept in the current buffer until it's full, after which whole records
+	 * are dropped and counted until a buffer is free; a record larger than a
+	 * buffer is always dropped.&nbsp;Records are never partly written.
+	 * {@link #flush flush()} and {@link #close close()} always wait.&nbsp;Default
+	 * is OVERFLOW_BLOCK.
+	 * 
+	 * @param overflowPolicy
+	 *            The overflow policy, either OVERFLOW_BLOCK or OVERFLOW_DROP.
+	 */
+	public void setOverflowPolicy(int overflowPolicy) {
+		if (overflowPolicy != OVERFLOW_BLOCK
+				&& overflowPolicy != OVERFLOW_DROP) {
+			throw new IllegalArgumentException(
+					"Parameter overflowPolicy must be OVERFLOW_BLOCK or OVERFLOW_DROP.");
+		}
+
+		userSettings.OverflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * Gets the number of records dropped because every buffer was waiting to
+	 * be written, see {@link #setOverflowPolicy setOverflowPolicy()}.
+	 * 
+	 * @return The number of records dropped.
+	 */
+	public long getDroppedRecordCount() {
+		return droppedRecordCount;
+	}
+
+	/**
+	 * Gets whether the file will be written with O_DIRECT, bypassing the
+	 * operating system's page cache.
+	 * 
+	 * @return Whether the file will be written with O_DIRECT.
+	 */
+	public boolean getUseDirectIo() {
+		return userSettings.UseDirectIo;
+	}
+
+	/**
+	 * Sets whether to write the file with O_DIRECT, so a large export
+	 * doesn't push everything else out of the operating system's page cache.
+	 * Needs a runtime with com.sun.nio.file.ExtendedOpenOption.DIRECT and a
+	 * file system that supports it; otherwise the file is written
+	 * normally.&nbsp;Writes are only efficient this way when they are large,
+	 * so it's best combined with a larger buffer size and flush
+	 * threshold.&nbsp;Only applies to writers created with a file name, and
+	 * must be set before any data is written.&nbsp;Default is false.
+	 * 
+	 * @param useDirectIo
+	 *            Whether to write the file with O_DIRECT.
+	 */
+	public void setUseDirectIo(boolean useDirectIo) {
+		userSettings.UseDirectIo = useDirectIo;
+	}
+
+	/**
+	 * Gets the size, in bytes, the file is grown to before any data is
+	 * written.
+	 * 
+	 * @return The size the file is grown to, or 0 if it isn't.
+	 */
+	public long getPreallocateSize() {
+		return userSettings.PreallocateSize;
+	}
+
+	/**
+	 * Sets the size, in bytes, to grow the file to before any data is
+	 * written, when the size of the export is roughly known.&nbsp;The file
+	 * is cut back to the data written when the writer is closed.&nbsp;Only
+	 * applies to writers created with a file name, and must be set before
+	 * any data is written.&nbsp;Default is 0, which doesn't grow the file.
+	 * 
+	 * @param preallocateSize
+	 *            The size to grow the file to, or 0.
+	 */
+	public void setPreallocateSize(long preallocateSize) {
+		if (preallocateSize < 0) {
+			throw new IllegalArgumentException(
+					"Parameter preallocateSize can not be negative.");
+		}
+
+		userSettings.PreallocateSize = preallocateSize;
+	}
+
+	/**
+	 * Gets the number of characters this writer holds before handing them to
+	 * the destination.
+	 * 
+	 * @return The size of the output buffer, in characters.
+	 */
+	public int getBufferSize() {
+		return userSettings.BufferSize;
+	}
+
+	/**
+	 * Sets the number of characters this writer holds before handing them to
+	 * the destination.&nbsp;Columns and record delimiters are gathered in
+	 * this buffer instead of being written one by one, so a destination that
+	 * isn't buffered, or that locks on every call, is only written to in
+	 * large pieces.&nbsp;Must be set before any data is written.&nbsp;Default
+	 * is 64 K.
+	 * 
+	 * @param bufferSize
+	 *            The size of the output buffer, in characters.
+	 */
+	public void setBufferSize(int bufferSize) {
+		if (bufferSize <= 0) {
+			throw new IllegalArgumentException(
+					"Parameter bufferSize must be larger than 0.");
+		}
+
+		userSettings.BufferSize = bufferSize;
+	}
+
+	/**
+	 * Gets the number of characters held at the end of a record that makes
+	 * the buffer be handed to the destination.
+	 * 
+	 * @return The flush threshold, in characters.
+	 */
+	public int getFlushThreshold() {
+		return userSettings.FlushThreshold;
+	}
+
+	/**
+	 * Sets the number of characters held at the end of a record that makes
+	 * the buffer be handed to the destination.&nbsp;Records are handed over
+	 * whole once this many characters are held; a record that outgrows the
+	 * buffer is handed over in pieces.&nbsp;A threshold of 1 hands over every
+	 * record as soon as it ends.&nbsp;Default is 32 K.
+	 * 
+	 * @param flushThreshold
+	 *            The flush threshold, in characters.
+	 */
+	public void setFlushThreshold(int flushThreshold) {
+		if (flushThreshold <= 0) {
+			throw new IllegalArgumentException(
+					"Parameter flushThreshold must be larger than 0.");
+		}
+
+		userSettings.FlushThreshold = flushThreshold;
+	}
+
+	/**
+	 * Writes another column of data to this record.
+	 * 
+	 * @param content
+	 *            The data for the new column.
+	 * @param preserveSpaces
+	 *            Whether to preserve leading and trailing whitespace in this
+	 *            column of data.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(String content, boolean preserveSpaces)
+			throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		if (content == null) {
+			content = "";
+		}
+
+		writeColumn(content, 0, content.length(), preserveSpaces);
+	}
+
+	/**
+	 * Writes another column of data to this record from a slice of a
+	 * character array, without making a String of it first.
+	 * 
+	 * @param content
+	 *            The array holding the data for the new column.
+	 * @param offset
+	 *            The index of the first character of the column.
+	 * @param length
+	 *            The number of characters in the column.
+	 * @param preserveSpaces
+	 *            Whether to preserve leading and trailing whitespace in this
+	 *            column of data.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(char[] content, int offset, int length,
+			boolean preserveSpaces) throws IOException {
+		if (content == null) {
+			throw new IllegalArgumentException(
+					"Parameter content can not be null.");
+		}
+
+		if (offset < 0 || length < 0 || offset > content.length - length) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		checkClosed();
+
+		checkInit();
+
+		arrayContent.Array = content;
+		arrayContent.Offset = offset;
+		arrayContent.Length = length;
+
+		try {
+			writeColumn(arrayContent, 0, length, preserveSpaces);
+		} finally {
+			arrayContent.Array = null;
+		}
+	}
+
+	/**
+	 * Writes another column of data to this record from a slice of a
+	 * character array.&nbsp;Does not preserve leading and trailing whitespace
+	 * in this column of data.
+	 * 
+	 * @param content
+	 *            The array holding the data for the new column.
+	 * @param offset
+	 *            The index of the first character of the column.
+	 * @param length
+	 *            The number of characters in the column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(char[] content, int offset, int length)
+			throws IOException {
+		write(content, offset, length, false);
+	}
+
+	/**
+	 * Writes another column of data to this record from any character
+	 * sequence, such as a StringBuilder, without making a String of it
+	 * first.
+	 * 
+	 * @param content
+	 *            The data for the new column.
+	 * @param preserveSpaces
+	 *            Whether to preserve leading and trailing whitespace in this
+	 *            column of data.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(CharSequence content, boolean preserveSpaces)
+			throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		if (content == null) {
+			content = "";
+		}
+
+		writeColumn(content, 0, content.length(), preserveSpaces);
+	}
+
+	/**
+	 * Writes another column of data to this record from any character
+	 * sequence.&nbsp;Does not preserve leading and trailing whitespace in
+	 * this column of data.
+	 * 
+	 * @param content
+	 *            The data for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(CharSequence content) throws IOException {
+		write(content, false);
+	}
+
+	/**
+	 * Writes an int as another column of this record.&nbsp;The digits are
+	 * put straight into the output buffer, and as they never need to be
+	 * escaped, the column isn't scanned.
+	 * 
+	 * @param value
+	 *            The value for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void writeInt(int value) throws IOException {
+		writeLong(value);
+	}
+
+	/**
+	 * Writes a long as another column of this record.&nbsp;The digits are
+	 * put straight into the output buffer, and as they never need to be
+	 * escaped, the column isn't scanned.
+	 * 
+	 * @param value
+	 *            The value for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void writeLong(long value) throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		if (!isNumberPlain() || buffer.length < MAX_LONG_LENGTH) {
+			writeColumn(String.valueOf(value), false);
+
+			return;
+		}
+
+		startPlainColumn();
+
+		while (!droppingRecord
+				&& buffer.length - bufferCount < MAX_LONG_LENGTH) {
+			makeRoom();
+		}
+
+		// the record may have been dropped while writing asynchronously
+		if (!droppingRecord) {
+			if (value == Long.MIN_VALUE) {
+				append(MIN_LONG, 0, MIN_LONG.length());
+			} else {
+				if (value < 0) {
+					buffer[bufferCount++] = '-';
+					value = -value;
+				}
+
+				int digits = 1;
+
+				for (long rest = value / 10; rest > 0; rest /= 10) {
+					digits++;
+				}
+
+				bufferCount += digits;
+
+				int position = bufferCount;
+
+				do {
+					buffer[--position] = (char) ('0' + (int) (value % 10));
+					value /= 10;
+				} while (value > 0);
+			}
+		}
+
+		endPlainColumn();
+	}
+
+	/**
+	 * Writes a double as another column of this record, in the same form as
+	 * {@link Double#toString(double) Double.toString()}, which reads back as
+	 * the same value.&nbsp;The column isn't scanned for characters to
+	 * escape.
+	 * 
+	 * @param value
+	 *            The value for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void writeDouble(double value) throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		// StringBuilder formats the digits without making a String
+		numberContent.setLength(0);
+		numberContent.append(value);
+
+		if (!isNumberPlain()) {
+			writeColumn(numberContent, 0, numberContent.length(), false);
+
+			return;
+		}
+
+		startPlainColumn();
+		append(numberContent, 0, numberContent.length());
+		endPlainColumn();
+	}
+
+	/**
+	 * Writes a boolean as another column of this record, as true or false.
+	 * 
+	 * @param value
+	 *            The value for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void writeBoolean(boolean value) throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		String content = value ? "true" : "false";
+
+		if (!isNumberPlain()) {
+			writeColumn(content, false);
+
+			return;
+		}
+
+		startPlainColumn();
+		append(content, 0, content.length());
+		endPlainColumn();
+	}
+
+	private void writeColumn(CharSequence content, boolean preserveSpaces)
+			throws IOException {
+		writeColumn(content, 0, content.length(), preserveSpaces);
+	}
+
+	private void startPlainColumn() throws IOException {
+		if (!firstColumn) {
+			append(userSettings.Delimiter);
+		}
+
+		if (userSettings.ForceQualifier || getQuoting(column) == QUOTE_ALWAYS) {
+			append(userSettings.TextQualifier);
+		}
+	}
+
+	private void endPlainColumn() throws IOException {
+		if (userSettings.ForceQualifier || getQuoting(column) == QUOTE_ALWAYS) {
+			append(userSettings.TextQualifier);
+		}
+
+		firstColumn = false;
+		column++;
+	}
+
+	/**
+	 * Gets whether numbers and booleans can be written without being
+	 * qualified or escaped under the current settings, which is only not the
+	 * case when one of their characters is used as a delimiter, qualifier,
+	 * comment or escape.
+	 */
+	private boolean isNumberPlain() {
+		CsvDialect current = getDialect();
+
+		if (current != numberDialect) {
+			byte[] classes = current.getCharClasses();
+			boolean plain = true;
+
+			for (int i = 0; i < NUMBER_LETTERS.length() && plain; i++) {
+				char letter = NUMBER_LETTERS.charAt(i);
+
+				plain = (classes[letter] & ~CsvDialect.WHITESPACE) == 0;
+			}
+
+			numberPlain = plain;
+			numberDialect = current;
+		}
+
+		return numberPlain;
+	}
+
+	private void writeColumn(CharSequence content, int start, int end,
+			boolean preserveSpaces) throws IOException {
+		if (!preserveSpaces) {
+			// the same characters String.trim() removes, without the copy
+			while (start < end && content.charAt(start) <= Letters.SPACE) {
+				start++;
+			}
+
+			while (end > start && content.charAt(end - 1) <= Letters.SPACE) {
+				end--;
+			}
+		}
+
+		int quoting = getQuoting(column);
+
+		if (quoting == QUOTE_NEVER) {
+			if (userSettings.VerifyColumnQuoting
+					&& !isPlain(content, start, end, preserveSpaces)) {
+				throw new IllegalArgumentException("Column " + column
+						+ " is QUOTE_NEVER but its data needs qualifying or escaping.");
+			}
+
+			startPlainColumn();
+			append(content, start, end - start);
+			endPlainColumn();
+
+			return;
+		}
+
+		if (!firstColumn) {
+			append(userSettings.Delimiter);
+		}
+
+		boolean textQualify = userSettings.ForceQualifier
+				|| quoting == QUOTE_ALWAYS;
+
+		if (!textQualify && userSettings.UseTextQualifier) {
+			if (firstColumn
+					&& (start == end
+							|| content.charAt(start) == userSettings.Comment)) {
+				// check for empty first column, which if on its own line must
+				// be qualified or the line will be skipped
+				textQualify = true;
+			} else if (preserveSpaces && start < end) {
+				char firstLetter = content.charAt(start);
+				char lastLetter = content.charAt(end - 1);
+
+				if (firstLetter == Letters.SPACE || firstLetter == Letters.TAB
+						|| lastLetter == Letters.SPACE
+						|| lastLetter == Letters.TAB) {
+					textQualify = true;
+				}
+			}
+		}
+
+		byte[] classes = getDialect().getCharClasses();
+
+		// find the first character that needs looking at, and while there,
+		// whether any character forces the column to be qualified
+		int special = end;
+
+		for (int i = start; i < end; i++) {
+			char letter = content.charAt(i);
+
+			if ((classes[letter] & SPECIAL) != 0 && isSpecial(letter)) {
+				if (special == end) {
+					special = i;
+				}
+
+				if (textQualify || !userSettings.UseTextQualifier) {
+					break;
+				}
+
+				if (isQualifyTrigger(letter)) {
+					textQualify = true;
+
+					break;
+				}
+			}
+		}
+
+		if (textQualify) {
+			append(userSettings.TextQualifier);
+		} else if (userSettings.EscapeMode == ESCAPE_MODE_BACKSLASH
+				&& firstColumn && start < end
+				&& content.charAt(start) == userSettings.Comment
+				&& escapeFor(content.charAt(start), false) == -1) {
+			append(Letters.BACKSLASH);
+		}
+
+		// write the runs of plain characters straight from the content,
+		// putting the escape character in front of those that need one
+		int run = start;
+
+		for (int i = special; i < end; i++) {
+			char letter = content.charAt(i);
+
+			if ((classes[letter] & SPECIAL) != 0) {
+				int escape = escapeFor(letter, textQualify);
+
+				if (escape != -1) {
+					append(content, run, i - run);
+					append((char) escape);
+					run = i;
+				}
+			}
+		}
+
+		append(content, run, end - run);
+
+		if (textQualify) {
+			append(userSettings.TextQualifier);
+		}
+
+		firstColumn = false;
+		column++;
+	}
+
+	/**
+	 * Gets whether column data would be written as is with QUOTE_AUTO, with
+	 * neither qualifiers nor escapes.
+	 */
+	private boolean isPlain(CharSequence content, int start, int end,
+			boolean preserveSpaces) {
+		if (firstColumn
+				&& (start == end || content.charAt(start) == userSettings.Comment)) {
+			return false;
+		}
+
+		if (preserveSpaces && start < end && userSettings.UseTextQualifier) {
+			char firstLetter = content.charAt(start);
+			char lastLetter = content.charAt(end - 1);
+
+			if (firstLetter == Letters.SPACE || firstLetter == Letters.TAB
+					|| lastLetter == Letters.SPACE || lastLetter == Letters.TAB) {
+				return false;
+			}
+		}
+
+		byte[] classes = getDialect().getCharClasses();
+
+		for (int i = start; i < end; i++) {
+			char letter = content.charAt(i);
+
+			if ((classes[letter] & SPECIAL) != 0 && isSpecial(letter)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	// every character a number or boolean can be written with
+	private static final String NUMBER_LETTERS = "0123456789+-.EINafilnrstuy";
+
+	private static final String MIN_LONG = String.valueOf(Long.MIN_VALUE);
+
+	private static final int MAX_LONG_LENGTH = MIN_LONG.length();
+
+	// the character classes that may need escaping or force qualifying
+	private static final int SPECIAL = CsvDialect.DELIMITER
+			| CsvDialect.QUALIFIER | CsvDialect.LINE_BREAK | CsvDialect.ESCAPE;
+
+	private boolean isRecordDelimiter(char letter) {
+		if (useCustomRecordDelimiter) {
+			return letter == userSettings.RecordDelimiter;
+		} else {
+			return letter == Letters.CR || letter == Letters.LF;
+		}
+	}
+
+	private boolean isQualifyTrigger(char letter) {
+		return letter == userSettings.Delimiter
+				|| letter == userSettings.TextQualifier
+				|| isRecordDelimiter(letter);
+	}
+
+	private boolean isSpecial(char letter) {
+		return isQualifyTrigger(letter)
+				|| (letter == Letters.BACKSLASH
+						&& userSettings.EscapeMode == ESCAPE_MODE_BACKSLASH);
+	}
+
+	/**
+	 * Gets the character to write in front of a letter of column data, or -1
+	 * if it's written as is.
+	 */
+	private int escapeFor(char letter, boolean textQualify) {
+		boolean backslash = userSettings.EscapeMode == ESCAPE_MODE_BACKSLASH;
+
+		if (textQualify) {
+			if (letter == userSettings.TextQualifier) {
+				return backslash ? Letters.BACKSLASH
+						: userSettings.TextQualifier;
+			} else if (backslash && letter == Letters.BACKSLASH) {
+				return Letters.BACKSLASH;
+			}
+		} else if (backslash
+				&& (letter == Letters.BACKSLASH
+						|| letter == userSettings.Delimiter
+						|| isRecordDelimiter(letter))) {
+			return Letters.BACKSLASH;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Writes another column of data to this record.&nbsp;Does not preserve
+	 * leading and trailing whitespace in this column of data.
+	 * 
+	 * @param content
+	 *            The data for the new column.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void write(String content) throws IOException {
+		write(content, false);
+	}
+
+	public void writeComment(String commentText) throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		append(userSettings.Comment);
+
+		append(commentText, 0, commentText.length());
+
+		if (useCustomRecordDelimiter) {
+			append(userSettings.RecordDelimiter);
+		} else {
+			append(systemRecordDelimiter, 0, systemRecordDelimiter.length());
+		}
+
+		if (droppingRecord) {
+			droppingRecord = false;
+		} else if (blockOutput != null) {
+			drainBuffer();
+			blockOutput.endRecord(false);
+		}
+
+		recordStart = bufferCount;
+		firstColumn = true;
+		column = 0;
+	}
+
+	/**
+	 * Writes a new record using the passed in array of values.
+	 * 
+	 * @param values
+	 *            Values to be written.
+	 * 
+	 * @param preserveSpaces
+	 *            Whether to preserver leading and trailing spaces in columns
+	 *            while writing out to the record or not.
+	 * 
+	 * @throws IOException
+	 *             Thrown if an error occurs while writing data to the
+	 *             destination stream.
+	 */
+	public void writeRecord(String[] values, boolean preserveSpaces)
+			throws IOException {
+		if (values != null && values.length > 0) {
+			for (int i = 0; i < values.length; i++) {
+				write(values[i], preserveSpaces);
+			}
+
+			endRecord();
+		}
+	}
+
+	/**
+	 * Writes a new record using the passed in array of values.
+	 * 
+	 * @param values
+	 *            Values to be written.
+	 * 
+	 * @throws IOException
+	 *             Thrown if an error occurs while writing data to the
+	 *             destination stream.
+	 */
+	public void writeRecord(String[] values) throws IOException {
+		writeRecord(values, false);
+	}
+
+	/**
+	 * Writes the current record of a reader, unchanged.&nbsp;When the reader
+	 * captures raw records and parses the same delimiter, text qualifier,
+	 * escape mode and record delimiter this writer writes, the record's
+	 * original text is copied straight from the reader's buffer, without
+	 * splitting it into values or escaping them again.&nbsp;Otherwise, or
+	 * when {@link #setForceQualifier ForceQualifier} or
+	 * {@link #setColumnQuoting column quoting} is set, its values are written
+	 * as with {@link #writeRecord(String[], boolean) writeRecord()},
+	 * preserving whitespace.&nbsp;Records that were changed are written with
+	 * writeRecord() as usual.
+	 * 
+	 * @param reader
+	 *            The reader positioned on the record to write.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void writeRecord(CsvReader reader) throws IOException {
+		if (reader == null) {
+			throw new IllegalArgumentException(
+					"Parameter reader can not be null.");
+		}
+
+		checkClosed();
+
+		checkInit();
+
+		CharSequence raw = firstColumn && isPassThrough(reader) ? reader
+				.getRawRecordSequence() : null;
+
+		// an empty line would be skipped, and a leading comment character
+		// is qualified or escaped when written from values
+		if (raw == null || raw.length() == 0
+				|| raw.charAt(0) == userSettings.Comment) {
+			writeRecord(reader.getValues(), true);
+
+			return;
+		}
+
+		if (raw instanceof CharBuffer && ((CharBuffer) raw).hasArray()) {
+			CharBuffer chars = (CharBuffer) raw;
+
+			arrayContent.Array = chars.array();
+			arrayContent.Offset = chars.arrayOffset() + chars.position();
+			arrayContent.Length = chars.remaining();
+
+			try {
+				append(arrayContent, 0, arrayContent.Length);
+			} finally {
+				arrayContent.Array = null;
+			}
+		} else {
+			append(raw, 0, raw.length());
+		}
+
+		endRecord();
+	}
+
+	/**
+	 * Gets whether the raw records of a reader can be written as they are.
+	 */
+	private boolean isPassThrough(CsvReader reader) {
+		return reader.getCaptureRawRecord()
+				&& !userSettings.ForceQualifier
+				&& userSettings.ColumnQuoting == null
+				&& reader.getDelimiter() == userSettings.Delimiter
+				&& reader.getTextQualifier() == userSettings.TextQualifier
+				&& reader.getUseTextQualifier() == userSettings.UseTextQualifier
+				&& reader.getEscapeMode() == userSettings.EscapeMode
+				&& isRecordDelimiterCompatible(reader);
+	}
+
+	/**
+	 * Gets whether a raw record of a reader can only hold this writer's
+	 * record delimiter inside qualified data.&nbsp;A reader ending records at
+	 * any CR or LF never leaves either unqualified in a record.
+	 */
+	private boolean isRecordDelimiterCompatible(CsvReader reader) {
+		if (reader.getUseCustomRecordDelimiter()) {
+			return useCustomRecordDelimiter
+					&& reader.getRecordDelimiter() == userSettings.RecordDelimiter;
+		}
+
+		return !useCustomRecordDelimiter
+				|| userSettings.RecordDelimiter == Letters.CR
+				|| userSettings.RecordDelimiter == Letters.LF;
+	}
+
+	/**
+	 * Ends the current record by sending the record delimiter.
+	 * 
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream.
+	 */
+	public void endRecord() throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		if (useCustomRecordDelimiter) {
+			append(userSettings.RecordDelimiter);
+		} else {
+			append(systemRecordDelimiter, 0, systemRecordDelimiter.length());
+		}
+
+		finishRecord();
+	}
+
+	/**
+	 * Writes a complete, already formatted record, record delimiter
+	 * included, as is.&nbsp;Used by {@link ConcurrentCsvWriter
+	 * ConcurrentCsvWriter} to write records formatted on other threads.
+	 */
+	void writeRaw(char[] data, int offset, int length) throws IOException {
+		checkClosed();
+
+		checkInit();
+
+		arrayContent.Array = data;
+		arrayContent.Offset = offset;
+		arrayContent.Length = length;
+
+		try {
+			append(arrayContent, 0, length);
+		} finally {
+			arrayContent.Array = null;
+		}
+
+		finishRecord();
+	}
+
+	private void finishRecord() throws IOException {
+		if (droppingRecord) {
+			droppingRecord = false;
+			droppedRecordCount++;
+		} else if (blockOutput != null) {
+			drainBuffer();
+			blockOutput.endRecord(true);
+		} else if (bufferCount >= userSettings.FlushThreshold) {
+			if (gzipOutput != null) {
+				drainBuffer();
+
+				// an OutputStreamWriter may still hold the record's bytes
+				if (!(outputStream instanceof EncodingWriter)) {
+					outputStream.flush();
+				}
+
+				gzipOutput.endRecord();
+			} else if (asyncSink != null) {
+				handOff(userSettings.OverflowPolicy == OVERFLOW_BLOCK);
+			} else {
+				drainBuffer();
+			}
+		}
+
+		recordStart = bufferCount;
+		firstColumn = true;
+		column = 0;
+	}
+
+	/**
+	 * 
+	 */
+	private void checkInit() throws IOException {
+		if (!initialized) {
+			OutputStream fileStream = null;
+
+			if (fileName != null) {
+				fileStream = ChannelOutputStream.open(fileName,
+						userSettings.UseDirectIo, userSettings.PreallocateSize);
+			}
+
+			if (fileName != null && userSettings.UseBlockCompression) {
+				// the block writer writes its headers a few bytes at a time
+				blockOutput = new BlockCompressedWriter(
+						new BufferedOutputStream(fileStream,
+								StaticSettings.MAX_FILE_BUFFER_SIZE), charset,
+						getDialect(),
+						userSettings.CompressionBlockSize,
+						userSettings.CompressionLevel);
+
+				outputStream = blockOutput;
+			} else if (fileName != null && userSettings.UseGzip) {
+				gzipOutput = new ParallelGzipOutputStream(fileStream,
+						userSettings.GzipBlockSize,
+						userSettings.CompressionLevel);
+
+				outputStream = EncodingWriter.create(gzipOutput, charset,
+						StaticSettings.MAX_FILE_BUFFER_SIZE);
+			} else if (fileName != null) {
+				// the records are already gathered in the buffer below
+				outputStream = EncodingWriter.create(fileStream, charset,
+						StaticSettings.MAX_FILE_BUFFER_SIZE);
+			}
+
+			if (fileName != null) {
+				closer = new ResourceCleaner.StreamCloser(outputStream);
+				ResourceCleaner.register(this, closer);
+			}
+
+			initialized = true;
+		}
+
+		if (buffer == null) {
+			if (userSettings.Async && blockOutput == null
+					&& gzipOutput == null) {
+				asyncSink = new AsyncSink(outputStream,
+						userSettings.AsyncBufferCount, userSettings.BufferSize);
+
+				buffer = asyncSink.getBuffer();
+
+				// a writer that is never closed still stops the thread,
+				// which would otherwise wait for buffers forever
+				if (closer == null) {
+					closer = new ResourceCleaner.StreamCloser(null);
+					ResourceCleaner.register(this, closer);
+				}
+
+				closer.Sink = asyncSink;
+			} else {
+				buffer = new char[userSettings.BufferSize];
+			}
+		}
+	}
+
+	private void append(char letter) throws IOException {
+		if (droppingRecord
+				|| (bufferCount == buffer.length && !makeRoom())) {
+			return;
+		}
+
+		buffer[bufferCount++] = letter;
+	}
+
+	private void append(CharSequence content, int offset, int length)
+			throws IOException {
+		if (droppingRecord) {
+			return;
+		}
+
+		if (asyncSink != null) {
+			// pass large pieces through the ring of buffers a buffer at a
+			// time, as only the background thread may write them out
+			while (length > buffer.length - bufferCount) {
+				int count = buffer.length - bufferCount;
+
+				copy(content, offset, count);
+
+				offset += count;
+				length -= count;
+
+				if (!makeRoom()) {
+					return;
+				}
+			}
+		} else if (length > buffer.length - bufferCount) {
+			drainBuffer();
+
+			if (length > buffer.length) {
+				// too big to be worth copying through the buffer
+				if (content == arrayContent) {
+					outputStream.write(arrayContent.Array, arrayContent.Offset
+							+ offset, length);
+				} else {
+					outputStream.append(content, offset, offset + length);
+				}
+
+				return;
+			}
+		}
+
+		copy(content, offset, length);
+	}
+
+	private void copy(CharSequence content, int offset, int length) {
+		if (content instanceof String) {
+			((String) content).getChars(offset, offset + length, buffer,
+					bufferCount);
+		} else if (content instanceof StringBuilder) {
+			((StringBuilder) content).getChars(offset, offset + length,
+					buffer, bufferCount);
+		} else if (content == arrayContent) {
+			System.arraycopy(arrayContent.Array, arrayContent.Offset + offset,
+					buffer, bufferCount, length);
+		} else {
+			for (int i = 0; i < length; i++) {
+				buffer[bufferCount + i] = content.charAt(offset + i);
+			}
+		}
+
+		bufferCount += length;
+	}
+
+	/**
+	 * Makes room in a full buffer, returning false if the record being
+	 * written was dropped instead.
+	 */
+	private boolean makeRoom() throws IOException {
+		if (asyncSink == null) {
+			drainBuffer();
+		} else if (userSettings.OverflowPolicy == OVERFLOW_BLOCK) {
+			handOff(true);
+		} else {
+			// only hand over complete records, so a record dropped later
+			// is never partly written
+			char[] full = buffer;
+			char[] next = recordStart == 0 ? null : asyncSink.exchange(
+					recordStart, false);
+
+			if (next == null) {
+				// no free buffer, or the record doesn't fit in one
+				bufferCount = recordStart;
+				droppingRecord = true;
+
+				return false;
+			}
+
+			int partial = bufferCount - recordStart;
+
+			System.arraycopy(full, recordStart, next, 0, partial);
+
+			buffer = next;
+			bufferCount = partial;
+			recordStart = 0;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Hands the buffer over to be written asynchronously, unless told not to
+	 * wait and no buffer is free.
+	 */
+	private void handOff(boolean wait) throws IOException {
+		char[] next = asyncSink.exchange(bufferCount, wait);
+
+		if (next != null) {
+			buffer = next;
+			bufferCount = 0;
+			recordStart = 0;
+		}
+	}
+
+	/**
+	 * Hands everything held in the buffer to the destination.
+	 */
+	private void drainBuffer() throws IOException {
+		if (asyncSink != null) {
+			handOff(true);
+		} else if (bufferCount > 0) {
+			outputStream.write(buffer, 0, bufferCount);
+
+			bufferCount = 0;
+		}
+
+		recordStart = 0;
+	}
+
+	/**
+	 * Clears all buffers for the current writer and causes any buffered data to
+	 * be written to the underlying device.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream. 
+	 */
+	public void flush() throws IOException {
+		if (buffer != null) {
+			drainBuffer();
+		}
+
+		if (asyncSink != null) {
+			asyncSink.awaitWritten();
+		}
+
+		outputStream.flush();
+
+		if (gzipOutput != null) {
+			gzipOutput.finishMembers();
+		}
+	}
+
+	/**
+	 * Closes and releases all related resources.
+	 */
+	public void close() {
+		if (!closed) {
+			close(true);
+
+			closed = true;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void close(boolean closing) {
+		if (!closed) {
+			if (closing) {
+				charset = null;
+			}
+
+			try {
+				if (initialized) {
+					try {
+						drainBuffer();
+					} finally {
+						try {
+							if (asyncSink != null) {
+								asyncSink.stop();
+							}
+						} finally {
+							outputStream.close();
+						}
+					}
+				}
+			} catch (Exception e) {
+				// just eat the exception
+			}
+
+			if (closer != null) {
+				closer.Stream = null;
+				closer.Sink = null;
+			}
+
+			outputStream = null;
+			blockOutput = null;
+			gzipOutput = null;
+			buffer = null;
+			asyncSink = null;
+
+			closed = true;
+		}
+	}
+
+	/**
+	 * 
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+			"This instance of the CsvWriter class has already been closed.");
+		}
+	}
+
+	private class Letters {
+		public static final char LF = '\n';
 
 		public static final char CR = '\r';
 
@@ -568,6 +1969,34 @@ public class CsvWriter {
 
 		public boolean ForceQualifier;
 
+		public boolean UseBlockCompression;
+
+		public int CompressionBlockSize;
+
+		public int CompressionLevel;
+
+		public boolean UseGzip;
+
+		public int GzipBlockSize;
+
+		public int BufferSize;
+
+		public boolean UseDirectIo;
+
+		public boolean Async;
+
+		public int AsyncBufferCount;
+
+		public int OverflowPolicy;
+
+		public long PreallocateSize;
+
+		public int FlushThreshold;
+
+		public int[] ColumnQuoting;
+
+		public boolean VerifyColumnQuoting;
+
 		public UserSettings() {
 			TextQualifier = Letters.QUOTE;
 			UseTextQualifier = true;
@@ -576,9 +2005,65 @@ public class CsvWriter {
 			Comment = Letters.POUND;
 			EscapeMode = ESCAPE_MODE_DOUBLED;
 			ForceQualifier = false;
+			UseBlockCompression = false;
+			CompressionBlockSize = StaticSettings.BLOCK_SIZE;
+			CompressionLevel = Deflater.DEFAULT_COMPRESSION;
+			UseGzip = false;
+			GzipBlockSize = StaticSettings.GZIP_BLOCK_SIZE;
+			BufferSize = StaticSettings.BUFFER_SIZE;
+			UseDirectIo = false;
+			Async = false;
+			AsyncBufferCount = StaticSettings.ASYNC_BUFFER_COUNT;
+			OverflowPolicy = OVERFLOW_BLOCK;
+			PreallocateSize = 0;
+			FlushThreshold = StaticSettings.FLUSH_THRESHOLD;
+			ColumnQuoting = null;
+			VerifyColumnQuoting = false;
+		}
+	}
+
+	/**
+	 * A slice of a character array seen as a CharSequence, so columns can
+	 * be written from arrays by the same code that writes Strings.
+	 */
+	private static class CharArraySequence implements CharSequence {
+		public char[] Array;
+
+		public int Offset;
+
+		public int Length;
+
+		public int length() {
+			return Length;
+		}
+
+		public char charAt(int index) {
+			return Array[Offset + index];
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			return new String(Array, Offset + start, end - start);
+		}
+
+		public String toString() {
+			return new String(Array, Offset, Length);
 		}
 	}
 
+	private class StaticSettings {
+		public static final int MAX_FILE_BUFFER_SIZE = 64 * 1024;
+
+		public static final int BLOCK_SIZE = 1024 * 1024;
+
+		public static final int GZIP_BLOCK_SIZE = 60 * 1024;
+
+		public static final int BUFFER_SIZE = 64 * 1024;
+
+		public static final int FLUSH_THRESHOLD = 32 * 1024;
+
+		public static final int ASYNC_BUFFER_COUNT = 4;
+	}
+
 	public static String replace(String original, String pattern, String replace) {
 		final int len = pattern.length();
 		int found = original.indexOf(pattern);
@@ -0,0 +1,244 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes characters straight into a byte array for UTF-8, ISO-8859-1 and
+ * US-ASCII, which covers nearly all delimited data, and writes the array to
+ * the stream at the end of each write.&nbsp;The caller is expected to write
+ * in large pieces, as {@link CsvWriter CsvWriter} does from its own buffer,
+ * so nothing is held here between writes.&nbsp;This skips the
+ * CharsetEncoder, intermediate buffers and locking of an
+ * OutputStreamWriter.&nbsp;Characters
+ * that can't be encoded are written as '?', the same as an
+ * OutputStreamWriter does.
+ * <p>
+ * Not thread safe; the writer using it does its own buffering and is not
+ * thread safe either.
+ */
+final class EncodingWriter extends Writer {
+	private static final int UTF_8 = 0;
+
+	private static final int LATIN_1 = 1;
+
+	private static final int ASCII = 2;
+
+	private static final byte REPLACEMENT = (byte) '?';
+
+	private static final int MAX_BUFFER_SIZE = 16 * 1024 * 1024;
+
+	private OutputStream outputStream;
+
+	private int kind;
+
+	private byte[] bytes;
+
+	private int count = 0;
+
+	// the first half of a surrogate pair split across two writes
+	private char pendingHigh = 0;
+
+	private EncodingWriter(OutputStream outputStream, int kind, int bufferSize) {
+		this.outputStream = outputStream;
+		this.kind = kind;
+
+		// room for the longest encoded character
+		bytes = new byte[Math.max(bufferSize, 16)];
+	}
+
+	/**
+	 * Creates a writer encoding to a stream, which bypasses
+	 * OutputStreamWriter when the charset is one it encodes itself.
+	 */
+	public static Writer create(OutputStream outputStream, Charset charset,
+			int bufferSize) {
+		String name = charset.name();
+
+		if (name.equals("UTF-8")) {
+			return new EncodingWriter(outputStream, UTF_8, bufferSize);
+		} else if (name.equals("ISO-8859-1")) {
+			return new EncodingWriter(outputStream, LATIN_1, bufferSize);
+		} else if (name.equals("US-ASCII")) {
+			return new EncodingWriter(outputStream, ASCII, bufferSize);
+		} else {
+			return new OutputStreamWriter(outputStream, charset);
+		}
+	}
+
+	public void write(int letter) throws IOException {
+		write(new char[] { (char) letter }, 0, 1);
+	}
+
+	public void write(char[] buffer, int offset, int length)
+			throws IOException {
+		checkClosed();
+
+		if (length > bytes.length && bytes.length < MAX_BUFFER_SIZE) {
+			// grow to take the whole piece, so mostly ASCII data reaches the
+			// stream in a single write
+			bytes = new byte[Math.min(length + 16, MAX_BUFFER_SIZE)];
+		}
+
+		int end = offset + length;
+		int i = offset;
+
+		if (pendingHigh != 0 && i < end) {
+			char high = pendingHigh;
+
+			pendingHigh = 0;
+
+			if (Character.isLowSurrogate(buffer[i])) {
+				encodePair(high, buffer[i]);
+				i++;
+			} else {
+				ensure(1);
+				bytes[count++] = REPLACEMENT;
+			}
+		}
+
+		while (i < end) {
+			// the plain ASCII run, which is almost all of the data
+			int limit = Math.min(end, i + bytes.length - count);
+
+			while (i < limit) {
+				char letter = buffer[i];
+
+				if (letter >= 0x80) {
+					break;
+				}
+
+				bytes[count++] = (byte) letter;
+				i++;
+			}
+
+			if (i == end) {
+				break;
+			}
+
+			if (i == limit) {
+				drain();
+
+				continue;
+			}
+
+			char letter = buffer[i++];
+
+			if (Character.isHighSurrogate(letter)) {
+				if (i == end) {
+					pendingHigh = letter;
+				} else if (Character.isLowSurrogate(buffer[i])) {
+					encodePair(letter, buffer[i]);
+					i++;
+				} else {
+					ensure(1);
+					bytes[count++] = REPLACEMENT;
+				}
+			} else if (Character.isLowSurrogate(letter)) {
+				ensure(1);
+				bytes[count++] = REPLACEMENT;
+			} else if (kind == UTF_8) {
+				ensure(3);
+
+				if (letter < 0x800) {
+					bytes[count++] = (byte) (0xC0 | (letter >> 6));
+					bytes[count++] = (byte) (0x80 | (letter & 0x3F));
+				} else {
+					bytes[count++] = (byte) (0xE0 | (letter >> 12));
+					bytes[count++] = (byte) (0x80 | ((letter >> 6) & 0x3F));
+					bytes[count++] = (byte) (0x80 | (letter & 0x3F));
+				}
+			} else {
+				ensure(1);
+				bytes[count++] = kind == LATIN_1 && letter < 0x100 ? (byte) letter
+						: REPLACEMENT;
+			}
+		}
+
+		drain();
+	}
+
+	private void encodePair(char high, char low) throws IOException {
+		if (kind == UTF_8) {
+			int codePoint = Character.toCodePoint(high, low);
+
+			ensure(4);
+			bytes[count++] = (byte) (0xF0 | (codePoint >> 18));
+			bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+			bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+			bytes[count++] = (byte) (0x80 | (codePoint & 0x3F));
+		} else {
+			// one character that can't be encoded
+			ensure(1);
+			bytes[count++] = REPLACEMENT;
+		}
+	}
+
+	private void ensure(int needed) throws IOException {
+		if (bytes.length - count < needed) {
+			drain();
+		}
+	}
+
+	private void drain() throws IOException {
+		if (count > 0) {
+			outputStream.write(bytes, 0, count);
+
+			count = 0;
+		}
+	}
+
+	public void flush() throws IOException {
+		checkClosed();
+
+		drain();
+		outputStream.flush();
+	}
+
+	public void close() throws IOException {
+		if (outputStream != null) {
+			try {
+				if (pendingHigh != 0) {
+					pendingHigh = 0;
+
+					ensure(1);
+					bytes[count++] = REPLACEMENT;
+				}
+
+				drain();
+			} finally {
+				outputStream.close();
+				outputStream = null;
+			}
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (outputStream == null) {
+			throw new IOException("Stream closed");
+		}
+	}
+}
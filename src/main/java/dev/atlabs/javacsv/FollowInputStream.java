@@ -0,0 +1,232 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * Reads a file that another process keeps appending to.&nbsp;At the end of
+ * the data, reads wait for more to be written, polling with a growing
+ * delay, instead of returning the end of the stream.
+ * <p>
+ * When the file shrinks below the current position it was truncated, and
+ * reading starts over from its beginning.&nbsp;When the path refers to a
+ * different file once the old one has been read to its end, it was rotated,
+ * and the new file is read from its beginning.&nbsp;In both cases a single
+ * end of stream is returned first, so the reader can drop any partial record
+ * left over from the old data.
+ */
+final class FollowInputStream extends InputStream {
+	private static final long MIN_POLL_DELAY = 10;
+
+	private static final long MAX_POLL_DELAY = 500;
+
+	private Path path;
+
+	private FileChannel channel;
+
+	private Object fileKey;
+
+	private long position = 0;
+
+	private long timeout;
+
+	private volatile boolean atRecordBoundary = true;
+
+	private boolean restarted = false;
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param timeout
+	 *            How many milliseconds to wait at a record boundary for more
+	 *            data before returning the end of the stream, or 0 to wait
+	 *            forever.
+	 */
+	public FollowInputStream(String fileName, long timeout) throws IOException {
+		this.path = Paths.get(fileName);
+		this.timeout = timeout;
+
+		open();
+	}
+
+	private void open() throws IOException {
+		channel = FileChannel.open(path, StandardOpenOption.READ);
+		fileKey = readFileKey();
+		position = 0;
+	}
+
+	private Object readFileKey() throws IOException {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class)
+					.fileKey();
+		} catch (NoSuchFileException ex) {
+			return null;
+		}
+	}
+
+	/**
+	 * Tells the stream whether the data read so far ends at a record
+	 * boundary, which is the only place a timeout may end the stream.
+	 */
+	public void setAtRecordBoundary(boolean atRecordBoundary) {
+		this.atRecordBoundary = atRecordBoundary;
+	}
+
+	/**
+	 * @return Whether the last end of stream was caused by the file being
+	 *         truncated or rotated, clearing the flag.
+	 */
+	public boolean takeRestarted() {
+		boolean value = restarted;
+
+		restarted = false;
+
+		return value;
+	}
+
+	/**
+	 * @return The position in the current file of the next byte to be read.
+	 */
+	public long getPosition() {
+		return position;
+	}
+
+	public long skip(long count) throws IOException {
+		if (count <= 0) {
+			return 0;
+		}
+
+		position += count;
+
+		return count;
+	}
+
+	public int available() throws IOException {
+		if (closed) {
+			return 0;
+		}
+
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size()
+				- position));
+	}
+
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+
+		int count;
+
+		do {
+			count = read(single, 0, 1);
+		} while (count == 0);
+
+		return count == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+
+		long delay = MIN_POLL_DELAY;
+		long waited = 0;
+
+		while (!closed) {
+			int count = channel.read(ByteBuffer.wrap(buffer, offset, length),
+					position);
+
+			if (count > 0) {
+				position += count;
+
+				return count;
+			}
+
+			if (checkRestart()) {
+				restarted = true;
+
+				return -1;
+			}
+
+			if (timeout > 0 && waited >= timeout && atRecordBoundary) {
+				return -1;
+			}
+
+			try {
+				Thread.sleep(delay);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+
+				throw new InterruptedIOException(
+						"Interrupted while waiting for more data.");
+			}
+
+			waited += delay;
+			delay = Math.min(delay * 2, MAX_POLL_DELAY);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Switches to reading from the beginning of the file if it was truncated
+	 * or rotated.
+	 */
+	private boolean checkRestart() throws IOException {
+		if (channel.size() < position) {
+			position = 0;
+
+			return true;
+		}
+
+		Object currentKey = readFileKey();
+
+		if (currentKey != null && fileKey != null
+				&& !currentKey.equals(fileKey)) {
+			// the old file has been read to its end, so move on to the new
+			// one
+			channel.close();
+
+			open();
+
+			return true;
+		}
+
+		return false;
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			channel.close();
+		}
+	}
+}
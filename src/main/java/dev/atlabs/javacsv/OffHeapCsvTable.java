@@ -0,0 +1,534 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A read only, column oriented copy of delimited data whose values are kept
+ * in direct (off-heap) memory instead of on the Java heap.&nbsp;Loading a
+ * large file this way leaves the garbage collector almost nothing to trace,
+ * so the table can stay resident for lookups without adding to pause
+ * times.&nbsp;The native memory is released by {@link #close close()}, not
+ * by the garbage collector, and values handed out before then can no
+ * longer be read once it's called.
+ * <p>
+ * Once loaded, a table may be read from several threads at the same time.
+ */
+public class OffHeapCsvTable implements Closeable {
+	/**
+	 * The default size in bytes of each block of native memory that column
+	 * values are packed into.
+	 */
+	public static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+	private String[] headers = null;
+
+	private HashMap<String, Integer> indexByName = new HashMap<String, Integer>();
+
+	private ArrayList<Column> columns = new ArrayList<Column>();
+
+	private long rowCount = 0;
+
+	private int chunkSize;
+
+	// checked by the values handed out, so none reads freed memory
+	private volatile boolean closed = false;
+
+	private OffHeapCsvTable(int chunkSize) {
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Reads all of the remaining records from a {@link CsvReader CsvReader}
+	 * into a new table.&nbsp;If headers were read by a previous call to
+	 * {@link CsvReader#readHeaders readHeaders()}, they are kept as the
+	 * table's headers.&nbsp;The reader is not closed.
+	 *
+	 * @param reader
+	 *            The reader to load the records from.
+	 * @return The loaded table.
+	 * @exception IOException
+	 *                Thrown if an error occurs while reading data from the
+	 *                source stream.
+	 */
+	public static OffHeapCsvTable load(CsvReader reader) throws IOException {
+		return load(reader, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Reads all of the remaining records from a {@link CsvReader CsvReader}
+	 * into a new table.
+	 *
+	 * @param reader
+	 *            The reader to load the records from.
+	 * @param chunkSize
+	 *            The size in bytes of each block of native memory to
+	 *            allocate.
+	 * @return The loaded table.
+	 * @exception IOException
+	 *                Thrown if an error occurs while reading data from the
+	 *                source stream.
+	 */
+	public static OffHeapCsvTable load(CsvReader reader, int chunkSize)
+			throws IOException {
+		if (reader == null) {
+			throw new IllegalArgumentException(
+					"Parameter reader can not be null.");
+		}
+
+		if (chunkSize < 1024) {
+			throw new IllegalArgumentException(
+					"Parameter chunkSize must be at least 1024.");
+		}
+
+		OffHeapCsvTable table = new OffHeapCsvTable(chunkSize);
+
+		try {
+			table.setHeaders(reader.getHeaders());
+
+			while (reader.readRecord()) {
+				table.addRecord(reader);
+			}
+		} catch (IOException ex) {
+			table.close();
+
+			throw ex;
+		} catch (RuntimeException ex) {
+			table.close();
+
+			throw ex;
+		}
+
+		return table;
+	}
+
+	private void setHeaders(String[] headers) {
+		this.headers = headers;
+
+		if (headers != null) {
+			for (int i = 0; i < headers.length; i++) {
+				// if there are duplicate header names, we will save the last
+				// one, same as CsvReader
+				indexByName.put(headers[i], Integer.valueOf(i));
+			}
+		}
+	}
+
+	private void addRecord(CsvReader reader) throws IOException {
+		int count = reader.getColumnCount();
+
+		while (columns.size() < count) {
+			Column column = new Column();
+
+			// rows read before this column first showed up are empty
+			for (long i = 0; i < rowCount; i++) {
+				column.add(null);
+			}
+
+			columns.add(column);
+		}
+
+		for (int i = 0; i < columns.size(); i++) {
+			columns.get(i).add(i < count ? reader.get(i) : null);
+		}
+
+		rowCount++;
+	}
+
+	/**
+	 * Gets the number of records held by this table.
+	 *
+	 * @return The number of records held by this table.
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Gets the number of columns held by this table, which is the largest
+	 * column count of any loaded record.
+	 *
+	 * @return The number of columns held by this table.
+	 */
+	public int getColumnCount() {
+		return closed ? 0 : columns.size();
+	}
+
+	/**
+	 * Returns the header values as a string array.
+	 *
+	 * @return The header values, or null if no headers were read before the
+	 *         table was loaded.
+	 */
+	public String[] getHeaders() {
+		return headers == null ? null : headers.clone();
+	}
+
+	/**
+	 * Gets the corresponding column index for a given column header name.
+	 *
+	 * @param headerName
+	 *            The header name of the column.
+	 * @return The column index for the given column header name.&nbsp;Returns
+	 *         -1 if not found.
+	 */
+	public int getIndex(String headerName) {
+		Integer index = closed ? null : indexByName.get(headerName);
+
+		if (index != null) {
+			return index.intValue();
+		} else {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns a column value as a view over the native memory holding
+	 * it.&nbsp;No copy of the value is made on the heap until
+	 * {@link Object#toString toString()} is called on the result.&nbsp;The
+	 * view is only valid until the table is closed, after which reading it
+	 * throws an IllegalStateException.
+	 *
+	 * @param row
+	 *            The index of the record.
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @return The column value.&nbsp;Missing columns are returned as an empty
+	 *         value.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public CharSequence getCharSequence(long row, int columnIndex)
+			throws IOException {
+		checkClosed();
+		checkRow(row);
+
+		if (columnIndex > -1 && columnIndex < columns.size()) {
+			return columns.get(columnIndex).get(row);
+		} else {
+			return "";
+		}
+	}
+
+	/**
+	 * Returns a column value copied onto the heap as a String.
+	 *
+	 * @param row
+	 *            The index of the record.
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @return The column value.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public String get(long row, int columnIndex) throws IOException {
+		return getCharSequence(row, columnIndex).toString();
+	}
+
+	/**
+	 * Returns a column value copied onto the heap as a String.
+	 *
+	 * @param row
+	 *            The index of the record.
+	 * @param headerName
+	 *            The header name of the column.
+	 * @return The column value.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public String get(long row, String headerName) throws IOException {
+		return get(row, getIndex(headerName));
+	}
+
+	/**
+	 * Compares a column value with the given characters directly in native
+	 * memory, without copying the value onto the heap.
+	 *
+	 * @param row
+	 *            The index of the record.
+	 * @param columnIndex
+	 *            The index of the column.
+	 * @param value
+	 *            The characters to compare against.
+	 * @return Whether the column value is equal to the given characters;
+	 *         false if they are null.
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	public boolean contentEquals(long row, int columnIndex, CharSequence value)
+			throws IOException {
+		CharSequence stored = getCharSequence(row, columnIndex);
+
+		if (value == null) {
+			return false;
+		}
+
+		int length = stored.length();
+
+		if (value.length() != length) {
+			return false;
+		}
+
+		for (int i = 0; i < length; i++) {
+			if (stored.charAt(i) != value.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Releases all of the native memory held by this table.&nbsp;Any
+	 * {@link CharSequence CharSequence} previously returned by
+	 * {@link #getCharSequence getCharSequence()} throws an
+	 * IllegalStateException from then on.&nbsp;The table must not be closed
+	 * while other threads are still reading it.
+	 */
+	public void close() {
+		if (!closed) {
+			// mark it closed first, so values stop reading before the memory
+			// goes away
+			closed = true;
+
+			for (int i = 0; i < columns.size(); i++) {
+				columns.get(i).free();
+			}
+
+			columns = null;
+			headers = null;
+			indexByName = null;
+		}
+	}
+
+	private void checkRow(long row) {
+		if (row < 0 || row >= rowCount) {
+			throw new IndexOutOfBoundsException("Row " + row
+					+ " is outside of the table's " + rowCount + " rows.");
+		}
+	}
+
+	/**
+	 * @exception IOException
+	 *                Thrown if this object has already been closed.
+	 */
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+					"This instance of the OffHeapCsvTable class has already been closed.");
+		}
+	}
+
+	private class Column {
+		// the index holds one entry per row: the position of the value as
+		// chunk number and offset, then the value length with the top bit
+		// marking values stored one byte per character
+		private static final int ENTRY_SIZE = 12;
+
+		private static final int ENTRIES_PER_INDEX_CHUNK = 64 * 1024;
+
+		private static final int LATIN1_FLAG = 0x80000000;
+
+		private ArrayList<ByteBuffer> indexChunks = new ArrayList<ByteBuffer>();
+
+		private ArrayList<ByteBuffer> dataChunks = new ArrayList<ByteBuffer>();
+
+		private ByteBuffer currentData = null;
+
+		private long entries = 0;
+
+		public void add(String value) {
+			int entry = (int) (entries % ENTRIES_PER_INDEX_CHUNK);
+
+			if (entry == 0) {
+				// the first index chunk starts small and grows, so that small
+				// tables don't pin a full chunk per column
+				indexChunks.add(ByteBuffer.allocateDirect((entries == 0 ? 1024
+						: ENTRIES_PER_INDEX_CHUNK)
+						* ENTRY_SIZE));
+			}
+
+			ByteBuffer index = indexChunks.get(indexChunks.size() - 1);
+
+			if (index.capacity() == entry * ENTRY_SIZE) {
+				ByteBuffer holder = ByteBuffer.allocateDirect(Math.min(
+						index.capacity() * 2, ENTRIES_PER_INDEX_CHUNK
+								* ENTRY_SIZE));
+
+				index.clear();
+				holder.put(index);
+
+				DirectBuffers.free(index);
+
+				index = holder;
+				indexChunks.set(indexChunks.size() - 1, index);
+			}
+
+			int length = value == null ? 0 : value.length();
+			boolean latin1 = true;
+
+			for (int i = 0; i < length && latin1; i++) {
+				latin1 = value.charAt(i) <= '\u00FF';
+			}
+
+			int byteLength = latin1 ? length : length * 2;
+
+			if (currentData == null || currentData.remaining() < byteLength) {
+				// chunks double in size up to the configured chunk size
+				int size = Math.min(chunkSize, currentData == null ? 64 * 1024
+						: currentData.capacity() * 2);
+
+				currentData = ByteBuffer.allocateDirect(Math.max(size,
+						byteLength));
+				dataChunks.add(currentData);
+			}
+
+			int offset = currentData.position();
+
+			if (latin1) {
+				for (int i = 0; i < length; i++) {
+					currentData.put((byte) value.charAt(i));
+				}
+			} else {
+				for (int i = 0; i < length; i++) {
+					currentData.putChar(value.charAt(i));
+				}
+			}
+
+			int base = entry * ENTRY_SIZE;
+
+			index.putInt(base, dataChunks.size() - 1);
+			index.putInt(base + 4, offset);
+			index.putInt(base + 8, latin1 ? length | LATIN1_FLAG : length);
+
+			entries++;
+		}
+
+		public CharSequence get(long row) {
+			ByteBuffer index = indexChunks
+					.get((int) (row / ENTRIES_PER_INDEX_CHUNK));
+			int base = (int) (row % ENTRIES_PER_INDEX_CHUNK) * ENTRY_SIZE;
+
+			int chunk = index.getInt(base);
+			int offset = index.getInt(base + 4);
+			int length = index.getInt(base + 8);
+
+			boolean latin1 = (length & LATIN1_FLAG) != 0;
+			length &= ~LATIN1_FLAG;
+
+			if (length == 0) {
+				return "";
+			}
+
+			return new NativeValue(dataChunks.get(chunk), offset, length,
+					latin1);
+		}
+
+		public void free() {
+			for (int i = 0; i < indexChunks.size(); i++) {
+				DirectBuffers.free(indexChunks.get(i));
+			}
+
+			for (int i = 0; i < dataChunks.size(); i++) {
+				DirectBuffers.free(dataChunks.get(i));
+			}
+
+			indexChunks.clear();
+			dataChunks.clear();
+			currentData = null;
+		}
+	}
+
+	private class NativeValue implements CharSequence {
+		private ByteBuffer data;
+
+		private int offset;
+
+		private int length;
+
+		private boolean latin1;
+
+		public NativeValue(ByteBuffer data, int offset, int length,
+				boolean latin1) {
+			this.data = data;
+			this.offset = offset;
+			this.length = length;
+			this.latin1 = latin1;
+		}
+
+		public int length() {
+			checkOpen();
+
+			return length;
+		}
+
+		public char charAt(int index) {
+			checkOpen();
+
+			if (index < 0 || index >= length) {
+				throw new IndexOutOfBoundsException("Index " + index
+						+ " is outside of the value's " + length
+						+ " characters.");
+			}
+
+			if (latin1) {
+				return (char) (data.get(offset + index) & 0xFF);
+			} else {
+				return data.getChar(offset + index * 2);
+			}
+		}
+
+		public CharSequence subSequence(int start, int end) {
+			checkOpen();
+
+			if (start < 0 || end > length || start > end) {
+				throw new IndexOutOfBoundsException("Range " + start + " to "
+						+ end + " is outside of the value's " + length
+						+ " characters.");
+			}
+
+			return new NativeValue(data, offset
+					+ (latin1 ? start : start * 2), end - start, latin1);
+		}
+
+		public String toString() {
+			char[] chars = new char[length];
+
+			for (int i = 0; i < length; i++) {
+				chars[i] = charAt(i);
+			}
+
+			return new String(chars);
+		}
+
+		private void checkOpen() {
+			if (closed) {
+				throw new IllegalStateException(
+						"This instance of the OffHeapCsvTable class has already been closed.");
+			}
+		}
+	}
+}
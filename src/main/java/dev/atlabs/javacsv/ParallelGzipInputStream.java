@@ -0,0 +1,380 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses gzip data, inflating several members at the same time when
+ * the compressed size of each member is recorded in its header, as in the
+ * BGZF layout written by bgzip and by {@link ParallelGzipOutputStream
+ * ParallelGzipOutputStream}.&nbsp;Members are always returned in
+ * order.&nbsp;From the first member that doesn't record its size, the rest
+ * of the data is inflated sequentially, since the end of such a member can't
+ * be found without inflating it.
+ */
+final class ParallelGzipInputStream extends InputStream {
+	private static final int FLAG_HEADER_CRC = 2;
+
+	private static final int FLAG_EXTRA = 4;
+
+	private static final int FLAG_NAME = 8;
+
+	private static final int FLAG_COMMENT = 16;
+
+	// the fixed header, the extra field length and the trailer
+	private static final int MEMBER_OVERHEAD = 20;
+
+	// deflate never expands data more than this many times, so a member
+	// claiming a bigger inflated size than this allows is corrupt; members
+	// aren't held to the 64 K of BGZF, since a long record makes
+	// ParallelGzipOutputStream write a bigger one
+	private static final int MAX_INFLATION = 1032;
+
+	private static ExecutorService executor = null;
+
+	private InputStream in;
+
+	// inflated members that are queued or in progress, in file order
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private int maxPending;
+
+	private byte[] current = new byte[0];
+
+	private int position = 0;
+
+	// takes over once a member without a recorded size is found
+	private InputStream sequential = null;
+
+	private boolean endOfMembers = false;
+
+	private boolean closed = false;
+
+	public ParallelGzipInputStream(InputStream in) {
+		this.in = in;
+		this.maxPending = Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	/**
+	 * Checks for the gzip magic number at the start of a stream that supports
+	 * {@link InputStream#mark mark()}.
+	 */
+	public static boolean isGzip(InputStream in) throws IOException {
+		in.mark(2);
+
+		int first = in.read();
+		int second = in.read();
+
+		in.reset();
+
+		return first == 0x1f && second == 0x8b;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "javacsv-inflate");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return executor;
+	}
+
+	public int read() throws IOException {
+		byte[] single = new byte[1];
+
+		int count;
+
+		do {
+			count = read(single, 0, 1);
+		} while (count == 0);
+
+		return count == -1 ? -1 : single[0] & 0xFF;
+	}
+
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+
+		if (length == 0) {
+			return 0;
+		}
+
+		while (position == current.length) {
+			if (!nextMember()) {
+				return sequential == null ? -1 : sequential.read(buffer,
+						offset, length);
+			}
+		}
+
+		int count = Math.min(length, current.length - position);
+
+		System.arraycopy(current, position, buffer, offset, count);
+
+		position += count;
+
+		return count;
+	}
+
+	/**
+	 * Moves on to the next inflated member.
+	 *
+	 * @return false when only sequential data, or no data, is left.
+	 */
+	private boolean nextMember() throws IOException {
+		while (!endOfMembers && pending.size() < maxPending) {
+			queueMember();
+		}
+
+		if (pending.isEmpty()) {
+			return false;
+		}
+
+		try {
+			current = pending.removeFirst().get();
+		} catch (InterruptedException ex) {
+			throw new InterruptedIOException(
+					"Interrupted while inflating gzip data.");
+		} catch (ExecutionException ex) {
+			if (ex.getCause() instanceof IOException) {
+				throw (IOException) ex.getCause();
+			}
+
+			throw new IOException(ex.getCause());
+		}
+
+		position = 0;
+
+		return true;
+	}
+
+	/**
+	 * Reads the next member from the compressed stream and queues it to be
+	 * inflated.
+	 */
+	private void queueMember() throws IOException {
+		int first = in.read();
+
+		if (first == -1) {
+			endOfMembers = true;
+
+			return;
+		}
+
+		byte[] header = new byte[10];
+		header[0] = (byte) first;
+		readFully(header, 1, 9);
+
+		if ((header[0] & 0xFF) != 0x1f || (header[1] & 0xFF) != 0x8b
+				|| header[2] != 8) {
+			throw new IOException("Not in gzip format.");
+		}
+
+		int flags = header[3] & 0xFF;
+		int blockSize = -1;
+		byte[] extra = new byte[0];
+
+		if ((flags & FLAG_EXTRA) != 0) {
+			byte[] extraLength = new byte[2];
+			readFully(extraLength, 0, 2);
+
+			extra = new byte[(extraLength[0] & 0xFF)
+					| ((extraLength[1] & 0xFF) << 8)];
+			readFully(extra, 0, extra.length);
+
+			blockSize = findBlockSize(extra);
+		}
+
+		if (blockSize == -1
+				|| (flags & (FLAG_NAME | FLAG_COMMENT | FLAG_HEADER_CRC)) != 0) {
+			// hand everything from this member on to a sequential inflater,
+			// putting back the header bytes that were already read
+			int extraBytes = (flags & FLAG_EXTRA) != 0 ? 2 + extra.length : 0;
+			byte[] consumed = new byte[10 + extraBytes];
+
+			System.arraycopy(header, 0, consumed, 0, 10);
+
+			if ((flags & FLAG_EXTRA) != 0) {
+				consumed[10] = (byte) extra.length;
+				consumed[11] = (byte) (extra.length >> 8);
+				System.arraycopy(extra, 0, consumed, 12, extra.length);
+			}
+
+			sequential = new GZIPInputStream(new SequenceInputStream(
+					new ByteArrayInputStream(consumed), in), 64 * 1024);
+			endOfMembers = true;
+
+			return;
+		}
+
+		// the block size covers the whole member, header and trailer
+		// included, and is at most 64 K as it's stored in 16 bits
+		if (blockSize < MEMBER_OVERHEAD + extra.length) {
+			throw new IOException("Corrupt gzip member: block size "
+					+ blockSize + " is smaller than its header.");
+		}
+
+		final byte[] compressed = new byte[blockSize - 12 - extra.length];
+		readFully(compressed, 0, compressed.length);
+
+		pending.addLast(getExecutor().submit(new Callable<byte[]>() {
+			public byte[] call() throws IOException {
+				return inflate(compressed);
+			}
+		}));
+	}
+
+	private static int findBlockSize(byte[] extra) {
+		int index = 0;
+
+		while (index + 4 <= extra.length) {
+			int length = (extra[index + 2] & 0xFF)
+					| ((extra[index + 3] & 0xFF) << 8);
+
+			if (extra[index] == 'B' && extra[index + 1] == 'C' && length == 2
+					&& index + 6 <= extra.length) {
+				return ((extra[index + 4] & 0xFF) | ((extra[index + 5] & 0xFF) << 8)) + 1;
+			}
+
+			index += 4 + length;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Inflates the deflate data and trailer of one member.
+	 */
+	private static byte[] inflate(byte[] compressed) throws IOException {
+		int trailer = compressed.length - 8;
+
+		if (trailer < 0) {
+			throw new IOException("Corrupt gzip member.");
+		}
+
+		long expectedCrc = readInt(compressed, trailer) & 0xFFFFFFFFL;
+		int size = readInt(compressed, trailer + 4);
+
+		if (size < 0 || (long) size > (long) trailer * MAX_INFLATION) {
+			throw new IOException("Corrupt gzip member: inflated size "
+					+ (size & 0xFFFFFFFFL) + " is out of range.");
+		}
+
+		byte[] data = new byte[size];
+
+		Inflater inflater = new Inflater(true);
+
+		try {
+			inflater.setInput(compressed, 0, trailer);
+
+			int count = 0;
+
+			while (count < size && !inflater.finished()) {
+				int inflated = inflater.inflate(data, count, size - count);
+
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+
+				count += inflated;
+			}
+
+			if (count != size) {
+				throw new IOException("Corrupt gzip member.");
+			}
+		} catch (DataFormatException ex) {
+			throw new IOException("Corrupt gzip member: " + ex.getMessage());
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, size);
+
+		if (crc.getValue() != expectedCrc) {
+			throw new IOException("Corrupt gzip member: CRC mismatch.");
+		}
+
+		return data;
+	}
+
+	private static int readInt(byte[] buffer, int offset) {
+		return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8)
+				| ((buffer[offset + 2] & 0xFF) << 16)
+				| ((buffer[offset + 3] & 0xFF) << 24);
+	}
+
+	private void readFully(byte[] buffer, int offset, int length)
+			throws IOException {
+		while (length > 0) {
+			int count = in.read(buffer, offset, length);
+
+			if (count == -1) {
+				throw new EOFException("Unexpected end of gzip data.");
+			}
+
+			offset += count;
+			length -= count;
+		}
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			for (Future<byte[]> future : pending) {
+				future.cancel(true);
+			}
+
+			pending.clear();
+			current = null;
+
+			if (sequential != null) {
+				sequential.close();
+			} else {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,307 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip data as a series of members deflated at the same time.&nbsp;A
+ * member is cut at the first call to {@link #endRecord endRecord()} once the
+ * block size has been written, so every member starts at a record, and
+ * members are always written in order.&nbsp;Any gzip reader reads the result
+ * as one stream.
+ * <p>
+ * Each member records its compressed size in its header, in the BGZF layout
+ * written by bgzip, so {@link ParallelGzipInputStream ParallelGzipInputStream}
+ * can inflate them in parallel too.&nbsp;That size field only has 16 bits,
+ * so a member compressing to more than 64 K is written without it, which is
+ * still valid gzip but is read sequentially.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+	private static final int MAX_MEMBER_SIZE = 65536;
+
+	// a header with the BC extra field, and the CRC and size after the data
+	private static final int HEADER_SIZE = 18;
+
+	private static final int TRAILER_SIZE = 8;
+
+	private static ExecutorService executor = null;
+
+	private OutputStream out;
+
+	private int blockSize;
+
+	private int level;
+
+	private byte[] block;
+
+	private int length = 0;
+
+	// deflated members that are queued or in progress, in file order
+	private ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+
+	private int maxPending;
+
+	private boolean closed = false;
+
+	public ParallelGzipOutputStream(OutputStream out, int blockSize, int level) {
+		this.out = out;
+		this.blockSize = blockSize;
+		this.level = level;
+		this.block = new byte[blockSize + 1024];
+		this.maxPending = Runtime.getRuntime().availableProcessors() * 2;
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Runtime.getRuntime()
+					.availableProcessors(), new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "javacsv-deflate");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+
+		return executor;
+	}
+
+	public void write(int value) throws IOException {
+		write(new byte[] { (byte) value }, 0, 1);
+	}
+
+	public void write(byte[] bytes, int offset, int count) throws IOException {
+		checkClosed();
+
+		if (length + count > block.length) {
+			byte[] holder = new byte[Math.max(block.length * 2, length + count)];
+
+			System.arraycopy(block, 0, holder, 0, length);
+
+			block = holder;
+		}
+
+		System.arraycopy(bytes, offset, block, length, count);
+
+		length += count;
+	}
+
+	/**
+	 * Marks the end of a record in the data written so far, cutting a member
+	 * there if the block size has been reached.
+	 */
+	public void endRecord() throws IOException {
+		checkClosed();
+
+		if (length >= blockSize) {
+			cutMember();
+		}
+
+		writeFinished(false);
+	}
+
+	/**
+	 * Deflates everything written so far as a member, however short.
+	 */
+	private void cutMember() throws IOException {
+		if (length == 0) {
+			return;
+		}
+
+		final byte[] data = block;
+		final int size = length;
+		final int memberLevel = level;
+
+		block = new byte[blockSize + 1024];
+		length = 0;
+
+		if (pending.size() >= maxPending) {
+			out.write(await(pending.removeFirst()));
+		}
+
+		pending.addLast(getExecutor().submit(new Callable<byte[]>() {
+			public byte[] call() {
+				return deflate(data, size, memberLevel);
+			}
+		}));
+	}
+
+	/**
+	 * Writes out the members that are done, or all of them, in order.
+	 */
+	private void writeFinished(boolean all) throws IOException {
+		while (!pending.isEmpty() && (all || pending.peekFirst().isDone())) {
+			out.write(await(pending.removeFirst()));
+		}
+	}
+
+	private static byte[] await(Future<byte[]> member) throws IOException {
+		try {
+			return member.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException(
+					"Interrupted while deflating gzip data.");
+		} catch (ExecutionException ex) {
+			throw new IOException(ex.getCause());
+		}
+	}
+
+	/**
+	 * Deflates data into a complete gzip member.
+	 */
+	static byte[] deflate(byte[] data, int size, int level) {
+		Deflater deflater = new Deflater(level, true);
+		byte[] member = new byte[HEADER_SIZE + size + (size >> 3) + 64
+				+ TRAILER_SIZE];
+		int count = HEADER_SIZE;
+
+		try {
+			deflater.setInput(data, 0, size);
+			deflater.finish();
+
+			while (!deflater.finished()) {
+				if (member.length - count < TRAILER_SIZE + 64) {
+					byte[] holder = new byte[member.length * 2];
+
+					System.arraycopy(member, 0, holder, 0, count);
+
+					member = holder;
+				}
+
+				count += deflater.deflate(member, count, member.length - count
+						- TRAILER_SIZE);
+			}
+		} finally {
+			deflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(data, 0, size);
+
+		writeInt(member, count, (int) crc.getValue());
+		writeInt(member, count + 4, size);
+		count += TRAILER_SIZE;
+
+		int start = 0;
+
+		// gzip magic number, deflate, modification time 0, unknown system
+		member[0] = (byte) 0x1f;
+		member[1] = (byte) 0x8b;
+		member[2] = 8;
+		member[9] = (byte) 0xff;
+
+		if (count <= MAX_MEMBER_SIZE) {
+			// FEXTRA, with the BC subfield holding the member size - 1
+			member[3] = 4;
+			member[10] = 6;
+			member[11] = 0;
+			member[12] = 'B';
+			member[13] = 'C';
+			member[14] = 2;
+			member[15] = 0;
+			member[16] = (byte) (count - 1);
+			member[17] = (byte) ((count - 1) >> 8);
+		} else {
+			// too big to record its size, so move the plain header up to
+			// the deflate data
+			start = HEADER_SIZE - 10;
+
+			System.arraycopy(member, 0, member, start, 10);
+		}
+
+		byte[] result = new byte[count - start];
+
+		System.arraycopy(member, start, result, 0, result.length);
+
+		return result;
+	}
+
+	private static void writeInt(byte[] buffer, int offset, int value) {
+		buffer[offset] = (byte) value;
+		buffer[offset + 1] = (byte) (value >> 8);
+		buffer[offset + 2] = (byte) (value >> 16);
+		buffer[offset + 3] = (byte) (value >> 24);
+	}
+
+	/**
+	 * Writes out the members that are done, without cutting a new one.
+	 */
+	public void flush() throws IOException {
+		checkClosed();
+
+		writeFinished(false);
+
+		out.flush();
+	}
+
+	/**
+	 * Cuts a member from everything written so far and waits for every
+	 * member to be written out.
+	 */
+	public void finishMembers() throws IOException {
+		checkClosed();
+
+		cutMember();
+		writeFinished(true);
+
+		out.flush();
+	}
+
+	public void close() throws IOException {
+		if (!closed) {
+			try {
+				cutMember();
+				writeFinished(true);
+
+				// the empty member bgzip ends its files with
+				out.write(deflate(new byte[0], 0, level));
+			} finally {
+				closed = true;
+
+				for (Future<byte[]> member : pending) {
+					member.cancel(false);
+				}
+
+				out.close();
+			}
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+}
@@ -0,0 +1,294 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Wraps a {@link java.io.Reader Reader} and fills buffers from it on a
+ * background thread, so reading from the source overlaps with parsing.&nbsp;At
+ * most a fixed number of buffers are ever in flight; the background thread
+ * waits for the parser to hand one back before reading any further.
+ * <p>
+ * Only the background thread reads the source, so it's also the one that
+ * closes it, once any read in progress has returned.
+ */
+final class ReadAheadReader extends Reader {
+	// handed to the background thread to wake it when stopping
+	private static final char[] STOP = new char[0];
+
+	private Reader source;
+
+	// filled buffers waiting to be parsed, in read order
+	private ArrayBlockingQueue<Chunk> filled;
+
+	// empty buffers the background thread can read into
+	private ArrayBlockingQueue<char[]> free;
+
+	private Chunk current = null;
+
+	private int position = 0;
+
+	private volatile boolean closed = false;
+
+	// guarded by this: whether the source is to be closed, whether it has
+	// been, and whether the background thread is inside a read of it
+	private boolean closeSource = false;
+
+	private boolean sourceClosed = false;
+
+	private boolean reading = false;
+
+	private Thread worker;
+
+	public ReadAheadReader(Reader source, int bufferCount, int bufferSize) {
+		this.source = source;
+
+		filled = new ArrayBlockingQueue<Chunk>(bufferCount + 1);
+		free = new ArrayBlockingQueue<char[]>(bufferCount + 1);
+
+		for (int i = 0; i < bufferCount; i++) {
+			free.add(new char[bufferSize]);
+		}
+
+		worker = new Thread(new Runnable() {
+			public void run() {
+				fill();
+			}
+		}, "javacsv-read-ahead");
+		worker.setDaemon(true);
+		worker.start();
+	}
+
+	private void fill() {
+		try {
+			while (!closed) {
+				char[] buffer = free.take();
+
+				if (buffer == STOP) {
+					return;
+				}
+
+				synchronized (this) {
+					if (closed) {
+						return;
+					}
+
+					reading = true;
+				}
+
+				int count = -1;
+				IOException failure = null;
+
+				try {
+					count = source.read(buffer, 0, buffer.length);
+				} catch (IOException ex) {
+					failure = ex;
+				} catch (RuntimeException ex) {
+					failure = new IOException(ex);
+				}
+
+				// done with the source before anything is handed over, so a
+				// close() prompted by it can close the source right away
+				synchronized (this) {
+					reading = false;
+
+					notifyAll();
+				}
+
+				if (failure != null) {
+					filled.put(new Chunk(null, -1, failure));
+
+					return;
+				}
+
+				if (closed) {
+					return;
+				}
+
+				// a zero length read isn't the end of the data, just try
+				// again with the same buffer
+				if (count == 0) {
+					free.put(buffer);
+				} else {
+					filled.put(new Chunk(buffer, count, null));
+
+					if (count == -1) {
+						return;
+					}
+				}
+			}
+		} catch (InterruptedException ex) {
+			// nothing interrupts this thread but the runtime shutting down
+		} catch (RuntimeException ex) {
+			filled.offer(new Chunk(null, -1, new IOException(ex)));
+		} finally {
+			finish();
+		}
+	}
+
+	private void finish() {
+		boolean closing;
+
+		synchronized (this) {
+			closing = closeSource && !sourceClosed;
+
+			if (closing) {
+				sourceClosed = true;
+			}
+		}
+
+		if (closing) {
+			try {
+				source.close();
+			} catch (IOException e) {
+				// nobody is left to report it to
+			}
+		}
+	}
+
+	public int read(char[] buffer, int offset, int length) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed.");
+		}
+
+		if (length == 0) {
+			return 0;
+		}
+
+		if (current == null || (current.Count > -1 && position == current.Count)) {
+			if (current != null) {
+				free.offer(current.Buffer);
+			}
+
+			try {
+				current = filled.take();
+			} catch (InterruptedException ex) {
+				current = null;
+
+				throw new InterruptedIOException(
+						"Interrupted while waiting for read ahead data.");
+			}
+
+			position = 0;
+		}
+
+		// once the end of the data or an error has been reached, keep
+		// reporting it on every call
+		if (current.Error != null) {
+			throw current.Error;
+		}
+
+		if (current.Count == -1) {
+			return -1;
+		}
+
+		int count = Math.min(length, current.Count - position);
+
+		System.arraycopy(current.Buffer, position, buffer, offset, count);
+
+		position += count;
+
+		return count;
+	}
+
+	/**
+	 * Stops reading ahead and closes the source, right away unless the
+	 * background thread is reading it, otherwise as soon as that read
+	 * returns.
+	 */
+	public void close() throws IOException {
+		boolean closing;
+
+		signalStop();
+
+		synchronized (this) {
+			if (closeSource) {
+				return;
+			}
+
+			closeSource = true;
+			closing = !reading && !sourceClosed;
+
+			if (closing) {
+				sourceClosed = true;
+			}
+		}
+
+		if (closing) {
+			source.close();
+		}
+	}
+
+	/**
+	 * Stops reading ahead without closing the source, so the source is left
+	 * to its owner.&nbsp;A read of the source already in progress finishes
+	 * on the background thread, but its data is dropped.
+	 */
+	public void stop() {
+		signalStop();
+	}
+
+	private void signalStop() {
+		if (!closed) {
+			closed = true;
+
+			// there is always room for it, and it wakes the thread if it's
+			// waiting for a buffer
+			free.offer(STOP);
+		}
+	}
+
+	/**
+	 * Stops reading ahead once the owner of a source it doesn't close has
+	 * been garbage collected without being closed, leaving the source open.
+	 */
+	static final class Stopper implements Runnable {
+		public volatile ReadAheadReader Reader;
+
+		public void run() {
+			ReadAheadReader reader = Reader;
+
+			Reader = null;
+
+			if (reader != null) {
+				reader.stop();
+			}
+		}
+	}
+
+	private static class Chunk {
+		public char[] Buffer;
+
+		public int Count;
+
+		public IOException Error;
+
+		public Chunk(char[] buffer, int count, IOException error) {
+			Buffer = buffer;
+			Count = count;
+			Error = error;
+		}
+	}
+}
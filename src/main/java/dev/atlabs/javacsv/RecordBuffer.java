@@ -0,0 +1,54 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Writer;
+
+/**
+ * Collects formatted records in memory, so they can be formatted on one
+ * thread and written out on another.
+ */
+final class RecordBuffer extends Writer {
+	public char[] Chars = new char[256];
+
+	public int Length = 0;
+
+	public void write(char[] data, int offset, int length) {
+		if (Length + length > Chars.length) {
+			char[] holder = new char[Math.max(Chars.length * 2, Length
+					+ length)];
+
+			System.arraycopy(Chars, 0, holder, 0, Length);
+
+			Chars = holder;
+		}
+
+		System.arraycopy(data, offset, Chars, Length, length);
+
+		Length += length;
+	}
+
+	public void flush() {
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Closeable;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Runs a cleanup action once an object has been garbage collected, using
+ * java.lang.ref.Cleaner when the runtime has it, and a phantom reference
+ * queue drained by a daemon thread otherwise.&nbsp;Unlike a finalizer, this
+ * doesn't delay collecting the object, but the action must not refer to the
+ * object it cleans up after.
+ */
+final class ResourceCleaner {
+	private static Object cleaner = null;
+
+	private static Method register = null;
+
+	private static ReferenceQueue<Object> queue = null;
+
+	// keeps the phantom references reachable until they are enqueued
+	private static Set<Reference<Object>> references = null;
+
+	static {
+		try {
+			Class<?> cleanerClass = Class.forName("java.lang.ref.Cleaner");
+
+			cleaner = cleanerClass.getMethod("create").invoke(null);
+			register = cleanerClass.getMethod("register", Object.class,
+					Runnable.class);
+		} catch (Exception ex) {
+			cleaner = null;
+		}
+	}
+
+	private ResourceCleaner() {
+	}
+
+	/**
+	 * Registers an action to run once the owner has been garbage collected.
+	 */
+	public static void register(Object owner, Runnable action) {
+		if (cleaner != null) {
+			try {
+				register.invoke(cleaner, owner, action);
+
+				return;
+			} catch (Exception ex) {
+				// fall back to the reference queue below
+			}
+		}
+
+		synchronized (ResourceCleaner.class) {
+			if (queue == null) {
+				queue = new ReferenceQueue<Object>();
+				references = Collections
+						.synchronizedSet(new HashSet<Reference<Object>>());
+
+				Thread thread = new Thread("javacsv-cleaner") {
+					public void run() {
+						while (true) {
+							try {
+								Cleanup cleanup = (Cleanup) queue.remove();
+
+								references.remove(cleanup);
+
+								cleanup.action.run();
+							} catch (InterruptedException ex) {
+								return;
+							} catch (RuntimeException ex) {
+								// keep cleaning up after other objects
+							}
+						}
+					}
+				};
+
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			references.add(new Cleanup(owner, action, queue));
+		}
+	}
+
+	private static class Cleanup extends PhantomReference<Object> {
+		private Runnable action;
+
+		public Cleanup(Object owner, Runnable action,
+				ReferenceQueue<Object> queue) {
+			super(owner, queue);
+
+			this.action = action;
+		}
+	}
+
+	/**
+	 * Closes a stream once, either when its owner is closed or when the
+	 * owner is garbage collected without being closed, first stopping the
+	 * thread writing to it, if any.
+	 */
+	static final class StreamCloser implements Runnable {
+		public volatile Closeable Stream;
+
+		public volatile AsyncSink Sink;
+
+		public StreamCloser(Closeable stream) {
+			Stream = stream;
+		}
+
+		public void run() {
+			AsyncSink sink = Sink;
+			Closeable stream = Stream;
+
+			Sink = null;
+			Stream = null;
+
+			if (sink != null) {
+				try {
+					sink.stop();
+				} catch (Exception e) {
+					// just eat the exception
+				}
+			}
+
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (Exception e) {
+					// just eat the exception
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,696 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Writes records to a series of files, moving on to a new file, or
+ * segment, once the current one holds a number of bytes or records, or has
+ * been open for a length of time.&nbsp;Each segment starts with the header
+ * row, if one is set, and is named after the file name given, with its
+ * number before the extension, so "events.csv" is written as
+ * "events.000001.csv", "events.000002.csv" and so on.&nbsp;Existing files
+ * with those names are overwritten.
+ * <p>
+ * Opening, closing and compressing segments happen on a background thread,
+ * so the thread writing records doesn't wait on them: the next segment is
+ * opened while the current one is written, and a full segment is closed,
+ * and gzip compressed if asked for, after writing has moved on.&nbsp;An
+ * error on the background thread is thrown from the next call that writes,
+ * flushes, rotates or closes.&nbsp;Limits are checked as each record is written,
+ * and a record is never split across segments.
+ */
+public class RollingCsvWriter implements Closeable {
+	private String fileName;
+
+	private CsvDialect dialect;
+
+	private Charset charset;
+
+	private String[] headers = null;
+
+	private long maxBytes = 0;
+
+	private long maxRecords = 0;
+
+	private long maxAge = 0;
+
+	private boolean compress = false;
+
+	private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+	// formats each record once, so its size is known before it's written
+	private RecordBuffer record = new RecordBuffer();
+
+	private CsvWriter formatter;
+
+	private ByteCounter byteCounter;
+
+	private CsvWriter writer = null;
+
+	private int segment = 0;
+
+	private long segmentBytes = 0;
+
+	private long segmentRecords = 0;
+
+	private long segmentStart = 0;
+
+	private Future<FileChannel> nextChannel = null;
+
+	private ExecutorService executor;
+
+	private volatile IOException error = null;
+
+	private boolean closed = false;
+
+	/**
+	 * Creates a {@link RollingCsvWriter RollingCsvWriter} object writing
+	 * segments of a file.
+	 *
+	 * @param fileName
+	 *            The path to the file the segments are named after.
+	 * @param delimiter
+	 *            The character to use as the column delimiter.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            writing the data.
+	 */
+	public RollingCsvWriter(String fileName, char delimiter, Charset charset) {
+		this(fileName, CsvDialect.DEFAULT.withDelimiter(delimiter), charset);
+	}
+
+	/**
+	 * Creates a {@link RollingCsvWriter RollingCsvWriter} object writing
+	 * segments of a file with the settings of a dialect.
+	 *
+	 * @param fileName
+	 *            The path to the file the segments are named after.
+	 * @param dialect
+	 *            The settings to write the data with.
+	 * @param charset
+	 *            The {@link java.nio.charset.Charset Charset} to use while
+	 *            writing the data.
+	 */
+	public RollingCsvWriter(String fileName, CsvDialect dialect,
+			Charset charset) {
+		if (fileName == null) {
+			throw new IllegalArgumentException(
+					"Parameter fileName can not be null.");
+		}
+
+		if (dialect == null) {
+			throw new IllegalArgumentException(
+					"Parameter dialect can not be null.");
+		}
+
+		if (charset == null) {
+			throw new IllegalArgumentException(
+					"Parameter charset can not be null.");
+		}
+
+		this.fileName = fileName;
+		this.dialect = dialect;
+		this.charset = charset;
+
+		formatter = new CsvWriter(record, dialect);
+		formatter.setBufferSize(StaticSettings.FORMAT_BUFFER_SIZE);
+
+		// hand over every record as soon as it ends
+		formatter.setFlushThreshold(1);
+
+		byteCounter = new ByteCounter(charset);
+
+		executor = createExecutor();
+
+		// a writer that is never closed still lets its thread go
+		ResourceCleaner.register(this, new ExecutorStopper(executor));
+	}
+
+	/**
+	 * Creates the background thread's executor, in a static method so the
+	 * thread doesn't keep the writer from being garbage collected.
+	 */
+	private static ExecutorService createExecutor() {
+		return Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "javacsv-roller");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Gets the header row written at the top of each segment.
+	 *
+	 * @return The header row, or null if none is written.
+	 */
+	public String[] getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Sets the header row written at the top of each segment, from the next
+	 * segment started.&nbsp;Default is null, which writes no header row.
+	 *
+	 * @param headers
+	 *            The header row, or null to write none.
+	 */
+	public void setHeaders(String[] headers) {
+		this.headers = headers;
+	}
+
+	/**
+	 * Gets the number of bytes after which a new segment is started.
+	 *
+	 * @return The largest size of a segment, in bytes, or 0 for no limit.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Sets the number of bytes after which a new segment is started.&nbsp;A
+	 * record that would take a segment past this size starts a new one
+	 * instead, unless it's the first record of the segment.&nbsp;Default is
+	 * 0, for no limit.
+	 *
+	 * @param maxBytes
+	 *            The largest size of a segment, in bytes, or 0 for no limit.
+	 */
+	public void setMaxBytes(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException(
+					"Parameter maxBytes can not be negative.");
+		}
+
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * Gets the number of records after which a new segment is started.
+	 *
+	 * @return The most records in a segment, or 0 for no limit.
+	 */
+	public long getMaxRecords() {
+		return maxRecords;
+	}
+
+	/**
+	 * Sets the number of records after which a new segment is started, not
+	 * counting the header row.&nbsp;Default is 0, for no limit.
+	 *
+	 * @param maxRecords
+	 *            The most records in a segment, or 0 for no limit.
+	 */
+	public void setMaxRecords(long maxRecords) {
+		if (maxRecords < 0) {
+			throw new IllegalArgumentException(
+					"Parameter maxRecords can not be negative.");
+		}
+
+		this.maxRecords = maxRecords;
+	}
+
+	/**
+	 * Gets how many milliseconds a segment is written to before a new one is
+	 * started.
+	 *
+	 * @return How many milliseconds a segment is written to, or 0 for no
+	 *         limit.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * Sets how many milliseconds a segment is written to before a new one is
+	 * started.&nbsp;The age is checked when a record is written, so a
+	 * segment with no records written to it stays open.&nbsp;Default is 0,
+	 * for no limit.
+	 *
+	 * @param maxAge
+	 *            How many milliseconds a segment is written to, or 0 for no
+	 *            limit.
+	 */
+	public void setMaxAge(long maxAge) {
+		if (maxAge < 0) {
+			throw new IllegalArgumentException(
+					"Parameter maxAge can not be negative.");
+		}
+
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * Gets whether full segments are gzip compressed.
+	 *
+	 * @return Whether full segments are gzip compressed.
+	 */
+	public boolean getCompress() {
+		return compress;
+	}
+
+	/**
+	 * Sets whether to gzip compress each segment on the background thread
+	 * once it's full, replacing it with a file of the same name ending in
+	 * ".gz".&nbsp;The file is written the way {@link CsvWriter#setUseGzip
+	 * CsvWriter.setUseGzip()} writes it, so it can be read back in parallel
+	 * by a {@link CsvReader CsvReader}.&nbsp;Default is false.
+	 *
+	 * @param compress
+	 *            Whether to compress full segments.
+	 */
+	public void setCompress(boolean compress) {
+		this.compress = compress;
+	}
+
+	/**
+	 * Gets the level segments are compressed with.
+	 *
+	 * @return The compression level.
+	 */
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Sets the level segments are compressed with, from 0 to 9, or -1 for
+	 * the deflater's default.&nbsp;Default is -1.
+	 *
+	 * @param compressionLevel
+	 *            The compression level.
+	 */
+	public void setCompressionLevel(int compressionLevel) {
+		if (compressionLevel < Deflater.DEFAULT_COMPRESSION
+				|| compressionLevel > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException(
+					"Parameter compressionLevel must be between -1 and 9.");
+		}
+
+		this.compressionLevel = compressionLevel;
+	}
+
+	/**
+	 * Gets the name of the segment being written.
+	 *
+	 * @return The name of the current segment, or null before the first
+	 *         record is written.
+	 */
+	public String getCurrentFileName() {
+		return writer == null ? null : getSegmentName(segment);
+	}
+
+	/**
+	 * Gets the name of a segment.
+	 *
+	 * @param number
+	 *            The number of the segment, from 1.
+	 * @return The name of the segment's file, before any compression.
+	 */
+	public String getSegmentName(int number) {
+		String digits = String.valueOf(number);
+
+		while (digits.length() < 6) {
+			digits = "0" + digits;
+		}
+
+		int separator = Math.max(fileName.lastIndexOf('/'), fileName
+				.lastIndexOf(File.separatorChar));
+		int dot = fileName.lastIndexOf('.');
+
+		if (dot <= separator + 1) {
+			return fileName + "." + digits;
+		}
+
+		return fileName.substring(0, dot) + "." + digits
+				+ fileName.substring(dot);
+	}
+
+	/**
+	 * Writes a new record, starting a new segment first if a limit has been
+	 * reached.
+	 *
+	 * @param values
+	 *            Values to be written.
+	 * @param preserveSpaces
+	 *            Whether to preserve leading and trailing whitespace in
+	 *            column data.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or on the background thread.
+	 */
+	public void writeRecord(String[] values, boolean preserveSpaces)
+			throws IOException {
+		checkClosed();
+		checkError();
+
+		if (values == null || values.length == 0) {
+			return;
+		}
+
+		format(values, preserveSpaces);
+
+		long bytes = byteCounter.count(record.Chars, 0, record.Length);
+
+		if (writer == null) {
+			startSegment();
+		} else if (segmentRecords > 0
+				&& ((maxRecords > 0 && segmentRecords >= maxRecords)
+						|| (maxBytes > 0 && segmentBytes + bytes > maxBytes) || (maxAge > 0 && System
+						.currentTimeMillis()
+						- segmentStart >= maxAge))) {
+			rotate();
+		}
+
+		writer.writeRaw(record.Chars, 0, record.Length);
+
+		segmentBytes += bytes;
+		segmentRecords++;
+	}
+
+	/**
+	 * Writes a new record, starting a new segment first if a limit has been
+	 * reached.&nbsp;Does not preserve leading and trailing whitespace in
+	 * column data.
+	 *
+	 * @param values
+	 *            Values to be written.
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or on the background thread.
+	 */
+	public void writeRecord(String[] values) throws IOException {
+		writeRecord(values, false);
+	}
+
+	private void format(String[] values, boolean preserveSpaces)
+			throws IOException {
+		record.Length = 0;
+		formatter.writeRecord(values, preserveSpaces);
+	}
+
+	/**
+	 * Closes the current segment, if it holds any records, and starts the
+	 * next one.
+	 *
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or on the background thread.
+	 */
+	public void rotate() throws IOException {
+		checkClosed();
+		checkError();
+
+		if (writer == null || segmentRecords == 0) {
+			return;
+		}
+
+		final CsvWriter full = writer;
+		final int number = segment;
+
+		writer = null;
+
+		executor.submit(new Runnable() {
+			public void run() {
+				finishSegment(full, number);
+			}
+		});
+
+		startSegment();
+	}
+
+	private void startSegment() throws IOException {
+		segment++;
+
+		FileChannel channel;
+
+		if (nextChannel != null) {
+			channel = await(nextChannel);
+			nextChannel = null;
+		} else {
+			channel = open(getSegmentName(segment));
+		}
+
+		writer = new CsvWriter(channel, dialect.getDelimiter(), charset);
+		writer.setDialect(dialect);
+
+		segmentBytes = 0;
+		segmentRecords = 0;
+		segmentStart = System.currentTimeMillis();
+
+		if (headers != null) {
+			RecordBuffer header = new RecordBuffer();
+			CsvWriter headerFormatter = new CsvWriter(header, dialect);
+
+			headerFormatter.writeRecord(headers, true);
+			headerFormatter.flush();
+
+			writer.writeRaw(header.Chars, 0, header.Length);
+
+			segmentBytes = byteCounter.count(header.Chars, 0, header.Length);
+		}
+
+		// open the segment after this one while this one is written
+		final String next = getSegmentName(segment + 1);
+
+		nextChannel = executor.submit(new Callable<FileChannel>() {
+			public FileChannel call() throws IOException {
+				return open(next);
+			}
+		});
+	}
+
+	private static FileChannel open(String name) throws IOException {
+		return FileChannel.open(Paths.get(name), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	/**
+	 * Closes a full segment, and compresses it, on the background thread.
+	 */
+	private void finishSegment(CsvWriter full, int number) {
+		try {
+			// close() doesn't report errors
+			full.flush();
+			full.close();
+
+			if (compress) {
+				compress(getSegmentName(number));
+			}
+		} catch (IOException ex) {
+			if (error == null) {
+				error = ex;
+			}
+		} finally {
+			full.close();
+		}
+	}
+
+	private void compress(String name) throws IOException {
+		InputStream in = new FileInputStream(name);
+
+		try {
+			ParallelGzipOutputStream out = new ParallelGzipOutputStream(
+					new FileOutputStream(name + ".gz"),
+					StaticSettings.GZIP_BLOCK_SIZE, compressionLevel);
+
+			try {
+				byte[] data = new byte[StaticSettings.GZIP_BLOCK_SIZE];
+				int count;
+
+				while ((count = in.read(data)) != -1) {
+					out.write(data, 0, count);
+
+					// members don't need to start at records to be read back
+					out.endRecord();
+				}
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+
+		if (!new File(name).delete()) {
+			throw new IOException("Could not delete " + name
+					+ " after compressing it.");
+		}
+	}
+
+	/**
+	 * Flushes the current segment to its file.
+	 *
+	 * @exception IOException
+	 *                Thrown if an error occurs while writing data to the
+	 *                destination stream, now or on the background thread.
+	 */
+	public void flush() throws IOException {
+		checkClosed();
+		checkError();
+
+		if (writer != null) {
+			writer.flush();
+		}
+	}
+
+	/**
+	 * Closes the current segment and waits for the background thread to
+	 * finish closing and compressing segments.&nbsp;The segment opened ahead
+	 * of time is deleted.
+	 *
+	 * @exception IOException
+	 *                Thrown if an error occurred on the background thread,
+	 *                including while closing or compressing the last
+	 *                segment.
+	 */
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+
+			if (writer != null) {
+				final CsvWriter last = writer;
+				final int number = segment;
+
+				writer = null;
+
+				if (segmentRecords > 0) {
+					executor.submit(new Runnable() {
+						public void run() {
+							finishSegment(last, number);
+						}
+					});
+				} else {
+					last.close();
+				}
+			}
+
+			if (nextChannel != null) {
+				final Future<FileChannel> unused = nextChannel;
+				final String name = getSegmentName(segment + 1);
+
+				nextChannel = null;
+
+				executor.submit(new Runnable() {
+					public void run() {
+						try {
+							unused.get().close();
+						} catch (Exception e) {
+							// it may not have been opened
+						}
+
+						new File(name).delete();
+					}
+				});
+			}
+
+			executor.shutdown();
+
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+
+			formatter.close();
+
+			checkError();
+		}
+	}
+
+	private static FileChannel await(Future<FileChannel> channel)
+			throws IOException {
+		try {
+			return channel.get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+
+			throw new InterruptedIOException(
+					"Interrupted while waiting for a segment to be opened.");
+		} catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	private void checkError() throws IOException {
+		IOException failure = error;
+
+		if (failure != null) {
+			throw new IOException("Writing to the destination failed.",
+					failure);
+		}
+	}
+
+	private void checkClosed() throws IOException {
+		if (closed) {
+			throw new IOException(
+					"This instance of the RollingCsvWriter class has already been closed.");
+		}
+	}
+
+	/**
+	 * Shuts down the executor of a writer that was garbage collected without
+	 * being closed.
+	 */
+	private static class ExecutorStopper implements Runnable {
+		private ExecutorService executor;
+
+		public ExecutorStopper(ExecutorService executor) {
+			this.executor = executor;
+		}
+
+		public void run() {
+			executor.shutdown();
+		}
+	}
+
+	private class StaticSettings {
+		public static final int FORMAT_BUFFER_SIZE = 4 * 1024;
+
+		public static final int GZIP_BLOCK_SIZE = 60 * 1024;
+	}
+}
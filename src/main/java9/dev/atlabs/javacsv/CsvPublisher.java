@@ -0,0 +1,314 @@
+/*
+ * Java CSV is a stream based library for reading and writing
+ * CSV and other delimited data.
+ *
+ * Copyright (C) Bruce Dunwiddie bruce@csvreader.com
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301, USA
+ */
+package dev.atlabs.javacsv;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the records of a {@link CsvReader CsvReader} to a single
+ * {@link java.util.concurrent.Flow.Subscriber Flow.Subscriber}.&nbsp;Records
+ * are only parsed when the subscriber asks for them: each unit of demand
+ * reads exactly one record, or one batch of records, and nothing is read
+ * ahead of outstanding demand.&nbsp;The reader is closed when the stream
+ * completes, fails or is cancelled.
+ * <p>
+ * By default records are parsed on whichever thread calls
+ * {@link java.util.concurrent.Flow.Subscription#request request()}, so no
+ * extra thread or queue is involved.&nbsp;An {@link java.util.concurrent.Executor
+ * Executor} can be supplied to move parsing off the requesting thread.
+ * <p>
+ * This class needs Java 9 or later; the rest of the library runs on Java 8.
+ *
+ * @param <T>
+ *            The type of item published, either a record or a batch of
+ *            records.
+ */
+public class CsvPublisher<T> implements Flow.Publisher<T> {
+	private CsvReader reader;
+
+	private Source<T> source;
+
+	private Executor executor;
+
+	private AtomicBoolean subscribed = new AtomicBoolean(false);
+
+	private CsvPublisher(CsvReader reader, Source<T> source, Executor executor) {
+		if (reader == null) {
+			throw new IllegalArgumentException(
+					"Parameter reader can not be null.");
+		}
+
+		this.reader = reader;
+		this.source = source;
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates a publisher of the remaining records of a reader, one record
+	 * per item, parsed on the requesting thread.
+	 *
+	 * @param reader
+	 *            The reader to publish the records of.
+	 * @return The publisher.
+	 */
+	public static CsvPublisher<String[]> records(CsvReader reader) {
+		return records(reader, null);
+	}
+
+	/**
+	 * Creates a publisher of the remaining records of a reader, one record
+	 * per item.
+	 *
+	 * @param reader
+	 *            The reader to publish the records of.
+	 * @param executor
+	 *            The executor to parse records on, or null to parse on the
+	 *            requesting thread.
+	 * @return The publisher.
+	 */
+	public static CsvPublisher<String[]> records(final CsvReader reader,
+			Executor executor) {
+		return new CsvPublisher<String[]>(reader, new Source<String[]>() {
+			public String[] next() throws IOException {
+				return reader.readRecord() ? reader.getValues() : null;
+			}
+		}, executor);
+	}
+
+	/**
+	 * Creates a publisher of the remaining records of a reader, grouped into
+	 * batches and parsed on the requesting thread.
+	 *
+	 * @param reader
+	 *            The reader to publish the records of.
+	 * @param batchSize
+	 *            The number of records in each batch.
+	 * @return The publisher.
+	 */
+	public static CsvPublisher<List<String[]>> batches(CsvReader reader,
+			int batchSize) {
+		return batches(reader, batchSize, null);
+	}
+
+	/**
+	 * Creates a publisher of the remaining records of a reader, grouped into
+	 * batches.&nbsp;Every batch but the last holds exactly batchSize records.
+	 *
+	 * @param reader
+	 *            The reader to publish the records of.
+	 * @param batchSize
+	 *            The number of records in each batch.
+	 * @param executor
+	 *            The executor to parse records on, or null to parse on the
+	 *            requesting thread.
+	 * @return The publisher.
+	 */
+	public static CsvPublisher<List<String[]>> batches(final CsvReader reader,
+			final int batchSize, Executor executor) {
+		if (batchSize < 1) {
+			throw new IllegalArgumentException(
+					"Parameter batchSize must be at least 1.");
+		}
+
+		return new CsvPublisher<List<String[]>>(reader,
+				new Source<List<String[]>>() {
+					public List<String[]> next() throws IOException {
+						List<String[]> batch = new ArrayList<String[]>(
+								batchSize);
+
+						while (batch.size() < batchSize && reader.readRecord()) {
+							batch.add(reader.getValues());
+						}
+
+						return batch.size() > 0 ? batch : null;
+					}
+				}, executor);
+	}
+
+	/**
+	 * Subscribes to the records.&nbsp;A reader can only be read once, so only
+	 * the first subscriber receives records; any later subscriber is sent an
+	 * {@link IllegalStateException IllegalStateException}.
+	 *
+	 * @param subscriber
+	 *            The subscriber.
+	 */
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException(
+					"Parameter subscriber can not be null.");
+		}
+
+		if (!subscribed.compareAndSet(false, true)) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+				public void request(long n) {
+				}
+
+				public void cancel() {
+				}
+			});
+			subscriber.onError(new IllegalStateException(
+					"This CsvPublisher already has a subscriber."));
+
+			return;
+		}
+
+		subscriber.onSubscribe(new RecordSubscription(subscriber));
+	}
+
+	private class RecordSubscription implements Flow.Subscription, Runnable {
+		private Flow.Subscriber<? super T> subscriber;
+
+		private AtomicLong demand = new AtomicLong(0);
+
+		// counts calls to drain() that have not been handled yet, which
+		// keeps recursive request() calls from onNext from recursing
+		private AtomicInteger work = new AtomicInteger(0);
+
+		private volatile boolean cancelled = false;
+
+		private volatile Throwable invalidRequest = null;
+
+		private boolean done = false;
+
+		public RecordSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			if (n <= 0) {
+				invalidRequest = new IllegalArgumentException(
+						"Subscription request must be positive, was " + n
+								+ ".");
+			} else {
+				long current;
+				long updated;
+
+				do {
+					current = demand.get();
+					updated = current + n;
+
+					if (updated < 0) {
+						updated = Long.MAX_VALUE;
+					}
+				} while (!demand.compareAndSet(current, updated));
+			}
+
+			drain();
+		}
+
+		public void cancel() {
+			cancelled = true;
+
+			drain();
+		}
+
+		private void drain() {
+			if (work.getAndIncrement() == 0) {
+				if (executor == null) {
+					run();
+				} else {
+					executor.execute(this);
+				}
+			}
+		}
+
+		public void run() {
+			int missed = 1;
+
+			do {
+				if (!done) {
+					emit();
+				}
+
+				missed = work.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void emit() {
+			while (!cancelled) {
+				if (invalidRequest != null) {
+					finish();
+					subscriber.onError(invalidRequest);
+
+					return;
+				}
+
+				if (demand.get() == 0) {
+					return;
+				}
+
+				T item;
+
+				try {
+					item = source.next();
+				} catch (Throwable ex) {
+					finish();
+					subscriber.onError(ex);
+
+					return;
+				}
+
+				if (item == null) {
+					finish();
+					subscriber.onComplete();
+
+					return;
+				}
+
+				if (demand.get() != Long.MAX_VALUE) {
+					demand.decrementAndGet();
+				}
+
+				try {
+					subscriber.onNext(item);
+				} catch (RuntimeException ex) {
+					cancelled = true;
+					finish();
+
+					throw ex;
+				}
+			}
+
+			finish();
+		}
+
+		private void finish() {
+			done = true;
+
+			reader.close();
+		}
+	}
+
+	private interface Source<E> {
+		/**
+		 * @return The next item, or null at the end of the data.
+		 */
+		E next() throws IOException;
+	}
+}
@@ -2257,4 +2257,2354 @@ public class AllTests {
 
 		new File("temp.csv").delete();
 	}
+
+	@Test
+	public void test175() throws Exception {
+		CsvReader reader = CsvReader
+				.parse("id,name\r\n1,bob\r\n2,\u0436\u0443\u043a,extra\r\n3");
+		Assert.assertTrue(reader.readHeaders());
+
+		OffHeapCsvTable table = OffHeapCsvTable.load(reader);
+		reader.close();
+
+		Assert.assertEquals(3L, table.getRowCount());
+		Assert.assertEquals(3, table.getColumnCount());
+		Assert.assertEquals(1, table.getIndex("name"));
+		Assert.assertEquals("bob", table.get(0, "name"));
+		Assert.assertEquals("\u0436\u0443\u043a", table.get(1, 1));
+		Assert.assertEquals("extra", table.get(1, 2));
+		Assert.assertEquals("", table.get(0, 2));
+		Assert.assertEquals("3", table.get(2, 0));
+		Assert.assertEquals("", table.get(2, 1));
+		Assert.assertTrue(table.contentEquals(0, 1, "bob"));
+		Assert.assertFalse(table.contentEquals(0, 1, "bib"));
+		Assert.assertFalse(table.contentEquals(0, 1, null));
+		Assert.assertEquals("ob", table.getCharSequence(0, 1).subSequence(1, 3)
+				.toString());
+
+		CharSequence view = table.getCharSequence(0, 1);
+
+		table.close();
+
+		try {
+			view.charAt(0);
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+		}
+
+		try {
+			table.get(0, 0);
+			Assert.fail();
+		} catch (Exception ex) {
+			assertException(new IOException(
+					"This instance of the OffHeapCsvTable class has already been closed."),
+					ex);
+		}
+	}
+
+	@Test
+	public void test176() throws Exception {
+		StringBuilder data = new StringBuilder();
+
+		for (int i = 0; i < 5000; i++) {
+			data.append(i).append(",value").append(i).append("\n");
+		}
+
+		CsvReader reader = CsvReader.parse(data.toString());
+		OffHeapCsvTable table = OffHeapCsvTable.load(reader, 1024);
+		reader.close();
+
+		Assert.assertEquals(5000L, table.getRowCount());
+		Assert.assertNull(table.getHeaders());
+
+		for (int i = 0; i < 5000; i++) {
+			Assert.assertEquals("" + i, table.get(i, 0));
+			Assert.assertEquals("value" + i, table.get(i, 1));
+		}
+
+		table.close();
+	}
+
+	@Test
+	public void test177() throws Exception {
+		StringBuilder data = new StringBuilder();
+
+		for (int i = 0; i < 100000; i++) {
+			data.append(i).append(",\"value ").append(i).append("\"\r\n");
+		}
+
+		CsvReader reader = new CsvReader(new java.io.StringReader(data
+				.toString()));
+		reader.setReadAheadBuffers(2);
+		Assert.assertEquals(2, reader.getReadAheadBuffers());
+
+		int count = 0;
+
+		while (reader.readRecord()) {
+			Assert.assertEquals("" + count, reader.get(0));
+			Assert.assertEquals("value " + count, reader.get(1));
+			count++;
+		}
+
+		Assert.assertEquals(100000, count);
+
+		reader.close();
+	}
+
+	@Test
+	public void test178() throws Exception {
+		FailingReader fail = new FailingReader();
+
+		CsvReader reader = new CsvReader(fail);
+		reader.setReadAheadBuffers(1);
+
+		boolean exceptionThrown = false;
+
+		try {
+			reader.readRecord();
+		} catch (IOException ex) {
+			exceptionThrown = true;
+			Assert.assertEquals("Read failed.", ex.getMessage());
+			Assert.assertTrue(fail.DisposeCalled);
+		} finally {
+			reader.close();
+		}
+
+		Assert.assertTrue(exceptionThrown);
+	}
+
+	@Test
+	public void test179() throws Exception {
+		java.nio.file.Path directory = java.nio.file.Files
+				.createTempDirectory("javacsv");
+		java.nio.file.Path nested = java.nio.file.Files
+				.createDirectory(directory.resolve("nested"));
+
+		for (int i = 0; i < 20; i++) {
+			CsvWriter writer = new CsvWriter((i % 2 == 0 ? directory : nested)
+					.resolve("file" + i + ".csv").toString());
+			writer.writeRecord(new String[] { "file", "row" });
+
+			for (int j = 0; j < i * 10; j++) {
+				writer.writeRecord(new String[] { "" + i, "" + j });
+			}
+
+			writer.close();
+		}
+
+		java.nio.file.Files.createFile(directory.resolve("ignored.txt"));
+
+		CsvIngester ingester = CsvIngester.fromGlob(directory, "**.csv", ',',
+				Charset.forName("ISO-8859-1"));
+		ingester.setHasHeaders(true);
+		ingester.setConcurrency(3);
+		ingester.setBatchSize(7);
+		ingester.setQueueCapacity(2);
+
+		Assert.assertEquals(20, ingester.getFiles().size());
+
+		final int[] counts = new int[20];
+		final int[] lastBatches = new int[20];
+
+		ingester.ingest(new CsvIngester.Handler() {
+			public void handle(CsvIngester.Batch batch) {
+				Assert.assertEquals("row", batch.getHeaders()[1]);
+				Assert.assertTrue(batch.getRecords().size() <= 7);
+
+				for (String[] record : batch.getRecords()) {
+					int file = Integer.parseInt(record[0]);
+					Assert.assertEquals("" + counts[file], record[1]);
+					counts[file]++;
+				}
+
+				if (batch.isLastBatch()) {
+					int file = Integer.parseInt(batch.getFile().getFileName()
+							.toString().replaceAll("\\D", ""));
+					lastBatches[file]++;
+					Assert.assertEquals(counts[file], batch.getRecordCount());
+				}
+			}
+		});
+
+		for (int i = 0; i < 20; i++) {
+			Assert.assertEquals(i * 10, counts[i]);
+			Assert.assertEquals(1, lastBatches[i]);
+		}
+
+		java.util.List<java.nio.file.Path> missing = new ArrayList<java.nio.file.Path>(
+				ingester.getFiles());
+		missing.add(directory.resolve("missing.csv"));
+
+		boolean exceptionThrown = false;
+
+		try {
+			new CsvIngester(missing, ',', Charset.forName("ISO-8859-1"))
+					.ingest(new CsvIngester.Handler() {
+						public void handle(CsvIngester.Batch batch) {
+						}
+					});
+		} catch (IOException ex) {
+			exceptionThrown = true;
+			Assert.assertTrue(ex.getMessage().contains("missing.csv"));
+		}
+
+		Assert.assertTrue(exceptionThrown);
+
+		for (java.nio.file.Path file : ingester.getFiles()) {
+			java.nio.file.Files.delete(file);
+		}
+
+		java.nio.file.Files.delete(directory.resolve("ignored.txt"));
+		java.nio.file.Files.delete(nested);
+		java.nio.file.Files.delete(directory);
+	}
+
+	@Test
+	public void test180() throws Exception {
+		final CsvReader reader = CsvReader.parse("1,a\n2,b\n3,c\n4,d\n5,e");
+		final ArrayList<String> received = new ArrayList<String>();
+		final java.util.concurrent.Flow.Subscription[] subscription = new java.util.concurrent.Flow.Subscription[1];
+
+		CsvPublisher.records(reader).subscribe(
+				new java.util.concurrent.Flow.Subscriber<String[]>() {
+					public void onSubscribe(
+							java.util.concurrent.Flow.Subscription s) {
+						subscription[0] = s;
+					}
+
+					public void onNext(String[] item) {
+						received.add(item[0] + item[1]);
+					}
+
+					public void onError(Throwable throwable) {
+						received.add("error");
+					}
+
+					public void onComplete() {
+						received.add("complete");
+					}
+				});
+
+		Assert.assertEquals(0, received.size());
+		Assert.assertEquals(-1L, reader.getCurrentRecord());
+
+		subscription[0].request(2);
+		Assert.assertEquals("[1a, 2b]", received.toString());
+		Assert.assertEquals(1L, reader.getCurrentRecord());
+
+		subscription[0].request(1);
+		Assert.assertEquals("[1a, 2b, 3c]", received.toString());
+		Assert.assertEquals(2L, reader.getCurrentRecord());
+
+		subscription[0].cancel();
+
+		try {
+			reader.readRecord();
+			Assert.fail();
+		} catch (IOException ex) {
+			assertException(new IOException(
+					"This instance of the CsvReader class has already been closed."),
+					ex);
+		}
+
+		subscription[0].request(5);
+		Assert.assertEquals("[1a, 2b, 3c]", received.toString());
+	}
+
+	@Test
+	public void test181() throws Exception {
+		CsvReader reader = CsvReader.parse("1\n2\n3\n4\n5");
+		final ArrayList<Integer> sizes = new ArrayList<Integer>();
+		final boolean[] completed = new boolean[1];
+
+		CsvPublisher.batches(reader, 2).subscribe(
+				new java.util.concurrent.Flow.Subscriber<java.util.List<String[]>>() {
+					private java.util.concurrent.Flow.Subscription subscription;
+
+					public void onSubscribe(
+							java.util.concurrent.Flow.Subscription s) {
+						subscription = s;
+						subscription.request(1);
+					}
+
+					public void onNext(java.util.List<String[]> item) {
+						sizes.add(item.size());
+						subscription.request(1);
+					}
+
+					public void onError(Throwable throwable) {
+						Assert.fail(throwable.toString());
+					}
+
+					public void onComplete() {
+						completed[0] = true;
+					}
+				});
+
+		Assert.assertEquals("[2, 2, 1]", sizes.toString());
+		Assert.assertTrue(completed[0]);
+	}
+
+	private static String parseAll(CsvReader reader) throws IOException {
+		StringBuilder result = new StringBuilder();
+
+		while (reader.readRecord()) {
+			result.append(java.util.Arrays.toString(reader.getValues()));
+		}
+
+		reader.close();
+
+		return result.toString();
+	}
+
+	private static CsvPushParser createPushParser(final StringBuilder result,
+			int escapeMode, boolean useTextQualifier, boolean useComments) {
+		CsvPushParser parser = new CsvPushParser(
+				new CsvPushParser.RecordHandler() {
+					public void handleRecord(String[] values) {
+						result.append(java.util.Arrays.toString(values));
+					}
+				}, ',', Charset.forName("UTF-8"));
+		parser.setEscapeMode(escapeMode);
+		parser.setUseTextQualifier(useTextQualifier);
+		parser.setUseComments(useComments);
+		return parser;
+	}
+
+	@Test
+	public void test182() throws Exception {
+		String[] inputs = new String[] {
+				"1,2,3\r\n4,5,6\r\n",
+				"\"bob said, \"\"Hey!\"\"\",2, 3 \n\n\n x ,\"y\"junk,z",
+				"\"line\r\nbreak\",\"\"\r\n,\r\n\"open",
+				"# comment, here\r\na,b\n  # indented\nc,\"d\\\"e\",\"\\u0041\\x42\\101\\n\"",
+				"a\\,b,c\\\\d,\\te\\u00e9f\r\n\u20ac,\u00fc\u00f6",
+				" , ,\t\r\n\r\n,\n" };
+
+		for (int mode = 1; mode <= 2; mode++) {
+			for (int variant = 0; variant < 4; variant++) {
+				boolean useTextQualifier = variant % 2 == 0;
+				boolean useComments = variant / 2 == 1;
+
+				for (String input : inputs) {
+					CsvReader reader = CsvReader.parse(input);
+					reader.setEscapeMode(mode);
+					reader.setUseTextQualifier(useTextQualifier);
+					reader.setUseComments(useComments);
+					String expected = parseAll(reader);
+
+					byte[] bytes = input.getBytes("UTF-8");
+
+					for (int split = 0; split <= bytes.length; split++) {
+						StringBuilder result = new StringBuilder();
+						CsvPushParser parser = createPushParser(result, mode,
+								useTextQualifier, useComments);
+
+						parser.feed(ByteBuffer.wrap(bytes, 0, split));
+						parser.feed(ByteBuffer.wrap(bytes, split, bytes.length
+								- split));
+						parser.finish();
+
+						Assert.assertEquals(input + " split at " + split,
+								expected, result.toString());
+					}
+
+					StringBuilder result = new StringBuilder();
+					CsvPushParser parser = createPushParser(result, mode,
+							useTextQualifier, useComments);
+
+					for (int i = 0; i < input.length(); i++) {
+						parser.feed(input.substring(i, i + 1));
+					}
+
+					parser.finish();
+
+					Assert.assertEquals(input, expected, result.toString());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void test183() throws Exception {
+		final ArrayList<String> records = new ArrayList<String>();
+
+		CsvPushParser parser = new CsvPushParser(
+				new CsvPushParser.RecordHandler() {
+					public void handleRecord(String[] values) {
+						records.add(values[0] + "|" + values[1]);
+					}
+				});
+
+		parser.feed("a,\"b\r");
+		Assert.assertEquals(0, records.size());
+		parser.feed("\nc\"\r");
+		Assert.assertEquals("[a|b\r\nc]", records.toString());
+		parser.feed("\nd,e");
+		Assert.assertEquals(1, records.size());
+		parser.finish();
+		Assert.assertEquals("[a|b\r\nc, d|e]", records.toString());
+		Assert.assertEquals(2L, parser.getRecordCount());
+
+		try {
+			parser.feed("more");
+			Assert.fail();
+		} catch (IOException ex) {
+			assertException(new IOException(
+					"This instance of the CsvPushParser class has already been finished."),
+					ex);
+		}
+	}
+
+	private static void writeBgzfMember(java.io.OutputStream out, byte[] data)
+			throws IOException {
+		java.util.zip.Deflater deflater = new java.util.zip.Deflater(
+				java.util.zip.Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(data);
+		deflater.finish();
+
+		byte[] compressed = new byte[data.length + 1024];
+		int length = deflater.deflate(compressed);
+		deflater.end();
+
+		java.util.zip.CRC32 crc = new java.util.zip.CRC32();
+		crc.update(data);
+
+		int blockSize = 18 + length + 8 - 1;
+		int checksum = (int) crc.getValue();
+
+		out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0,
+				(byte) 0xff, 6, 0, 'B', 'C', 2, 0, (byte) blockSize,
+				(byte) (blockSize >> 8) });
+		out.write(compressed, 0, length);
+		out.write(new byte[] { (byte) checksum, (byte) (checksum >> 8),
+				(byte) (checksum >> 16), (byte) (checksum >> 24),
+				(byte) data.length, (byte) (data.length >> 8),
+				(byte) (data.length >> 16), (byte) (data.length >> 24) });
+	}
+
+	@Test
+	public void test184() throws Exception {
+		FileOutputStream out = new FileOutputStream("temp.csv.gz");
+
+		for (int i = 0; i < 50; i++) {
+			StringBuilder block = new StringBuilder();
+
+			for (int j = 0; j < 100; j++) {
+				block.append(i * 100 + j).append(",\"x\"\r\n");
+			}
+
+			writeBgzfMember(out, block.toString().getBytes("ISO-8859-1"));
+		}
+
+		// a plain member after the sized ones is inflated sequentially
+		java.util.zip.GZIPOutputStream gzip = new java.util.zip.GZIPOutputStream(
+				out);
+		gzip.write("5000,\"y\"\r\n".getBytes("ISO-8859-1"));
+		gzip.finish();
+
+		writeBgzfMember(out, "5001,\"z\"".getBytes("ISO-8859-1"));
+		writeBgzfMember(out, new byte[0]);
+		out.close();
+
+		CsvReader reader = new CsvReader("temp.csv.gz");
+
+		for (int i = 0; i < 5000; i++) {
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("" + i, reader.get(0));
+			Assert.assertEquals("x", reader.get(1));
+		}
+
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("y", reader.get(1));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("z", reader.get(1));
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		new File("temp.csv.gz").delete();
+	}
+
+
+	@Test
+	public void test185() throws Exception {
+		CsvWriter writer = new CsvWriter("temp.jcsv", '\t', Charset
+				.forName("UTF-8"));
+		writer.setUseBlockCompression(true);
+		writer.setCompressionBlockSize(1000);
+		writer.setRecordDelimiter('\n');
+		writer.writeRecord(new String[] { "id", "name" });
+
+		for (int i = 0; i < 2000; i++) {
+			writer.write("" + i);
+			writer.write(i % 7 == 0 ? "multi\nline\u20ac" : "value " + i);
+			writer.endRecord();
+
+			if (i == 1000) {
+				writer.writeComment("a comment");
+			}
+		}
+
+		writer.close();
+
+		CsvBlockFile file = new CsvBlockFile("temp.jcsv");
+		Assert.assertEquals('\t', file.getDelimiter());
+		Assert.assertEquals("UTF-8", file.getCharset().name());
+		Assert.assertEquals(2001L, file.getRecordCount());
+		Assert.assertTrue(file.getBlockCount() > 10);
+
+		CsvReader reader = file.openReader(1500);
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("1499", reader.get(0));
+		Assert.assertEquals("value 1499", reader.get(1));
+		reader.close();
+
+		reader = file.openReader(1);
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("0", reader.get(0));
+		Assert.assertEquals("multi\nline\u20ac", reader.get(1));
+		reader.close();
+
+		long records = 0;
+
+		for (int i = 0; i < file.getBlockCount(); i++) {
+			reader = file.openBlock(i);
+			reader.setUseComments(true);
+
+			long count = 0;
+
+			while (reader.readRecord()) {
+				if (count == 0 && i > 0) {
+					Assert.assertEquals("" + (file.getFirstRecord(i) - 1),
+							reader.get(0));
+				}
+
+				count++;
+			}
+
+			reader.close();
+
+			Assert.assertEquals(file.getBlockRecordCount(i), count);
+			records += count;
+		}
+
+		Assert.assertEquals(2001L, records);
+		file.close();
+
+		// a plain reader reads the blocks sequentially
+		reader = new CsvReader("temp.jcsv", '\t', Charset.forName("US-ASCII"));
+		reader.setUseComments(true);
+		Assert.assertTrue(reader.readHeaders());
+
+		for (int i = 0; i < 2000; i++) {
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("" + i, reader.get("id"));
+
+			if (i % 7 == 0) {
+				Assert.assertEquals("multi\nline\u20ac", reader.get("name"));
+			}
+		}
+
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		new File("temp.jcsv").delete();
+	}
+
+
+	@Test
+	public void test186() throws Exception {
+		final File file = new File("temp.csv");
+		file.delete();
+
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("a,1\nb,2\nc,".getBytes("ISO-8859-1"));
+		out.flush();
+
+		CsvReader reader = new CsvReader("temp.csv");
+		reader.setFollow(true);
+		reader.setFollowTimeout(200);
+
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a", reader.get(0));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("b", reader.get(0));
+
+		// the half written record is only returned once it's complete
+		final FileOutputStream appender = out;
+		Thread thread = new Thread() {
+			public void run() {
+				try {
+					Thread.sleep(300);
+					appender.write("3\n".getBytes("ISO-8859-1"));
+					appender.flush();
+				} catch (Exception ex) {
+					throw new RuntimeException(ex);
+				}
+			}
+		};
+		thread.start();
+
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("c", reader.get(0));
+		Assert.assertEquals("3", reader.get(1));
+		thread.join();
+
+		Assert.assertFalse(reader.readRecord());
+
+		out.write("d,4\n".getBytes("ISO-8859-1"));
+		out.flush();
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("d", reader.get(0));
+
+		// truncated, dropping the partial record
+		out.write("e,".getBytes("ISO-8859-1"));
+		out.flush();
+		out.close();
+		Thread.sleep(50);
+		out = new FileOutputStream(file);
+		out.write("x,9\n".getBytes("ISO-8859-1"));
+		out.close();
+
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("x", reader.get(0));
+		Assert.assertEquals("9", reader.get(1));
+
+		// rotated
+		File rotated = new File("temp.csv.1");
+		rotated.delete();
+		Assert.assertTrue(file.renameTo(rotated));
+		out = new FileOutputStream(file);
+		out.write("y,8\n".getBytes("ISO-8859-1"));
+		out.close();
+
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("y", reader.get(0));
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		file.delete();
+		rotated.delete();
+	}
+
+
+	@Test
+	public void test187() throws Exception {
+		Charset utf8 = Charset.forName("UTF-8");
+		CsvWriter writer = new CsvWriter("temp.csv", ',', utf8);
+		writer.setRecordDelimiter('\n');
+		writer.writeRecord(new String[] { "id", "name" });
+
+		for (int i = 0; i < 3000; i++) {
+			writer.write("" + i);
+			writer.write(i % 3 == 0 ? "\u00e9t\u00e9 \u20ac" + i
+					: "line\r\nbreak " + i);
+			writer.endRecord();
+		}
+
+		writer.close();
+
+		for (int stop = 1; stop < 3000; stop += 997) {
+			CsvReader reader = new CsvReader("temp.csv", ',', utf8);
+			Assert.assertTrue(reader.readHeaders());
+
+			for (int i = 0; i < stop; i++) {
+				Assert.assertTrue(reader.readRecord());
+			}
+
+			CsvCheckpoint checkpoint = reader.getCheckpoint();
+			Assert.assertEquals(stop - 1, checkpoint.getCurrentRecord());
+
+			java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+			java.io.ObjectOutputStream objects = new java.io.ObjectOutputStream(
+					bytes);
+			objects.writeObject(checkpoint);
+			objects.close();
+
+			checkpoint = (CsvCheckpoint) new java.io.ObjectInputStream(
+					new java.io.ByteArrayInputStream(bytes.toByteArray()))
+					.readObject();
+
+			CsvReader resumed = CsvReader.resume("temp.csv", checkpoint);
+
+			while (reader.readRecord()) {
+				Assert.assertTrue(resumed.readRecord());
+				Assert.assertEquals(reader.getCurrentRecord(), resumed
+						.getCurrentRecord());
+				Assert.assertEquals(reader.get("id"), resumed.get("id"));
+				Assert.assertEquals(reader.get("name"), resumed.get("name"));
+			}
+
+			Assert.assertFalse(resumed.readRecord());
+			reader.close();
+			resumed.close();
+		}
+
+		new File("temp.csv").delete();
+	}
+
+
+	@Test
+	public void test188() throws Exception {
+		StringBuilder data = new StringBuilder();
+		java.util.List<String> lines = new java.util.ArrayList<String>();
+
+		for (int i = 0; i < 200; i++) {
+			StringBuilder line = new StringBuilder();
+			line.append(i).append(",\"\u00e9");
+
+			for (int j = 0; j < (i * 37) % 1500; j++) {
+				line.append((char) ('a' + j % 26));
+			}
+
+			line.append("\"");
+			lines.add(line.toString());
+			data.append(line).append("\n");
+		}
+
+		FileOutputStream out = new FileOutputStream("temp.csv");
+		out.write(data.toString().getBytes("UTF-8"));
+		out.close();
+
+		CsvReader reader = new CsvReader("temp.csv", ',', Charset
+				.forName("UTF-8"));
+		long offset = 0;
+
+		for (int i = 0; i < 200; i++) {
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals(lines.get(i), reader.getRawRecordSequence()
+					.toString());
+			Assert.assertEquals(offset, reader.getRawRecordOffset());
+			Assert.assertEquals(lines.get(i), reader.getRawRecord());
+
+			offset += lines.get(i).getBytes("UTF-8").length + 1;
+		}
+
+		reader.close();
+		Assert.assertEquals(lines.get(199), reader.getRawRecord());
+
+		reader = CsvReader.parse("a,b\nc,d");
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals(-1L, reader.getRawRecordOffset());
+		Assert.assertTrue(reader.readRecord());
+		reader.close();
+		Assert.assertEquals("c,d", reader.getRawRecord());
+
+		new File("temp.csv").delete();
+	}
+
+
+	@Test
+	public void test189() throws Exception {
+		CsvReader reader = CsvReader.parse("h1,h2\r\n1,2\r\n3,4");
+		reader.setTrimWhitespace(false);
+		Assert.assertTrue(reader.readHeaders());
+		Assert.assertTrue(reader.readRecord());
+
+		reader.reset(new java.io.StringReader("a; b\n"));
+		Assert.assertEquals(0, reader.getHeaderCount());
+		Assert.assertEquals(-1L, reader.getCurrentRecord());
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a; b", reader.get(0));
+		Assert.assertEquals(0L, reader.getCurrentRecord());
+		Assert.assertFalse(reader.readRecord());
+
+		reader.reset(new ByteArrayInputStream(" x , y ".getBytes("UTF-8")),
+				Charset.forName("UTF-8"));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals(" x ", reader.get(0));
+		Assert.assertEquals(" y ", reader.get(1));
+		reader.close();
+
+		CsvReaderPool pool = new CsvReaderPool(';', 1);
+		CsvReader first = pool.acquire("a;b");
+		first.setTrimWhitespace(false);
+		Assert.assertTrue(first.readRecord());
+		Assert.assertEquals("b", first.get(1));
+		pool.release(first);
+		Assert.assertEquals(1, pool.getIdleCount());
+
+		CsvReader second = pool.acquire(" c ;d");
+		Assert.assertSame(first, second);
+		Assert.assertTrue(second.getTrimWhitespace());
+		Assert.assertTrue(second.readRecord());
+		Assert.assertEquals("c", second.get(0));
+
+		CsvReader third = pool.acquire("e;f");
+		Assert.assertNotSame(second, third);
+		pool.release(second);
+		pool.release(third);
+		Assert.assertEquals(1, pool.getIdleCount());
+
+		try (CsvReader closing = CsvReader.parse("1,2")) {
+			Assert.assertTrue(closing.readRecord());
+		}
+	}
+
+
+	@Test
+	public void test190() throws Exception {
+		String data = "a,\"b\"\"c\",d\n1,\"two\nlines\", 3 \n\nlast,row";
+
+		char[] padded = ("xx" + data + "yy").toCharArray();
+		byte[] bytes = ("xx" + data + "yy").getBytes("UTF-8");
+		ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+		direct.put(bytes, 2, bytes.length - 4);
+		direct.flip();
+
+		CsvReader[] readers = new CsvReader[] {
+				CsvReader.parse(data),
+				CsvReader.parse(new StringBuilder(data), ','),
+				CsvReader.parse(padded, 2, data.length(), ','),
+				CsvReader.parse(bytes, 2, bytes.length - 4, ',', Charset
+						.forName("UTF-8")),
+				CsvReader.parse(direct, ',', Charset.forName("UTF-8")) };
+
+		for (int i = 0; i < readers.length; i++) {
+			CsvReader reader = readers[i];
+
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("b\"c", reader.get(1));
+			Assert.assertEquals("a,\"b\"\"c\",d", reader.getRawRecord());
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("two\nlines", reader.get(1));
+			Assert.assertEquals("3", reader.get(2));
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("row", reader.get(1));
+			Assert.assertEquals("last,row", reader.getRawRecord());
+			Assert.assertFalse(reader.readRecord());
+			reader.close();
+		}
+
+		Assert.assertEquals(bytes.length - 4, direct.remaining());
+
+		// switching between in memory and stream sources
+		CsvReader reader = CsvReader.parse(padded, 2, 5, ',');
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a", reader.get(0));
+		Assert.assertEquals("b", reader.get(1));
+
+		CsvReader streamed = new CsvReader(new java.io.StringReader(new String(
+				padded, 2, 5)));
+		Assert.assertTrue(streamed.readRecord());
+		Assert.assertEquals(streamed.getRawRecord(), reader.getRawRecord());
+		Assert.assertEquals(streamed.get(1), reader.get(1));
+		streamed.close();
+
+		reader.reset(new java.io.StringReader("s,t"));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("t", reader.get(1));
+
+		reader.reset("u,v\nw");
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("v", reader.get(1));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("w", reader.get(0));
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		Assert.assertEquals('x', padded[0]);
+	}
+
+	@Test
+	public void test191() throws Exception {
+		CsvDialect dialect = CsvDialect.DEFAULT.withDelimiter(';')
+				.withTextQualifier('\'').withEscapeMode(
+						CsvWriter.ESCAPE_MODE_BACKSLASH).withRecordDelimiter(
+						'|');
+
+		Assert.assertEquals(',', CsvDialect.DEFAULT.getDelimiter());
+		Assert.assertEquals(';', dialect.getDelimiter());
+		Assert.assertEquals(dialect, CsvDialect.DEFAULT.withDelimiter(';')
+				.withTextQualifier('\'').withEscapeMode(
+						CsvWriter.ESCAPE_MODE_BACKSLASH).withRecordDelimiter(
+						'|'));
+		Assert.assertEquals(dialect.hashCode(), CsvDialect.DEFAULT
+				.withDelimiter(';').withTextQualifier('\'').withEscapeMode(
+						CsvWriter.ESCAPE_MODE_BACKSLASH).withRecordDelimiter(
+						'|').hashCode());
+		Assert.assertFalse(dialect.equals(CsvDialect.DEFAULT));
+
+		java.io.StringWriter buffer = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(buffer, dialect);
+		Assert.assertSame(dialect, writer.getDialect());
+		writer.write("a;b");
+		writer.write("it's");
+		writer.endRecord();
+		writer.write("c");
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals("'a;b';'it\\'s'|c|", buffer.toString());
+
+		CsvReader reader = new CsvReader(new java.io.StringReader(buffer
+				.toString()), dialect);
+		Assert.assertEquals(dialect, reader.getDialect());
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a;b", reader.get(0));
+		Assert.assertEquals("it's", reader.get(1));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("c", reader.get(0));
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		// changing a setting makes a new dialect
+		writer = new CsvWriter(new java.io.StringWriter(), dialect);
+		writer.setDelimiter('\t');
+		Assert.assertEquals(dialect.withDelimiter('\t'), writer.getDialect());
+		writer.close();
+
+		CsvReaderPool pool = new CsvReaderPool(dialect, 1);
+		reader = pool.acquire("x;'y;z'|w");
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("y;z", reader.get(1));
+		reader.setDelimiter(',');
+		pool.release(reader);
+		reader = pool.acquire("x;y");
+		Assert.assertEquals(dialect, reader.getDialect());
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("y", reader.get(1));
+		pool.release(reader);
+
+		try {
+			CsvDialect.DEFAULT.withEscapeMode(3);
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	@Test
+	public void test192() throws Exception {
+		java.io.StringWriter buffer = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(buffer, ',');
+		writer.setRecordDelimiter('\n');
+		writer.write("  plain  ");
+		writer.write(" spaced ", true);
+		writer.write("a\"b");
+		writer.write("x\ny");
+		writer.write("x\ry");
+		writer.write("");
+		writer.endRecord();
+		writer.write("#c");
+		writer.write("");
+		writer.endRecord();
+		writer.setEscapeMode(CsvWriter.ESCAPE_MODE_BACKSLASH);
+		writer.write("a\\b\"c");
+		writer.write("d\\e");
+		writer.endRecord();
+		writer.setUseTextQualifier(false);
+		writer.write("#a,b\\c");
+		writer.write("d\ne\rf");
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals("plain,\" spaced \",\"a\"\"b\",\"x\ny\",x\ry,\n"
+				+ "\"#c\",\n" + "\"a\\\\b\\\"c\",d\\\\e\n"
+				+ "\\#a\\,b\\\\c,d\\\ne\rf\n", buffer.toString());
+	}
+
+	@Test
+	public void test193() throws Exception {
+		final int[] calls = new int[1];
+		final StringBuilder sink = new StringBuilder();
+
+		java.io.Writer counting = new java.io.Writer() {
+			public void write(char[] cbuf, int off, int len) {
+				calls[0]++;
+				sink.append(cbuf, off, len);
+			}
+
+			public void write(String str, int off, int len) {
+				calls[0]++;
+				sink.append(str, off, off + len);
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+
+		CsvWriter writer = new CsvWriter(counting, ',');
+		writer.setRecordDelimiter('\n');
+		writer.setBufferSize(64);
+		writer.setFlushThreshold(20);
+
+		writer.write("1");
+		writer.write("two");
+		writer.endRecord();
+		Assert.assertEquals(0, calls[0]);
+
+		writer.write("a longer, qualified column");
+		writer.endRecord();
+		Assert.assertEquals(1, calls[0]);
+		Assert.assertEquals("1,two\n\"a longer, qualified column\"\n", sink
+				.toString());
+
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			large.append('x');
+		}
+
+		writer.write("y");
+		writer.write(large.toString());
+		writer.endRecord();
+		Assert.assertEquals(3, calls[0]);
+
+		writer.write("z");
+		writer.flush();
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals("1,two\n\"a longer, qualified column\"\ny,"
+				+ large + "\nz\n", sink.toString());
+
+		try {
+			writer = new CsvWriter(counting, ',');
+			writer.setBufferSize(0);
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+		}
+	}
+
+	@Test
+	public void test194() throws Exception {
+		java.io.StringWriter buffer = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(buffer, ',');
+		writer.setRecordDelimiter('\n');
+		writer.writeInt(0);
+		writer.writeInt(-42);
+		writer.writeInt(Integer.MIN_VALUE);
+		writer.writeLong(Long.MIN_VALUE);
+		writer.writeLong(Long.MAX_VALUE);
+		writer.endRecord();
+		writer.writeDouble(0.1);
+		writer.writeDouble(-1.5E-10);
+		writer.writeDouble(Double.NaN);
+		writer.writeBoolean(true);
+		writer.writeBoolean(false);
+		writer.endRecord();
+
+		char[] letters = "xx a,b yy".toCharArray();
+		writer.write(letters, 2, 5);
+		writer.write(letters, 2, 5, true);
+		writer.write(new StringBuilder("c\"d"));
+		writer.endRecord();
+
+		writer.setForceQualifier(true);
+		writer.writeInt(7);
+		writer.setForceQualifier(false);
+		writer.setDelimiter('.');
+		writer.writeDouble(2.5);
+		writer.writeInt(3);
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals("0,-42,-2147483648,-9223372036854775808,"
+				+ "9223372036854775807\n0.1,-1.5E-10,NaN,true,false\n"
+				+ "\"a,b\",\" a,b \",\"c\"\"d\"\n\"7\".\"2.5\".3\n", buffer
+				.toString());
+	}
+
+	@Test
+	public void test195() throws Exception {
+		StringBuilder data = new StringBuilder();
+		java.util.Random random = new java.util.Random(195);
+
+		for (int i = 0; i < 20000; i++) {
+			int kind = random.nextInt(10);
+
+			if (kind < 6) {
+				data.append((char) ('a' + random.nextInt(26)));
+			} else if (kind == 6) {
+				data.append('\u00e9');
+			} else if (kind == 7) {
+				data.append('\u20ac');
+			} else if (kind == 8) {
+				data.append("\ud83d\ude00");
+			} else {
+				data.append(random.nextBoolean() ? '\ud83d' : '\ude00');
+			}
+		}
+
+		String[] charsets = new String[] { "UTF-8", "ISO-8859-1", "US-ASCII",
+				"UTF-16LE" };
+
+		for (int c = 0; c < charsets.length; c++) {
+			Charset charset = Charset.forName(charsets[c]);
+
+			for (int size = 1; size < 100000; size *= 7) {
+				java.io.ByteArrayOutputStream bytes = new java.io.ByteArrayOutputStream();
+				CsvWriter writer = new CsvWriter(bytes, ',', charset);
+				writer.setRecordDelimiter('\n');
+				writer.setBufferSize(size);
+				writer.setUseTextQualifier(false);
+
+				for (int i = 0; i < data.length(); i += 997) {
+					writer.write(data.substring(i, Math.min(data.length(),
+							i + 997)), true);
+					writer.endRecord();
+				}
+
+				writer.close();
+
+				StringBuilder expected = new StringBuilder();
+				for (int i = 0; i < data.length(); i += 997) {
+					expected.append(data.substring(i, Math.min(data.length(),
+							i + 997)));
+					expected.append('\n');
+				}
+
+				java.io.ByteArrayOutputStream reference = new java.io.ByteArrayOutputStream();
+				java.io.Writer referenceWriter = new java.io.OutputStreamWriter(
+						reference, charset);
+				referenceWriter.write(expected.toString());
+				referenceWriter.close();
+
+				Assert.assertArrayEquals(charsets[c] + " " + size, reference
+						.toByteArray(), bytes.toByteArray());
+			}
+		}
+	}
+
+	@Test
+	public void test196() throws Exception {
+		File file = File.createTempFile("javacsv", ".csv");
+		file.deleteOnExit();
+
+		StringBuilder expected = new StringBuilder();
+
+		for (int direct = 0; direct < 2; direct++) {
+			CsvWriter writer = new CsvWriter(file.getPath(), ',', Charset
+					.forName("UTF-8"));
+			writer.setRecordDelimiter('\n');
+			writer.setUseDirectIo(direct == 1);
+			writer.setPreallocateSize(8 * 1024 * 1024);
+			writer.setBufferSize(1024 * 1024);
+			writer.setFlushThreshold(900 * 1024 + 17);
+			expected.setLength(0);
+
+			for (int i = 0; i < 100000; i++) {
+				writer.writeInt(i);
+				writer.write("row \u00e9 " + i);
+				writer.endRecord();
+				expected.append(i).append(",row \u00e9 ").append(i).append('\n');
+			}
+
+			writer.close();
+
+			byte[] bytes = expected.toString().getBytes("UTF-8");
+			Assert.assertEquals(bytes.length, file.length());
+
+			CsvReader reader = new CsvReader(file.getPath(), ',', Charset
+					.forName("UTF-8"));
+			int count = 0;
+			while (reader.readRecord()) {
+				Assert.assertEquals(String.valueOf(count), reader.get(0));
+				Assert.assertEquals("row \u00e9 " + count, reader.get(1));
+				count++;
+			}
+			reader.close();
+			Assert.assertEquals(100000, count);
+		}
+
+		java.io.RandomAccessFile random = new java.io.RandomAccessFile(file,
+				"rw");
+		random.setLength(0);
+		random.write("head\n".getBytes("US-ASCII"));
+
+		CsvWriter writer = new CsvWriter(random.getChannel(), ',', Charset
+				.forName("US-ASCII"));
+		writer.setRecordDelimiter('\n');
+		writer.write("a");
+		writer.write("b");
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals(9, file.length());
+		Assert.assertFalse(random.getChannel().isOpen());
+		random.close();
+	}
+
+	@Test
+	public void test197() throws Exception {
+		final StringBuffer sink = new StringBuffer();
+		final Object gate = new Object();
+		final boolean[] open = new boolean[] { true };
+
+		java.io.Writer slow = new java.io.Writer() {
+			public void write(char[] cbuf, int off, int len)
+					throws IOException {
+				synchronized (gate) {
+					while (!open[0]) {
+						try {
+							gate.wait();
+						} catch (InterruptedException ex) {
+							throw new java.io.InterruptedIOException();
+						}
+					}
+				}
+
+				sink.append(cbuf, off, len);
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		};
+
+		// blocking, with columns larger than a buffer
+		CsvWriter writer = new CsvWriter(slow, ',');
+		writer.setRecordDelimiter('\n');
+		writer.setAsync(true);
+		writer.setBufferSize(64);
+		writer.setFlushThreshold(16);
+		writer.setAsyncBufferCount(2);
+
+		StringBuilder expected = new StringBuilder();
+		StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 150; i++) {
+			large.append((char) ('a' + i % 26));
+		}
+
+		for (int i = 0; i < 500; i++) {
+			writer.writeInt(i);
+			writer.write(i % 50 == 0 ? large.toString() : "x");
+			writer.endRecord();
+			expected.append(i).append(',').append(
+					i % 50 == 0 ? large.toString() : "x").append('\n');
+		}
+
+		writer.flush();
+		Assert.assertEquals(expected.toString(), sink.toString());
+		writer.close();
+		Assert.assertEquals(expected.toString(), sink.toString());
+
+		// dropping whole records while the destination is stuck
+		sink.setLength(0);
+		open[0] = false;
+
+		writer = new CsvWriter(slow, ',');
+		writer.setRecordDelimiter('\n');
+		writer.setAsync(true);
+		writer.setBufferSize(64);
+		writer.setFlushThreshold(16);
+		writer.setOverflowPolicy(CsvWriter.OVERFLOW_DROP);
+
+		for (int i = 0; i < 1000; i++) {
+			writer.write("record");
+			writer.writeInt(i);
+			writer.endRecord();
+		}
+
+		long dropped = writer.getDroppedRecordCount();
+		Assert.assertTrue(dropped > 0);
+
+		synchronized (gate) {
+			open[0] = true;
+			gate.notifyAll();
+		}
+
+		writer.close();
+
+		String[] lines = sink.toString().split("\n");
+		Assert.assertEquals(1000 - dropped, lines.length);
+
+		int last = -1;
+		for (int i = 0; i < lines.length; i++) {
+			Assert.assertTrue(lines[i].startsWith("record,"));
+			int number = Integer.parseInt(lines[i].substring(7));
+			Assert.assertTrue(number > last);
+			last = number;
+		}
+
+		// errors come back to the writing thread
+		writer = new CsvWriter(new java.io.Writer() {
+			public void write(char[] cbuf, int off, int len)
+					throws IOException {
+				throw new IOException("disk full");
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		}, ',');
+		writer.setAsync(true);
+		writer.write("a");
+		writer.endRecord();
+
+		try {
+			writer.flush();
+			Assert.fail();
+		} catch (IOException ex) {
+			Assert.assertEquals("disk full", ex.getCause().getMessage());
+		}
+
+		writer.close();
+	}
+
+	@Test
+	public void test198() throws Exception {
+		for (int async = 0; async < 2; async++) {
+			java.io.StringWriter buffer = new java.io.StringWriter();
+			CsvWriter target = new CsvWriter(buffer, ',');
+			target.setAsync(async == 1);
+			target.setBufferSize(512);
+
+			final ConcurrentCsvWriter writer = new ConcurrentCsvWriter(
+					target, 16);
+			final int threadCount = 8;
+			final int recordCount = 3000;
+			final Exception[] failure = new Exception[1];
+
+			Thread[] threads = new Thread[threadCount];
+
+			for (int t = 0; t < threadCount; t++) {
+				final int id = t;
+
+				threads[t] = new Thread() {
+					public void run() {
+						try {
+							for (int i = 0; i < recordCount; i++) {
+								writer.writeRecord(new String[] { "" + id,
+										"" + i, "has, a comma",
+										"and \"quotes\"\nand a line" });
+							}
+						} catch (Exception ex) {
+							failure[0] = ex;
+						}
+					}
+				};
+
+				threads[t].start();
+			}
+
+			for (int t = 0; t < threadCount; t++) {
+				threads[t].join();
+			}
+
+			Assert.assertNull(failure[0]);
+			writer.flush();
+
+			int[] next = new int[threadCount];
+
+			CsvReader reader = CsvReader.parse(buffer.toString());
+			int total = 0;
+
+			while (reader.readRecord()) {
+				Assert.assertEquals(4, reader.getColumnCount());
+				int id = Integer.parseInt(reader.get(0));
+				Assert.assertEquals(next[id]++, Integer.parseInt(reader.get(1)));
+				Assert.assertEquals("has, a comma", reader.get(2));
+				Assert.assertEquals("and \"quotes\"\nand a line", reader.get(3));
+				total++;
+			}
+
+			Assert.assertEquals(threadCount * recordCount, total);
+			writer.close();
+
+			try {
+				writer.writeRecord(new String[] { "late" });
+				Assert.fail();
+			} catch (IOException ex) {
+			}
+		}
+	}
+
+	@Test
+	public void test199() throws Exception {
+		java.util.List<String[]> records = new ArrayList<String[]>();
+
+		for (int i = 0; i < 25000; i++) {
+			records.add(new String[] { "" + i, " padded ", "a,b",
+					i % 7 == 0 ? "line\nbreak" : "q\"uote" });
+		}
+
+		java.io.StringWriter expected = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(expected, ';');
+		for (int i = 0; i < records.size(); i++) {
+			writer.writeRecord(records.get(i));
+		}
+		writer.close();
+
+		java.io.StringWriter actual = new java.io.StringWriter();
+		writer = new CsvWriter(actual, ';');
+		CsvExporter exporter = new CsvExporter(writer);
+		exporter.setChunkSize(333);
+		exporter.export(records);
+		writer.close();
+
+		Assert.assertEquals(expected.toString(), actual.toString());
+
+		// arrays and mapped items, with a dedicated pool
+		actual = new java.io.StringWriter();
+		writer = new CsvWriter(actual, ';');
+		exporter = new CsvExporter(writer);
+		exporter.setPool(new java.util.concurrent.ForkJoinPool(3));
+		exporter.export(records.toArray(new String[0][]));
+		writer.close();
+
+		Assert.assertEquals(expected.toString(), actual.toString());
+
+		java.util.List<Integer> numbers = new ArrayList<Integer>();
+		for (int i = 0; i < 2500; i++) {
+			numbers.add(Integer.valueOf(i));
+		}
+
+		actual = new java.io.StringWriter();
+		writer = new CsvWriter(actual, ',');
+		writer.setRecordDelimiter('\n');
+		exporter = new CsvExporter(writer);
+		exporter.setChunkSize(100);
+
+		try {
+			exporter.export(numbers.spliterator(),
+					new CsvExporter.RecordMapper<Integer>() {
+						public String[] map(Integer item) {
+							if (item.intValue() == 2400) {
+								throw new IllegalStateException("bad item");
+							}
+
+							return new String[] { item.toString() };
+						}
+					});
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			Assert.assertEquals("bad item", ex.getMessage());
+		}
+
+		// everything before the failing chunk was written, in order
+		writer.flush();
+		String[] lines = actual.toString().split("\n");
+		Assert.assertEquals(2400, lines.length);
+		for (int i = 0; i < lines.length; i++) {
+			Assert.assertEquals("" + i, lines[i]);
+		}
+		writer.close();
+	}
+
+
+	@Test
+	public void test200() throws Exception {
+		File file = File.createTempFile("javacsv", ".csv.gz");
+		file.deleteOnExit();
+
+		for (int level = 0; level < 10; level += 9) {
+			CsvWriter writer = new CsvWriter(file.getPath(), ',', Charset
+					.forName("UTF-8"));
+			writer.setRecordDelimiter('\n');
+			writer.setUseGzip(true);
+			writer.setCompressionLevel(level);
+			writer.setGzipBlockSize(level == 0 ? 200 * 1024 : 4 * 1024);
+			writer.setFlushThreshold(1000);
+
+			StringBuilder expected = new StringBuilder();
+
+			for (int i = 0; i < 20000; i++) {
+				writer.writeInt(i);
+				writer.write("row \u00e9 " + i);
+				writer.endRecord();
+				expected.append(i).append(",row \u00e9 ").append(i).append('\n');
+			}
+
+			writer.close();
+
+			java.io.InputStream in = new java.util.zip.GZIPInputStream(
+					new java.io.FileInputStream(file));
+			java.io.ByteArrayOutputStream data = new java.io.ByteArrayOutputStream();
+			byte[] chunk = new byte[8192];
+			int count;
+			while ((count = in.read(chunk)) != -1) {
+				data.write(chunk, 0, count);
+			}
+			in.close();
+
+			Assert.assertEquals(expected.toString(), new String(data
+					.toByteArray(), "UTF-8"));
+
+			// a small member records its size in a BC subfield, as bgzip does
+			byte[] head = new byte[18];
+			java.io.FileInputStream raw = new java.io.FileInputStream(file);
+			Assert.assertEquals(18, raw.read(head));
+			raw.close();
+			Assert.assertEquals(level == 0 ? 0 : 4, head[3]);
+			if (level != 0) {
+				Assert.assertEquals('B', head[12]);
+				Assert.assertEquals('C', head[13]);
+			}
+
+			CsvReader reader = new CsvReader(file.getPath(), ',', Charset
+					.forName("UTF-8"));
+			count = 0;
+			while (reader.readRecord()) {
+				Assert.assertEquals(String.valueOf(count), reader.get(0));
+				Assert.assertEquals("row \u00e9 " + count, reader.get(1));
+				count++;
+			}
+			reader.close();
+			Assert.assertEquals(20000, count);
+		}
+	}
+
+
+	@Test
+	public void test201() throws Exception {
+		File directory = java.nio.file.Files.createTempDirectory("javacsv")
+				.toFile();
+		String fileName = new File(directory, "events.csv").getPath();
+
+		RollingCsvWriter writer = new RollingCsvWriter(fileName, ',', Charset
+				.forName("UTF-8"));
+		writer.setHeaders(new String[] { "id", "name" });
+		writer.setMaxRecords(100);
+
+		for (int i = 0; i < 350; i++) {
+			writer.writeRecord(new String[] { String.valueOf(i), "a,b" });
+		}
+
+		Assert.assertEquals(new File(directory, "events.000004.csv").getPath(),
+				writer.getCurrentFileName());
+		writer.close();
+
+		Assert.assertEquals(4, directory.list().length);
+
+		int count = 0;
+		for (int segment = 1; segment <= 4; segment++) {
+			CsvReader reader = new CsvReader(writer.getSegmentName(segment),
+					',', Charset.forName("UTF-8"));
+			Assert.assertTrue(reader.readHeaders());
+			Assert.assertEquals("name", reader.getHeader(1));
+			while (reader.readRecord()) {
+				Assert.assertEquals(String.valueOf(count), reader.get("id"));
+				Assert.assertEquals("a,b", reader.get("name"));
+				count++;
+			}
+			reader.close();
+			Assert.assertEquals(segment == 4 ? 350 : segment * 100, count);
+		}
+
+		for (String name : directory.list()) {
+			new File(directory, name).delete();
+		}
+
+		// size limited segments, compressed on the background thread
+		writer = new RollingCsvWriter(fileName, ',', Charset.forName("UTF-8"));
+		writer.setMaxBytes(1000);
+		writer.setCompress(true);
+
+		for (int i = 0; i < 1000; i++) {
+			writer.writeRecord(new String[] { String.valueOf(i), "\u00e9" });
+		}
+
+		writer.close();
+
+		String[] names = directory.list();
+		java.util.Arrays.sort(names);
+		Assert.assertTrue(names.length > 5);
+
+		count = 0;
+		for (String name : names) {
+			Assert.assertTrue(name.endsWith(".csv.gz"));
+			File file = new File(directory, name);
+
+			// 1000 bytes of records, deflated
+			Assert.assertTrue(file.length() < 1000);
+
+			CsvReader reader = new CsvReader(file.getPath(), ',', Charset
+					.forName("UTF-8"));
+			while (reader.readRecord()) {
+				Assert.assertEquals(String.valueOf(count), reader.get(0));
+				Assert.assertEquals("\u00e9", reader.get(1));
+				count++;
+			}
+			reader.close();
+			file.delete();
+		}
+		Assert.assertEquals(1000, count);
+
+		writer = new RollingCsvWriter(fileName, ',', Charset.forName("UTF-8"));
+		writer.setMaxAge(1);
+		writer.writeRecord(new String[] { "1" });
+		Thread.sleep(5);
+		writer.writeRecord(new String[] { "2" });
+		writer.close();
+
+		Assert.assertEquals(2, directory.list().length);
+
+		for (String name : directory.list()) {
+			new File(directory, name).delete();
+		}
+		directory.delete();
+	}
+
+
+	@Test
+	public void test202() throws Exception {
+		java.io.StringWriter text = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(text, ',');
+		writer.setRecordDelimiter('\n');
+		writer.setColumnQuoting(new int[] { CsvWriter.QUOTE_NEVER,
+				CsvWriter.QUOTE_ALWAYS, CsvWriter.QUOTE_AUTO });
+		writer.write("12");
+		writer.write("a\"b");
+		writer.write("c,d");
+		writer.write("e,f");
+		writer.endRecord();
+		writer.writeInt(7);
+		writer.writeInt(8);
+		writer.write("plain");
+		writer.endRecord();
+
+		// a promise broken without verification is written as is
+		writer.write("x,y");
+		writer.write("");
+		writer.endRecord();
+
+		writer.setForceQualifier(true);
+		writer.write("1");
+		writer.write("2");
+		writer.endRecord();
+		writer.close();
+
+		Assert.assertEquals("12,\"a\"\"b\",\"c,d\",\"e,f\"\n7,\"8\",plain\n"
+				+ "x,y,\"\"\n\"1\",\"2\"\n", text.toString());
+
+		writer = new CsvWriter(new java.io.StringWriter(), ',');
+		writer.setColumnQuoting(new int[] { CsvWriter.QUOTE_NEVER });
+		writer.setVerifyColumnQuoting(true);
+		writer.write("123");
+		writer.endRecord();
+		try {
+			writer.write("1,23");
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+			Assert.assertEquals(
+					"Column 0 is QUOTE_NEVER but its data needs qualifying or escaping.",
+					ex.getMessage());
+		}
+		writer.close();
+
+		try {
+			writer.setColumnQuoting(new int[] { 0 });
+			Assert.fail();
+		} catch (IllegalArgumentException ex) {
+		}
+
+		// records formatted on other threads use the same quoting
+		text = new java.io.StringWriter();
+		writer = new CsvWriter(text, ',');
+		writer.setRecordDelimiter('\n');
+		writer.setColumnQuoting(new int[] { CsvWriter.QUOTE_ALWAYS });
+		new CsvExporter(writer).export(new String[][] { { "a", "b" } });
+		writer.close();
+
+		Assert.assertEquals("\"a\",b\n", text.toString());
+	}
+
+
+	@Test
+	public void test203() throws Exception {
+		StringBuilder big = new StringBuilder();
+		for (int i = 0; i < 5000; i++) {
+			big.append("long ");
+		}
+
+		String data = "a,\"b,\"\"c\"\"\"\r\n  d ,e\r\n\"f\ng\",h\r\n\"" + big
+				+ "\",x\r\n\"#i\",j\r\nk,l";
+
+		CsvReader reader = new CsvReader(new java.io.StringReader(data));
+		java.io.StringWriter text = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(text, ',');
+		writer.setRecordDelimiter('\n');
+
+		while (reader.readRecord()) {
+			if (reader.get(0).equals("k")) {
+				writer.writeRecord(new String[] { "k", "changed" });
+			} else {
+				writer.writeRecord(reader);
+			}
+		}
+		reader.close();
+		writer.close();
+
+		// copied as is, so whitespace and the original quoting are kept
+		Assert.assertEquals("a,\"b,\"\"c\"\"\"\n  d ,e\n\"f\ng\",h\n\"" + big
+				+ "\",x\n\"#i\",j\nk,changed\n", text.toString());
+
+		// a different dialect writes the values instead
+		reader = new CsvReader(new java.io.StringReader("a,\"b;c\"\n1,2"));
+		text = new java.io.StringWriter();
+		writer = new CsvWriter(text, ';');
+		writer.setRecordDelimiter('\n');
+
+		while (reader.readRecord()) {
+			writer.writeRecord(reader);
+		}
+		reader.close();
+		writer.close();
+
+		Assert.assertEquals("a;\"b;c\"\n1;2\n", text.toString());
+
+		reader = CsvReader.parse("a, b ");
+		reader.setCaptureRawRecord(false);
+		text = new java.io.StringWriter();
+		writer = new CsvWriter(text, ',');
+		writer.setRecordDelimiter('\n');
+		Assert.assertTrue(reader.readRecord());
+		writer.writeRecord(reader);
+		writer.close();
+
+		Assert.assertEquals("a,b\n", text.toString());
+	}
+
+
+	@Test
+	public void test204() throws Exception {
+		final java.util.concurrent.CountDownLatch reading = new java.util.concurrent.CountDownLatch(
+				1);
+		final boolean[] state = new boolean[3];
+
+		// hands out one record, then blocks in its second read
+		java.io.Reader source = new java.io.Reader() {
+			private boolean first = true;
+
+			public int read(char[] buffer, int offset, int length)
+					throws IOException {
+				if (first) {
+					first = false;
+					"a,b\n".getChars(0, 4, buffer, offset);
+					return 4;
+				}
+
+				synchronized (state) {
+					state[0] = true;
+				}
+
+				reading.countDown();
+
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException ex) {
+					throw new java.io.InterruptedIOException();
+				}
+
+				synchronized (state) {
+					state[0] = false;
+				}
+
+				return -1;
+			}
+
+			public void close() {
+				synchronized (state) {
+					state[1] = state[0];
+					state[2] = true;
+				}
+			}
+		};
+
+		CsvReader reader = new CsvReader(source);
+		reader.setReadAheadBuffers(2);
+		Assert.assertTrue(reader.readRecord());
+		reading.await();
+		reader.close();
+
+		for (int i = 0; i < 100; i++) {
+			synchronized (state) {
+				if (state[2]) {
+					break;
+				}
+			}
+
+			Thread.sleep(10);
+		}
+
+		// closed once the read returned, never during it
+		synchronized (state) {
+			Assert.assertTrue(state[2]);
+			Assert.assertFalse(state[1]);
+		}
+	}
+
+	@Test
+	public void test205() throws Exception {
+		CsvWriter writer = new CsvWriter("temp.jcsv", ';', Charset
+				.forName("UTF-8"));
+		writer.setUseBlockCompression(true);
+		writer.setCompressionBlockSize(200);
+		writer.setTextQualifier('\'');
+		writer.setEscapeMode(CsvWriter.ESCAPE_MODE_BACKSLASH);
+		writer.setComment('!');
+
+		java.util.List<String> firsts = new java.util.ArrayList<String>();
+
+		for (int i = 0; i < 300; i++) {
+			if (i % 10 == 0) {
+				writer.writeComment("comment " + i);
+			}
+
+			if (i % 13 == 0) {
+				// an empty record
+				writer.endRecord();
+				firsts.add("");
+			} else {
+				String first = i % 17 == 0 ? "!" + i : "" + i;
+				writer.write(first);
+				writer.write("it's; " + i);
+				writer.endRecord();
+				firsts.add(first);
+			}
+		}
+
+		writer.close();
+
+		CsvBlockFile file = new CsvBlockFile("temp.jcsv");
+		Assert.assertEquals(';', file.getDialect().getDelimiter());
+		Assert.assertEquals('\'', file.getDialect().getTextQualifier());
+		Assert.assertEquals(CsvReader.ESCAPE_MODE_BACKSLASH, file.getDialect()
+				.getEscapeMode());
+		Assert.assertEquals('!', file.getDialect().getComment());
+		Assert.assertEquals(firsts.size(), file.getRecordCount());
+		Assert.assertTrue(file.getBlockCount() > 10);
+
+		for (int i = 0; i < firsts.size(); i++) {
+			CsvReader reader = file.openReader(i);
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals(firsts.get(i), reader.get(0));
+
+			if (firsts.get(i).length() > 0) {
+				Assert.assertEquals("it's; " + i, reader.get(1));
+			}
+
+			reader.close();
+		}
+
+		long records = 0;
+
+		for (int i = 0; i < file.getBlockCount(); i++) {
+			CsvReader reader = file.openBlock(i);
+
+			while (reader.readRecord()) {
+				records++;
+			}
+
+			reader.close();
+		}
+
+		Assert.assertEquals(firsts.size(), records);
+		file.close();
+
+		new File("temp.jcsv").delete();
+	}
+
+	@Test
+	public void test206() throws Exception {
+		StringBuilder data = new StringBuilder("id,name\n");
+
+		for (int i = 0; i < 3000; i++) {
+			data.append(i).append(",\u00e9t\u00e9 \ud83d\ude00 ").append(i)
+					.append('\n');
+		}
+
+		String prefix = data.substring(0, data.indexOf("\n2500,") + 1);
+
+		// the charset read with, the byte order mark and the charset of the
+		// data after it
+		String[] charsets = new String[] { "UTF-16", "UTF-16", "UTF-16",
+				"UTF-32" };
+		byte[][] marks = new byte[][] { { (byte) 0xFE, (byte) 0xFF },
+				{ (byte) 0xFF, (byte) 0xFE }, {},
+				{ 0, 0, (byte) 0xFE, (byte) 0xFF } };
+		String[] bodies = new String[] { "UTF-16BE", "UTF-16LE", "UTF-16BE",
+				"UTF-32BE" };
+
+		for (int c = 0; c < charsets.length; c++) {
+			Charset body = Charset.forName(bodies[c]);
+
+			FileOutputStream out = new FileOutputStream("temp.csv");
+			out.write(marks[c]);
+			out.write(data.toString().getBytes(body));
+			out.close();
+
+			CsvReader reader = new CsvReader("temp.csv", ',', Charset
+					.forName(charsets[c]));
+			Assert.assertTrue(reader.readHeaders());
+
+			for (int i = 0; i < 2500; i++) {
+				Assert.assertTrue(reader.readRecord());
+			}
+
+			long offset = marks[c].length + prefix.getBytes(body).length;
+
+			Assert.assertEquals(offset, reader.getRawRecordOffset()
+					+ (reader.getRawRecord() + "\n").getBytes(body).length);
+
+			CsvCheckpoint checkpoint = reader.getCheckpoint();
+			Assert.assertEquals(offset, checkpoint.getByteOffset());
+
+			CsvReader resumed = CsvReader.resume("temp.csv", checkpoint);
+
+			while (reader.readRecord()) {
+				Assert.assertTrue(resumed.readRecord());
+				Assert.assertEquals(reader.get("id"), resumed.get("id"));
+				Assert.assertEquals(reader.get("name"), resumed.get("name"));
+			}
+
+			Assert.assertFalse(resumed.readRecord());
+			reader.close();
+			resumed.close();
+		}
+
+		// an encoder that shifts between states can't be counted
+		FileOutputStream out = new FileOutputStream("temp.csv");
+		out.write("a,\u3042\n".getBytes("ISO-2022-JP"));
+		out.close();
+
+		CsvReader reader = new CsvReader("temp.csv", ',', Charset
+				.forName("ISO-2022-JP"));
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("\u3042", reader.get(1));
+		Assert.assertEquals(-1L, reader.getRawRecordOffset());
+
+		try {
+			reader.getCheckpoint();
+			Assert.fail();
+		} catch (IllegalStateException ex) {
+			// expected
+		}
+
+		reader.close();
+
+		new File("temp.csv").delete();
+	}
+
+	@Test
+	public void test207() throws Exception {
+		CsvReaderPool pool = new CsvReaderPool(',', 4);
+		CsvReader reader = pool.acquire("a,b");
+		pool.release(reader);
+		pool.release(reader);
+		Assert.assertEquals(1, pool.getIdleCount());
+
+		CsvReader first = pool.acquire("c,d");
+		CsvReader second = pool.acquire("e,f");
+		Assert.assertSame(reader, first);
+		Assert.assertNotSame(first, second);
+		Assert.assertTrue(second.readRecord());
+		Assert.assertEquals("f", second.get(1));
+		pool.release(first);
+		pool.release(second);
+		Assert.assertEquals(2, pool.getIdleCount());
+
+		// resetting a reader that reads ahead leaves the caller's stream
+		// open
+		final boolean[] closed = new boolean[1];
+		Reader source = new java.io.StringReader("1,2\n3,4\n") {
+			public void close() {
+				closed[0] = true;
+				super.close();
+			}
+		};
+
+		reader = new CsvReader(source);
+		reader.setReadAheadBuffers(2);
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("2", reader.get(1));
+		reader.reset("5,6");
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("6", reader.get(1));
+		Assert.assertFalse(closed[0]);
+		reader.close();
+		Assert.assertFalse(closed[0]);
+		source.close();
+	}
+
+	@Test
+	public void test208() throws Exception {
+		CsvWriter first = new CsvWriter(new java.io.StringWriter(), ';');
+		CsvWriter second = new CsvWriter(new java.io.StringWriter(), ',');
+		second.setDelimiter(';');
+		Assert.assertSame(first.getDialect(), second.getDialect());
+
+		CsvReader reader = CsvReader.parse("a;\"b;c\"\"d\";e f\n1;2;3", ';');
+		Assert.assertSame(reader.getDialect(), CsvReader.parse("", ';')
+				.getDialect());
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a", reader.get(0));
+		Assert.assertEquals("b;c\"d", reader.get(1));
+		Assert.assertEquals("e f", reader.get(2));
+
+		reader.setDelimiter(',');
+		Assert.assertEquals(',', reader.getDialect().getDelimiter());
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("1;2;3", reader.get(0));
+		reader.close();
+	}
+
+	@Test
+	public void test209() throws Exception {
+		int before = countThreads("javacsv-writer");
+
+		CsvWriter writer = new CsvWriter(new java.io.StringWriter(), ',');
+		writer.setAsync(true);
+		writer.writeRecord(new String[] { "a", "b" });
+		writer.flush();
+		Assert.assertEquals(before + 1, countThreads("javacsv-writer"));
+
+		// a writer that is never closed still stops its thread
+		writer = null;
+
+		for (int i = 0; i < 100
+				&& countThreads("javacsv-writer") > before; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+
+		Assert.assertTrue(countThreads("javacsv-writer") <= before);
+	}
+
+	private static int countThreads(String name) {
+		int count = 0;
+
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals(name) && thread.isAlive()) {
+				count++;
+			}
+		}
+
+		return count;
+	}
+
+	@Test
+	public void test210() throws Exception {
+		File directory = java.nio.file.Files.createTempDirectory("javacsv")
+				.toFile();
+		String fileName = new File(directory, "events.csv").getPath();
+
+		RollingCsvWriter writer = new RollingCsvWriter(fileName, ',', Charset
+				.forName("UTF-8"));
+		writer.setCompress(true);
+		writer.writeRecord(new String[] { "1", "a" });
+
+		// compressing the last segment fails, which close() reports
+		File blocked = new File(writer.getSegmentName(1) + ".gz");
+		Assert.assertTrue(blocked.mkdir());
+
+		try {
+			writer.close();
+			Assert.fail();
+		} catch (IOException ex) {
+			// expected
+		}
+
+		blocked.delete();
+
+		for (String name : directory.list()) {
+			new File(directory, name).delete();
+		}
+
+		// a writer that is never closed still lets its thread go
+		int before = countThreads("javacsv-roller");
+
+		writer = new RollingCsvWriter(fileName, ',', Charset.forName("UTF-8"));
+		writer.writeRecord(new String[] { "1", "a" });
+		writer.flush();
+		Assert.assertEquals(before + 1, countThreads("javacsv-roller"));
+		writer = null;
+
+		for (int i = 0; i < 100
+				&& countThreads("javacsv-roller") > before; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+
+		Assert.assertTrue(countThreads("javacsv-roller") <= before);
+
+		for (String name : directory.list()) {
+			new File(directory, name).delete();
+		}
+
+		directory.delete();
+	}
+
+	@Test
+	public void test211() throws Exception {
+		int before = countThreads("javacsv-read-ahead");
+
+		// a source that never ends, so the thread always waits for a
+		// buffer to be handed back
+		Reader endless = new Reader() {
+			public int read(char[] buffer, int offset, int length) {
+				for (int i = 0; i < length; i++) {
+					buffer[offset + i] = i % 4 == 3 ? '\n' : i % 2 == 1 ? ','
+							: 'a';
+				}
+
+				return length;
+			}
+
+			public void close() {
+			}
+		};
+
+		CsvReader reader = new CsvReader(endless);
+		reader.setReadAheadBuffers(2);
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("a", reader.get(0));
+		Assert.assertEquals(before + 1, countThreads("javacsv-read-ahead"));
+
+		// a reader that is never closed still stops its thread
+		reader = null;
+
+		for (int i = 0; i < 100
+				&& countThreads("javacsv-read-ahead") > before; i++) {
+			System.gc();
+			Thread.sleep(50);
+		}
+
+		Assert.assertTrue(countThreads("javacsv-read-ahead") <= before);
+	}
+
+	@Test
+	public void test212() throws Exception {
+		byte[] data = "a,b\n1,2\n".getBytes("US-ASCII");
+		byte[] member = ParallelGzipOutputStream.deflate(data, data.length,
+				6);
+
+		java.io.InputStream in = new ParallelGzipInputStream(
+				new ByteArrayInputStream(member));
+		Assert.assertEquals('a', in.read());
+		in.close();
+
+		// a block size smaller than the header
+		byte[] corrupt = member.clone();
+		corrupt[16] = 4;
+		corrupt[17] = 0;
+		assertCorruptGzip(corrupt);
+
+		// an inflated size no deflate data could reach
+		corrupt = member.clone();
+		corrupt[corrupt.length - 1] = (byte) 0x7f;
+		assertCorruptGzip(corrupt);
+
+		corrupt[corrupt.length - 1] = (byte) 0xff;
+		assertCorruptGzip(corrupt);
+
+		// a member cut short
+		corrupt = new byte[member.length - 5];
+		System.arraycopy(member, 0, corrupt, 0, corrupt.length);
+		assertCorruptGzip(corrupt);
+	}
+
+	private static void assertCorruptGzip(byte[] member) throws Exception {
+		java.io.InputStream in = new ParallelGzipInputStream(
+				new ByteArrayInputStream(member));
+
+		try {
+			in.read();
+			Assert.fail();
+		} catch (IOException ex) {
+			// expected
+		} finally {
+			in.close();
+		}
+	}
+
+	@Test
+	public void test213() throws Exception {
+		String[] charsets = new String[] { "UTF-16", "UTF-32", "ISO-2022-JP" };
+
+		for (int c = 0; c < charsets.length; c++) {
+			Charset charset = Charset.forName(charsets[c]);
+			CsvWriter writer = new CsvWriter("temp.jcsv", ',', charset);
+			writer.setUseBlockCompression(true);
+			writer.setCompressionBlockSize(200);
+
+			for (int i = 0; i < 300; i++) {
+				writer.writeRecord(new String[] { "" + i,
+						"\u3042\u3044 " + i });
+			}
+
+			writer.close();
+
+			CsvBlockFile file = new CsvBlockFile("temp.jcsv");
+			Assert.assertTrue(file.getBlockCount() > 10);
+
+			for (int i = 0; i < 300; i += 7) {
+				CsvReader reader = file.openReader(i);
+				Assert.assertTrue(reader.readRecord());
+				Assert.assertEquals("" + i, reader.get(0));
+				Assert.assertEquals("\u3042\u3044 " + i, reader.get(1));
+				reader.close();
+			}
+
+			CsvReader reader = file.openReader();
+
+			for (int i = 0; i < 300; i++) {
+				Assert.assertTrue(reader.readRecord());
+				Assert.assertEquals("" + i, reader.get(0));
+				Assert.assertEquals("\u3042\u3044 " + i, reader.get(1));
+			}
+
+			Assert.assertFalse(reader.readRecord());
+			reader.close();
+			file.close();
+		}
+
+		new File("temp.jcsv").delete();
+	}
+
+	@Test
+	public void test214() throws Exception {
+		java.io.StringWriter output = new java.io.StringWriter();
+		CsvWriter writer = new CsvWriter(output, ',');
+		writer.setUseTextQualifier(false);
+		writer.setForceQualifier(true);
+		writer.write("a\"b");
+		writer.write("c");
+		writer.close();
+
+		Assert.assertEquals("\"a\"\"b\",\"c\"", output.toString());
+	}
+
+	@Test(timeout = 10000)
+	public void test215() throws Exception {
+		// unchecked exceptions from the destination come back too, rather
+		// than leaving the writing thread waiting forever
+		CsvWriter writer = new CsvWriter(new java.io.Writer() {
+			public void write(char[] cbuf, int off, int len) {
+				throw new IllegalStateException("broken");
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		}, ',');
+		writer.setAsync(true);
+		writer.write("a");
+		writer.endRecord();
+
+		try {
+			writer.flush();
+			Assert.fail();
+		} catch (IOException ex) {
+			Assert.assertEquals("broken", ex.getCause().getMessage());
+		}
+
+		writer.write("b");
+		writer.endRecord();
+		writer.close();
+	}
+
+	@Test
+	public void test216() throws Exception {
+		// null and empty records are skipped, as writeRecord does, and
+		// aren't counted in the block index
+		String[][] records = new String[300][];
+
+		for (int i = 0; i < records.length; i++) {
+			if (i % 3 == 1) {
+				records[i] = i % 2 == 0 ? null : new String[0];
+			} else {
+				records[i] = new String[] { "" + i };
+			}
+		}
+
+		CsvWriter writer = new CsvWriter("temp.jcsv", ',', Charset
+				.forName("UTF-8"));
+		writer.setUseBlockCompression(true);
+		writer.setCompressionBlockSize(100);
+		CsvExporter exporter = new CsvExporter(writer);
+		exporter.setChunkSize(7);
+		exporter.export(records);
+		writer.close();
+
+		CsvBlockFile file = new CsvBlockFile("temp.jcsv");
+		Assert.assertEquals(200, file.getRecordCount());
+
+		CsvReader reader = file.openReader(150);
+		Assert.assertTrue(reader.readRecord());
+		Assert.assertEquals("225", reader.get(0));
+		reader.close();
+
+		reader = file.openReader();
+		for (int i = 0; i < records.length; i++) {
+			if (i % 3 != 1) {
+				Assert.assertTrue(reader.readRecord());
+				Assert.assertEquals("" + i, reader.get(0));
+			}
+		}
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+		file.close();
+
+		new File("temp.jcsv").delete();
+	}
+
+	@Test
+	public void test217() throws Exception {
+		// records spanning several buffers keep their raw record, without
+		// mixing up the buffers they were read into
+		String[] lines = new String[60];
+		StringBuilder data = new StringBuilder();
+
+		for (int i = 0; i < lines.length; i++) {
+			StringBuilder line = new StringBuilder();
+			line.append(i).append(",\"");
+
+			for (int j = 0; j < (i % 4) * 1500; j++) {
+				line.append(j % 10 == 0 ? '\u00e9' : (char) ('a' + j % 26));
+			}
+
+			line.append("\",end");
+			lines[i] = line.toString();
+			data.append(lines[i]).append('\n');
+		}
+
+		byte[] bytes = data.toString().getBytes("UTF-8");
+		java.io.FileOutputStream output = new java.io.FileOutputStream(
+				"temp.csv");
+		output.write(bytes);
+		output.close();
+
+		CsvReader reader = new CsvReader("temp.csv", ',', Charset
+				.forName("UTF-8"));
+		long offset = 0;
+
+		for (int i = 0; i < lines.length; i++) {
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals("" + i, reader.get(0));
+			Assert.assertEquals("end", reader.get(2));
+			Assert.assertEquals(offset, reader.getRawRecordOffset());
+
+			if (i % 3 == 0) {
+				Assert.assertEquals(lines[i], reader.getRawRecord());
+				Assert.assertEquals(lines[i], reader.getRawRecordSequence()
+						.toString());
+			}
+
+			offset += lines[i].getBytes("UTF-8").length + 1;
+		}
+
+		Assert.assertFalse(reader.readRecord());
+		reader.close();
+
+		reader = new CsvReader(new java.io.StringReader(data.toString()));
+
+		for (int i = 0; i < lines.length; i++) {
+			Assert.assertTrue(reader.readRecord());
+			Assert.assertEquals(lines[i], reader.getRawRecord());
+		}
+
+		reader.close();
+
+		new File("temp.csv").delete();
+	}
 }